@@ -0,0 +1,444 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.benchmark.mock;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Minimal HttpServletRequest used to run the REST pipeline without a servlet container.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+@SuppressWarnings("rawtypes")
+public class MockHttpServletRequest implements HttpServletRequest
+{
+	private final String method;
+	private final String contextPath;
+	private final String servletPath;
+	private final String requestURI;
+	private final String queryString;
+	private final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+	private final Map<String, Object> attributes = new HashMap<String, Object>();
+	private Cookie[] cookies;
+	private byte[] content = new byte[0];
+	private String characterEncoding = "UTF-8";
+
+	/**
+	 * @param method http method
+	 * @param contextPath application context path
+	 * @param servletPath path where the servlet is mapped
+	 * @param requestURI encoded request URI, starting with the context path
+	 * @param queryString encoded query string or null
+	 */
+	public MockHttpServletRequest(String method, String contextPath, String servletPath, String requestURI, String queryString)
+	{
+		this.method = method;
+		this.contextPath = contextPath;
+		this.servletPath = servletPath;
+		this.requestURI = requestURI;
+		this.queryString = queryString;
+	}
+
+	public MockHttpServletRequest addHeader(String name, String value)
+	{
+		String key = name.toLowerCase();
+		List<String> values = headers.get(key);
+		if (values == null)
+		{
+			values = new ArrayList<String>();
+			headers.put(key, values);
+		}
+		values.add(value);
+		return this;
+	}
+
+	public MockHttpServletRequest setCookies(Cookie... cookies)
+	{
+		this.cookies = cookies;
+		return this;
+	}
+
+	public MockHttpServletRequest setContent(byte[] content)
+	{
+		this.content = content;
+		return this;
+	}
+
+	@Override
+	public String getHeader(String name)
+	{
+		List<String> values = headers.get(name.toLowerCase());
+		return (values == null || values.isEmpty()) ? null : values.get(0);
+	}
+
+	@Override
+	public Enumeration getHeaders(String name)
+	{
+		List<String> values = headers.get(name.toLowerCase());
+		if (values == null)
+		{
+			return Collections.enumeration(Collections.<String>emptyList());
+		}
+		return Collections.enumeration(values);
+	}
+
+	@Override
+	public Enumeration getHeaderNames()
+	{
+		return Collections.enumeration(headers.keySet());
+	}
+
+	@Override
+	public long getDateHeader(String name)
+	{
+		return -1;
+	}
+
+	@Override
+	public int getIntHeader(String name)
+	{
+		String value = getHeader(name);
+		return (value == null) ? -1 : Integer.parseInt(value);
+	}
+
+	@Override
+	public Cookie[] getCookies()
+	{
+		return cookies;
+	}
+
+	@Override
+	public String getMethod()
+	{
+		return method;
+	}
+
+	@Override
+	public String getContextPath()
+	{
+		return contextPath;
+	}
+
+	@Override
+	public String getServletPath()
+	{
+		return servletPath;
+	}
+
+	@Override
+	public String getPathInfo()
+	{
+		return requestURI.substring(contextPath.length() + servletPath.length());
+	}
+
+	@Override
+	public String getQueryString()
+	{
+		return queryString;
+	}
+
+	@Override
+	public String getRequestURI()
+	{
+		return requestURI;
+	}
+
+	@Override
+	public StringBuffer getRequestURL()
+	{
+		return new StringBuffer("http://localhost:8080").append(requestURI);
+	}
+
+	@Override
+	public String getContentType()
+	{
+		return getHeader("Content-Type");
+	}
+
+	@Override
+	public int getContentLength()
+	{
+		return content.length;
+	}
+
+	@Override
+	public ServletInputStream getInputStream() throws IOException
+	{
+		final ByteArrayInputStream in = new ByteArrayInputStream(content);
+		return new ServletInputStream()
+		{
+			@Override
+			public int read() throws IOException
+			{
+				return in.read();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException
+			{
+				return in.read(b, off, len);
+			}
+		};
+	}
+
+	@Override
+	public BufferedReader getReader() throws IOException
+	{
+		return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), characterEncoding));
+	}
+
+	@Override
+	public String getCharacterEncoding()
+	{
+		return characterEncoding;
+	}
+
+	@Override
+	public void setCharacterEncoding(String env) throws UnsupportedEncodingException
+	{
+		this.characterEncoding = env;
+	}
+
+	@Override
+	public Object getAttribute(String name)
+	{
+		return attributes.get(name);
+	}
+
+	@Override
+	public Enumeration getAttributeNames()
+	{
+		return Collections.enumeration(attributes.keySet());
+	}
+
+	@Override
+	public void setAttribute(String name, Object o)
+	{
+		attributes.put(name, o);
+	}
+
+	@Override
+	public void removeAttribute(String name)
+	{
+		attributes.remove(name);
+	}
+
+	@Override
+	public String getParameter(String name)
+	{
+		return null;
+	}
+
+	@Override
+	public Enumeration getParameterNames()
+	{
+		return Collections.enumeration(Collections.<String>emptyList());
+	}
+
+	@Override
+	public String[] getParameterValues(String name)
+	{
+		return null;
+	}
+
+	@Override
+	public Map getParameterMap()
+	{
+		return Collections.emptyMap();
+	}
+
+	@Override
+	public Locale getLocale()
+	{
+		return Locale.getDefault();
+	}
+
+	@Override
+	public Enumeration getLocales()
+	{
+		return Collections.enumeration(Collections.singletonList(Locale.getDefault()));
+	}
+
+	@Override
+	public String getProtocol()
+	{
+		return "HTTP/1.1";
+	}
+
+	@Override
+	public String getScheme()
+	{
+		return "http";
+	}
+
+	@Override
+	public String getServerName()
+	{
+		return "localhost";
+	}
+
+	@Override
+	public int getServerPort()
+	{
+		return 8080;
+	}
+
+	@Override
+	public boolean isSecure()
+	{
+		return false;
+	}
+
+	@Override
+	public String getRemoteAddr()
+	{
+		return "127.0.0.1";
+	}
+
+	@Override
+	public String getRemoteHost()
+	{
+		return "localhost";
+	}
+
+	@Override
+	public int getRemotePort()
+	{
+		return 50000;
+	}
+
+	@Override
+	public String getLocalName()
+	{
+		return "localhost";
+	}
+
+	@Override
+	public String getLocalAddr()
+	{
+		return "127.0.0.1";
+	}
+
+	@Override
+	public int getLocalPort()
+	{
+		return 8080;
+	}
+
+	@Override
+	public RequestDispatcher getRequestDispatcher(String path)
+	{
+		return null;
+	}
+
+	@Override
+	public String getRealPath(String path)
+	{
+		return null;
+	}
+
+	@Override
+	public String getAuthType()
+	{
+		return null;
+	}
+
+	@Override
+	public String getPathTranslated()
+	{
+		return null;
+	}
+
+	@Override
+	public String getRemoteUser()
+	{
+		return null;
+	}
+
+	@Override
+	public boolean isUserInRole(String role)
+	{
+		return false;
+	}
+
+	@Override
+	public Principal getUserPrincipal()
+	{
+		return null;
+	}
+
+	@Override
+	public String getRequestedSessionId()
+	{
+		return null;
+	}
+
+	@Override
+	public HttpSession getSession(boolean create)
+	{
+		return null;
+	}
+
+	@Override
+	public HttpSession getSession()
+	{
+		return null;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdValid()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromCookie()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromURL()
+	{
+		return false;
+	}
+
+	@Override
+	@Deprecated
+	public boolean isRequestedSessionIdFromUrl()
+	{
+		return false;
+	}
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.benchmark.mock;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Minimal HttpServletResponse used to run the REST pipeline without a servlet container. 
+ * The response body is discarded. Only the number of bytes written is kept.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class MockHttpServletResponse implements HttpServletResponse
+{
+	private final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+	private int status = SC_OK;
+	private long bytesWritten;
+	private boolean committed;
+	private String contentType;
+	private String characterEncoding = "UTF-8";
+	private Locale locale = Locale.getDefault();
+	private PrintWriter writer;
+	private final ServletOutputStream outputStream = new ServletOutputStream()
+	{
+		@Override
+		public void write(int b) throws IOException
+		{
+			bytesWritten++;
+			committed = true;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			bytesWritten += len;
+			committed = true;
+		}
+	};
+
+	public long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+
+	public int getStatus()
+	{
+		return status;
+	}
+
+	public String getHeader(String name)
+	{
+		List<String> values = headers.get(name.toLowerCase());
+		return (values == null || values.isEmpty()) ? null : values.get(0);
+	}
+
+	@Override
+	public void setHeader(String name, String value)
+	{
+		List<String> values = new ArrayList<String>(1);
+		values.add(value);
+		headers.put(name.toLowerCase(), values);
+	}
+
+	@Override
+	public void addHeader(String name, String value)
+	{
+		String key = name.toLowerCase();
+		List<String> values = headers.get(key);
+		if (values == null)
+		{
+			values = new ArrayList<String>(1);
+			headers.put(key, values);
+		}
+		values.add(value);
+	}
+
+	@Override
+	public boolean containsHeader(String name)
+	{
+		return headers.containsKey(name.toLowerCase());
+	}
+
+	@Override
+	public void setDateHeader(String name, long date)
+	{
+		setHeader(name, Long.toString(date));
+	}
+
+	@Override
+	public void addDateHeader(String name, long date)
+	{
+		addHeader(name, Long.toString(date));
+	}
+
+	@Override
+	public void setIntHeader(String name, int value)
+	{
+		setHeader(name, Integer.toString(value));
+	}
+
+	@Override
+	public void addIntHeader(String name, int value)
+	{
+		addHeader(name, Integer.toString(value));
+	}
+
+	@Override
+	public void addCookie(Cookie cookie)
+	{
+	}
+
+	@Override
+	public String encodeURL(String url)
+	{
+		return url;
+	}
+
+	@Override
+	public String encodeRedirectURL(String url)
+	{
+		return url;
+	}
+
+	@Override
+	@Deprecated
+	public String encodeUrl(String url)
+	{
+		return url;
+	}
+
+	@Override
+	@Deprecated
+	public String encodeRedirectUrl(String url)
+	{
+		return url;
+	}
+
+	@Override
+	public void sendError(int sc, String msg) throws IOException
+	{
+		status = sc;
+		committed = true;
+	}
+
+	@Override
+	public void sendError(int sc) throws IOException
+	{
+		sendError(sc, null);
+	}
+
+	@Override
+	public void sendRedirect(String location) throws IOException
+	{
+		status = SC_MOVED_TEMPORARILY;
+		committed = true;
+	}
+
+	@Override
+	public void setStatus(int sc)
+	{
+		status = sc;
+	}
+
+	@Override
+	@Deprecated
+	public void setStatus(int sc, String sm)
+	{
+		status = sc;
+	}
+
+	@Override
+	public String getCharacterEncoding()
+	{
+		return characterEncoding;
+	}
+
+	@Override
+	public void setCharacterEncoding(String charset)
+	{
+		this.characterEncoding = charset;
+	}
+
+	@Override
+	public String getContentType()
+	{
+		return contentType;
+	}
+
+	@Override
+	public void setContentType(String type)
+	{
+		this.contentType = type;
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException
+	{
+		return outputStream;
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException
+	{
+		if (writer == null)
+		{
+			writer = new PrintWriter(new OutputStreamWriter(outputStream, characterEncoding));
+		}
+		return writer;
+	}
+
+	@Override
+	public void setContentLength(int len)
+	{
+		setIntHeader("Content-Length", len);
+	}
+
+	@Override
+	public void setBufferSize(int size)
+	{
+	}
+
+	@Override
+	public int getBufferSize()
+	{
+		return 0;
+	}
+
+	@Override
+	public void flushBuffer() throws IOException
+	{
+		if (writer != null)
+		{
+			writer.flush();
+		}
+		committed = true;
+	}
+
+	@Override
+	public void resetBuffer()
+	{
+		bytesWritten = 0;
+	}
+
+	@Override
+	public boolean isCommitted()
+	{
+		return committed;
+	}
+
+	@Override
+	public void reset()
+	{
+		headers.clear();
+		status = SC_OK;
+		bytesWritten = 0;
+		committed = false;
+	}
+
+	@Override
+	public void setLocale(Locale loc)
+	{
+		this.locale = loc;
+	}
+
+	@Override
+	public Locale getLocale()
+	{
+		return locale;
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.benchmark.rest;
+
+import java.util.concurrent.TimeUnit;
+
+import org.cruxframework.crux.core.server.rest.core.dispatch.MethodInvoker;
+import org.cruxframework.crux.core.server.rest.core.registry.CompiledRouter;
+import org.cruxframework.crux.core.server.rest.core.registry.RootSegment;
+import org.cruxframework.crux.core.server.rest.spi.HttpRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the conversion of path, query and header values into the arguments of a rest 
+ * method, including a query parameter group bound to a value object.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArgumentInjectionBenchmark
+{
+	private MethodInvoker methodInvoker;
+	private HttpRequest request;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		Requests.initialize();
+		methodInvoker = new MethodInvoker(BenchmarkService.class, 
+			BenchmarkService.class.getMethod("getItem", long.class, String.class, String.class, BenchmarkService.Filter.class), "GET");
+		RootSegment rootSegment = new RootSegment();
+		rootSegment.addPath("bench/items/{id}", Requests.resourceMethod("getItem", "GET"));
+		request = Requests.wrap(Requests.get("/bench/items/42", "name=some%20item&filter.page=3&filter.pageSize=50&filter.orderBy=name"));
+		// fills the path parameters on the request
+		new CompiledRouter(rootSegment).matchRoot(request);
+	}
+
+	@Benchmark
+	public Object[] injectArguments()
+	{
+		return methodInvoker.injectArguments(request);
+	}
+}
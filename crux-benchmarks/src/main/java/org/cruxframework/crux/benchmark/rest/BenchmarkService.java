@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.benchmark.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cruxframework.crux.core.shared.rest.annotation.GET;
+import org.cruxframework.crux.core.shared.rest.annotation.HeaderParam;
+import org.cruxframework.crux.core.shared.rest.annotation.POST;
+import org.cruxframework.crux.core.shared.rest.annotation.Path;
+import org.cruxframework.crux.core.shared.rest.annotation.PathParam;
+import org.cruxframework.crux.core.shared.rest.annotation.QueryParam;
+
+/**
+ * Rest service used as target for the dispatch benchmarks.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+@Path("bench")
+public class BenchmarkService
+{
+	@GET
+	@Path("items/{id}")
+	public Item getItem(@PathParam("id") long id, @QueryParam("name") String name, 
+						@HeaderParam("X-Tenant") String tenant, @QueryParam("filter") Filter filter)
+	{
+		Item item = new Item();
+		item.setId(id);
+		item.setName(name);
+		item.setDescription(tenant);
+		return item;
+	}
+
+	@POST
+	@Path("items")
+	public List<Item> saveItems(List<Item> items)
+	{
+		return items;
+	}
+
+	public static List<Item> createItems(int size)
+	{
+		List<Item> items = new ArrayList<Item>(size);
+		for (int i = 0; i < size; i++)
+		{
+			Item item = new Item();
+			item.setId(i);
+			item.setName("item " + i);
+			item.setDescription("Description for the benchmark item number " + i);
+			item.setPrice(i * 1.5);
+			item.setActive((i % 2) == 0);
+			items.add(item);
+		}
+		return items;
+	}
+	
+	public static class Item
+	{
+		private long id;
+		private String name;
+		private String description;
+		private double price;
+		private boolean active;
+
+		public long getId()
+		{
+			return id;
+		}
+
+		public void setId(long id)
+		{
+			this.id = id;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public void setName(String name)
+		{
+			this.name = name;
+		}
+
+		public String getDescription()
+		{
+			return description;
+		}
+
+		public void setDescription(String description)
+		{
+			this.description = description;
+		}
+
+		public double getPrice()
+		{
+			return price;
+		}
+
+		public void setPrice(double price)
+		{
+			this.price = price;
+		}
+
+		public boolean isActive()
+		{
+			return active;
+		}
+
+		public void setActive(boolean active)
+		{
+			this.active = active;
+		}
+	}
+
+	public static class Filter
+	{
+		private int page;
+		private int pageSize;
+		private String orderBy;
+
+		public int getPage()
+		{
+			return page;
+		}
+
+		public void setPage(int page)
+		{
+			this.page = page;
+		}
+
+		public int getPageSize()
+		{
+			return pageSize;
+		}
+
+		public void setPageSize(int pageSize)
+		{
+			this.pageSize = pageSize;
+		}
+
+		public String getOrderBy()
+		{
+			return orderBy;
+		}
+
+		public void setOrderBy(String orderBy)
+		{
+			this.orderBy = orderBy;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.benchmark.rest;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+import javax.servlet.ServletContext;
+
+import org.cruxframework.crux.core.server.rest.core.registry.RestServiceFactory;
+
+/**
+ * Service factory that creates the benchmark services without scanning the classpath.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class BenchmarkServiceFactory implements RestServiceFactory
+{
+	@Override
+	public Object getService(Class<?> serviceClass)
+	{
+		try
+		{
+			return serviceClass.newInstance();
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void initialize(ServletContext context)
+	{
+	}
+
+	@Override
+	public Iterator<String> iterateRestServices()
+	{
+		return Collections.singletonList(BenchmarkService.class.getName()).iterator();
+	}
+
+	@Override
+	public Class<?> getServiceClass(String serviceName)
+	{
+		return BenchmarkService.class;
+	}
+}
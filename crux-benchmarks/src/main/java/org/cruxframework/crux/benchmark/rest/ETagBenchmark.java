@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.benchmark.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectWriter;
+import org.cruxframework.crux.core.server.rest.spi.HttpUtil;
+import org.cruxframework.crux.core.server.rest.spi.UriInfo;
+import org.cruxframework.crux.core.server.rest.state.ETagHandlerImpl;
+import org.cruxframework.crux.core.server.rest.state.ETagOutputStream;
+import org.cruxframework.crux.core.server.rest.state.MD5ETagHandlerImpl;
+import org.cruxframework.crux.core.server.rest.state.StreamingETagHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the CRC32C and the MD5 ETag handlers for small and large responses, both 
+ * hashing the serialized String and hashing the bytes while the response is serialized.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ETagBenchmark
+{
+	@Param({"10", "1000"})
+	public int items;
+
+	private StreamingETagHandler crc32cHandler = new ETagHandlerImpl();
+	private StreamingETagHandler md5Handler = new MD5ETagHandlerImpl();
+	private ObjectWriter writer;
+	private UriInfo uriInfo;
+	private Object entity;
+	private String content;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		uriInfo = HttpUtil.extractUriInfo(Requests.get("/bench/items", null));
+		entity = BenchmarkService.createItems(items);
+		writer = new ObjectMapper().writer();
+		content = writer.writeValueAsString(entity);
+	}
+
+	@Benchmark
+	public String crc32c()
+	{
+		return crc32cHandler.generateEtag(uriInfo, content);
+	}
+
+	@Benchmark
+	public String md5()
+	{
+		return md5Handler.generateEtag(uriInfo, content);
+	}
+
+	/**
+	 * Baseline for the streaming benchmarks: serializes to a String, hashes it and encodes it 
+	 * again for the response body.
+	 */
+	@Benchmark
+	public byte[] crc32cAfterSerialization() throws IOException
+	{
+		String value = writer.writeValueAsString(entity);
+		crc32cHandler.generateEtag(uriInfo, value);
+		return value.getBytes("UTF-8");
+	}
+
+	@Benchmark
+	public String crc32cStreaming() throws IOException
+	{
+		return serialize(crc32cHandler);
+	}
+
+	@Benchmark
+	public String md5Streaming() throws IOException
+	{
+		return serialize(md5Handler);
+	}
+
+	private String serialize(StreamingETagHandler handler) throws IOException
+	{
+		ETagOutputStream out = new ETagOutputStream(new ByteArrayOutputStream(1024), handler.createDigest(uriInfo));
+		writer.writeValue(out, entity);
+		return out.getEtag();
+	}
+}
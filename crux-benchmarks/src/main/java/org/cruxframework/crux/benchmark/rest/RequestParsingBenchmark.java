@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.benchmark.rest;
+
+import java.util.concurrent.TimeUnit;
+
+import org.cruxframework.crux.benchmark.mock.MockHttpServletRequest;
+import org.cruxframework.crux.core.server.rest.core.HttpHeaders;
+import org.cruxframework.crux.core.server.rest.spi.HttpUtil;
+import org.cruxframework.crux.core.server.rest.spi.UriInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the extraction of the request URI and headers, both when the request only needs 
+ * the matching path and when every parsed value is read.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestParsingBenchmark
+{
+	private MockHttpServletRequest servletRequest;
+
+	@Setup
+	public void setup()
+	{
+		servletRequest = Requests.get("/bench/items/42", "name=some%20item&filter.page=3&filter.pageSize=50&filter.orderBy=name");
+	}
+
+	@Benchmark
+	public String matchingPathOnly()
+	{
+		return HttpUtil.extractUriInfo(servletRequest).getMatchingPath();
+	}
+
+	@Benchmark
+	public void fullUriInfo(Blackhole blackhole)
+	{
+		UriInfo uriInfo = HttpUtil.extractUriInfo(servletRequest);
+		blackhole.consume(uriInfo.getMatchingPath());
+		blackhole.consume(uriInfo.getRequestUri());
+		blackhole.consume(uriInfo.getQueryParameters());
+		blackhole.consume(uriInfo.getPathSegments());
+	}
+
+	@Benchmark
+	public void fullHttpHeaders(Blackhole blackhole)
+	{
+		HttpHeaders headers = HttpUtil.extractHttpHeaders(servletRequest);
+		blackhole.consume(headers.getAcceptableMediaTypes());
+		blackhole.consume(headers.getAcceptableLanguages());
+		blackhole.consume(headers.getCookies());
+		blackhole.consume(headers.getHeaderString("X-Tenant"));
+	}
+}
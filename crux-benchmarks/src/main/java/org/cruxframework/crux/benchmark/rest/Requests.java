@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.benchmark.rest;
+
+import java.lang.reflect.Method;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.cruxframework.crux.benchmark.mock.MockHttpServletRequest;
+import org.cruxframework.crux.core.server.rest.core.dispatch.ResourceMethod;
+import org.cruxframework.crux.core.server.rest.core.registry.RestServiceFactoryInitializer;
+import org.cruxframework.crux.core.server.rest.spi.HttpRequest;
+import org.cruxframework.crux.core.server.rest.spi.HttpUtil;
+
+/**
+ * Helper methods shared by the rest benchmarks.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class Requests
+{
+	public static final String CONTEXT_PATH = "/app";
+	public static final String SERVLET_PATH = "/rest";
+
+	private static boolean initialized = false;
+
+	public static synchronized void initialize()
+	{
+		if (!initialized)
+		{
+			RestServiceFactoryInitializer.registerServiceFactory(new BenchmarkServiceFactory());
+			initialized = true;
+		}
+	}
+	
+	public static MockHttpServletRequest get(String path, String queryString)
+	{
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", CONTEXT_PATH, SERVLET_PATH, 
+																	CONTEXT_PATH + SERVLET_PATH + path, queryString);
+		return addDefaultHeaders(request);
+	}
+
+	public static MockHttpServletRequest post(String path, byte[] content)
+	{
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", CONTEXT_PATH, SERVLET_PATH, 
+																	CONTEXT_PATH + SERVLET_PATH + path, null);
+		request.addHeader("Content-Type", "application/json; charset=UTF-8");
+		request.setContent(content);
+		return addDefaultHeaders(request);
+	}
+
+	public static HttpRequest wrap(HttpServletRequest request)
+	{
+		return new HttpRequest(request, HttpUtil.extractHttpHeaders(request), HttpUtil.extractUriInfo(request), request.getMethod());
+	}
+
+	public static ResourceMethod resourceMethod(String methodName, String httpMethod)
+	{
+		for (Method method : BenchmarkService.class.getMethods())
+		{
+			if (method.getName().equals(methodName))
+			{
+				return new ResourceMethod(BenchmarkService.class, method, httpMethod);
+			}
+		}
+		throw new IllegalArgumentException("Method not found: " + methodName);
+	}
+	
+	private static MockHttpServletRequest addDefaultHeaders(MockHttpServletRequest request)
+	{
+		request.addHeader("Host", "localhost:8080");
+		request.addHeader("Accept", "application/json, text/plain;q=0.9, */*;q=0.8");
+		request.addHeader("Accept-Language", "pt-BR,pt;q=0.8,en-US;q=0.6,en;q=0.4");
+		request.addHeader("Accept-Encoding", "gzip, deflate");
+		request.addHeader("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/45.0 Safari/537.36");
+		request.addHeader("X-Tenant", "benchmark");
+		request.addHeader("Cookie", "JSESSIONID=0123456789ABCDEF");
+		return request;
+	}
+}
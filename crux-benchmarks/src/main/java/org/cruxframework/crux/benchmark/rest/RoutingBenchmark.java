@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.benchmark.rest;
+
+import java.util.concurrent.TimeUnit;
+
+import org.cruxframework.crux.benchmark.mock.MockHttpServletRequest;
+import org.cruxframework.crux.core.server.rest.core.dispatch.ResourceMethod;
+import org.cruxframework.crux.core.server.rest.core.registry.CompiledRouter;
+import org.cruxframework.crux.core.server.rest.core.registry.RootSegment;
+import org.cruxframework.crux.core.server.rest.core.registry.RouteMatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the resource lookup for a registry with 10, 100 and 1000 routes, comparing the 
+ * segment tree walk with the compiled router. The requested route is the last one registered.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark
+{
+	@Param({"10", "100", "1000"})
+	public int routes;
+
+	private RootSegment rootSegment;
+	private CompiledRouter router;
+	private MockHttpServletRequest servletRequest;
+
+	@Setup
+	public void setup()
+	{
+		Requests.initialize();
+		ResourceMethod resourceMethod = Requests.resourceMethod("getItem", "GET");
+		rootSegment = new RootSegment();
+		for (int i = 0; i < routes; i++)
+		{
+			rootSegment.addPath("svc" + i + "/items/{id}", resourceMethod);
+		}
+		router = new CompiledRouter(rootSegment);
+		servletRequest = Requests.get("/svc" + (routes - 1) + "/items/42", null);
+	}
+
+	@Benchmark
+	public ResourceMethod segmentTree()
+	{
+		return rootSegment.matchRoot(Requests.wrap(servletRequest));
+	}
+
+	@Benchmark
+	public RouteMatch compiledRouter()
+	{
+		return router.matchRoot(Requests.wrap(servletRequest));
+	}
+}
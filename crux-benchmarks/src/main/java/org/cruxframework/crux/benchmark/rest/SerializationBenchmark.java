@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.benchmark.rest;
+
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.cruxframework.crux.benchmark.mock.MockHttpServletRequest;
+import org.cruxframework.crux.benchmark.mock.MockHttpServletResponse;
+import org.cruxframework.crux.core.server.rest.core.dispatch.ResourceMethod;
+import org.cruxframework.crux.core.server.rest.core.dispatch.ResourceMethod.MethodReturn;
+import org.cruxframework.crux.core.server.rest.spi.HttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a full resource method invocation: the JSON body is deserialized, the service is 
+ * called and its return is serialized back to JSON.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark
+{
+	@Param({"10", "1000"})
+	public int items;
+
+	private ResourceMethod resourceMethod;
+	private byte[] content;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		Requests.initialize();
+		resourceMethod = Requests.resourceMethod("saveItems", "POST");
+		content = new ObjectMapper().writeValueAsBytes(BenchmarkService.createItems(items));
+	}
+
+	@Benchmark
+	public MethodReturn invoke()
+	{
+		MockHttpServletRequest servletRequest = Requests.post("/bench/items", content);
+		return resourceMethod.invoke(Requests.wrap(servletRequest), new HttpResponse(new MockHttpServletResponse()));
+	}
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.client.rpc;
+
+import java.util.List;
+
+import org.cruxframework.crux.core.client.collection.FastList;
+import org.cruxframework.crux.core.client.collection.FastMap;
+import org.cruxframework.crux.core.shared.rpc.RpcBatch;
+import org.cruxframework.crux.core.shared.rpc.st.CruxSynchronizerTokenService;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.http.client.Header;
+import com.google.gwt.http.client.Request;
+import com.google.gwt.http.client.RequestBuilder;
+import com.google.gwt.http.client.RequestCallback;
+import com.google.gwt.http.client.RequestException;
+import com.google.gwt.http.client.Response;
+
+/**
+ * An RPC request builder that groups the calls made during the same event loop into a 
+ * single batch request. Calls are grouped by service entry point, and the synchronizer token 
+ * of each call (sent by the proxies as an entry point parameter) is sent along with its 
+ * payload, so the server validates it for each call. A group with a single call is sent as 
+ * a regular RPC request.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class CruxRpcBatchRequestBuilder extends CruxRpcRequestBuilder
+{
+	public static final int MAX_BATCH_CALLS = 20;
+	private static final String SYNC_TOKEN_PARAM = CruxSynchronizerTokenService.CRUX_SYNC_TOKEN_PARAM + "=";
+	private static final String CONTENT_TYPE_HEADER = "Content-Type";
+
+	private static FastMap<Batch> pendingBatches = new FastMap<Batch>();
+	
+	public CruxRpcBatchRequestBuilder(String viewName)
+	{
+		super(viewName);
+	}
+	
+	@Override
+	protected RequestBuilder doCreate(String serviceEntryPoint)
+	{
+		return new BatchedRequestBuilder(serviceEntryPoint);
+	}
+
+	private Request enqueue(BatchedRequestBuilder builder)
+	{
+		String url = builder.getUrl();
+		String token = "";
+		int paramStart = url.indexOf("?" + SYNC_TOKEN_PARAM);
+		if (paramStart < 0)
+		{
+			paramStart = url.indexOf("&" + SYNC_TOKEN_PARAM);
+		}
+		if (paramStart >= 0)
+		{
+			int valueStart = paramStart + 1 + SYNC_TOKEN_PARAM.length();
+			int valueEnd = url.indexOf('&', valueStart);
+			if (valueEnd < 0)
+			{
+				token = url.substring(valueStart);
+				url = url.substring(0, paramStart);
+			}
+			else
+			{
+				token = url.substring(valueStart, valueEnd);
+				url = url.substring(0, paramStart + 1) + url.substring(valueEnd + 1);
+			}
+		}
+		
+		Batch batch = pendingBatches.get(url);
+		if (batch == null)
+		{
+			final Batch newBatch = new Batch(url);
+			pendingBatches.put(url, newBatch);
+			Scheduler.get().scheduleFinally(new ScheduledCommand()
+			{
+				@Override
+				public void execute()
+				{
+					newBatch.flush();
+				}
+			});
+			batch = newBatch;
+		}
+		
+		BatchedRequest request = new BatchedRequest(batch, builder, token);
+		batch.calls.add(request);
+		if (batch.calls.size() >= MAX_BATCH_CALLS)
+		{
+			batch.flush();
+		}
+		return request;
+	}
+
+	/**
+	 * Request builder for a call that will be sent in a batch.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	private class BatchedRequestBuilder extends RequestBuilder
+	{
+		public BatchedRequestBuilder(String url)
+		{
+			super(RequestBuilder.POST.toString(), url);
+		}
+
+		@Override
+		public Request send() throws RequestException
+		{
+			return enqueue(this);
+		}
+
+		@Override
+		public Request sendRequest(String requestData, RequestCallback callback) throws RequestException
+		{
+			setRequestData(requestData);
+			setCallback(callback);
+			return send();
+		}
+	}
+
+	/**
+	 * The calls made to the same entry point, waiting to be sent.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	private class Batch implements RequestCallback
+	{
+		private final String url;
+		private FastList<BatchedRequest> calls = new FastList<BatchedRequest>();
+		private boolean flushed = false;
+
+		public Batch(String url)
+		{
+			this.url = url;
+		}
+
+		public void flush()
+		{
+			if (flushed)
+			{
+				return;
+			}
+			flushed = true;
+			if (pendingBatches.get(url) == this)
+			{
+				pendingBatches.remove(url);
+			}
+			if (calls.size() == 0)
+			{
+				return;
+			}
+			if (calls.size() == 1)
+			{
+				sendAlone(calls.get(0));
+				return;
+			}
+
+			StringBuilder body = new StringBuilder();
+			int timeout = 0;
+			for (int i = 0; i < calls.size(); i++)
+			{
+				BatchedRequest call = calls.get(i);
+				RpcBatch.appendField(body, call.token);
+				RpcBatch.appendField(body, call.builder.getRequestData());
+				timeout = Math.max(timeout, call.builder.getTimeoutMillis());
+			}
+			RequestBuilder rb = new RequestBuilder(RequestBuilder.POST, url);
+			doFinish(rb);
+			rb.setHeader(CONTENT_TYPE_HEADER, calls.get(0).builder.getHeader(CONTENT_TYPE_HEADER));
+			rb.setHeader(RpcBatch.BATCH_HEADER, Integer.toString(calls.size()));
+			rb.setTimeoutMillis(timeout);
+			rb.setRequestData(body.toString());
+			rb.setCallback(this);
+			try
+			{
+				rb.send();
+			}
+			catch (RequestException e)
+			{
+				onError(null, e);
+			}
+		}
+
+		private void sendAlone(BatchedRequest call)
+		{
+			RequestBuilder rb = new RequestBuilder(RequestBuilder.POST, call.builder.getUrl());
+			doFinish(rb);
+			rb.setHeader(CONTENT_TYPE_HEADER, call.builder.getHeader(CONTENT_TYPE_HEADER));
+			rb.setTimeoutMillis(call.builder.getTimeoutMillis());
+			rb.setRequestData(call.builder.getRequestData());
+			rb.setCallback(call.builder.getCallback());
+			try
+			{
+				call.sentAlone = rb.send();
+			}
+			catch (RequestException e)
+			{
+				call.fail(e);
+			}
+		}
+
+		@Override
+		public void onResponseReceived(Request request, Response response)
+		{
+			if (response.getStatusCode() != Response.SC_OK)
+			{
+				for (int i = 0; i < calls.size(); i++)
+				{
+					calls.get(i).receive(new BatchedResponse(response, response.getStatusCode(), response.getText()));
+				}
+				return;
+			}
+			
+			List<String> responses;
+			try
+			{
+				responses = RpcBatch.readFields(response.getText());
+			}
+			catch (IllegalArgumentException e)
+			{
+				onError(request, e);
+				return;
+			}
+			for (int i = 0; i < calls.size(); i++)
+			{
+				String text = (i < responses.size() ? responses.get(i) : "");
+				int statusCode = (text.length() > 0 ? Response.SC_OK : Response.SC_INTERNAL_SERVER_ERROR);
+				calls.get(i).receive(new BatchedResponse(response, statusCode, text));
+			}
+		}
+
+		@Override
+		public void onError(Request request, Throwable exception)
+		{
+			for (int i = 0; i < calls.size(); i++)
+			{
+				calls.get(i).fail(exception);
+			}
+		}
+	}
+	
+	/**
+	 * The request returned to the RPC proxy for a batched call.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	private static class BatchedRequest extends Request
+	{
+		private final Batch batch;
+		private final RequestBuilder builder;
+		private final String token;
+		private Request sentAlone;
+		private boolean done = false;
+
+		public BatchedRequest(Batch batch, RequestBuilder builder, String token)
+		{
+			this.batch = batch;
+			this.builder = builder;
+			this.token = token;
+		}
+
+		@Override
+		public void cancel()
+		{
+			if (!done)
+			{
+				done = true;
+				if (sentAlone != null)
+				{
+					sentAlone.cancel();
+				}
+				else if (!batch.flushed)
+				{
+					batch.calls.remove(this);
+				}
+			}
+		}
+
+		@Override
+		public boolean isPending()
+		{
+			if (sentAlone != null)
+			{
+				return sentAlone.isPending();
+			}
+			return !done;
+		}
+
+		private void receive(Response response)
+		{
+			if (!done)
+			{
+				done = true;
+				builder.getCallback().onResponseReceived(this, response);
+			}
+		}
+
+		private void fail(Throwable exception)
+		{
+			if (!done)
+			{
+				done = true;
+				builder.getCallback().onError(this, exception);
+			}
+		}
+	}
+	
+	/**
+	 * The response of a single call of a batch. 
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	private static class BatchedResponse extends Response
+	{
+		private final Response batchResponse;
+		private final int statusCode;
+		private final String text;
+
+		public BatchedResponse(Response batchResponse, int statusCode, String text)
+		{
+			this.batchResponse = batchResponse;
+			this.statusCode = statusCode;
+			this.text = text;
+		}
+
+		@Override
+		public String getHeader(String header)
+		{
+			return batchResponse.getHeader(header);
+		}
+
+		@Override
+		public Header[] getHeaders()
+		{
+			return batchResponse.getHeaders();
+		}
+
+		@Override
+		public String getHeadersAsString()
+		{
+			return batchResponse.getHeadersAsString();
+		}
+
+		@Override
+		public int getStatusCode()
+		{
+			return statusCode;
+		}
+
+		@Override
+		public String getStatusText()
+		{
+			return (statusCode == batchResponse.getStatusCode() ? batchResponse.getStatusText() : "Internal Server Error");
+		}
+
+		@Override
+		public String getText()
+		{
+			return text;
+		}
+	}
+}
@@ -35,7 +35,10 @@ public class CruxRpcRequestBuilder extends RpcRequestBuilder
 	@Override
 	protected void doFinish(RequestBuilder rb)
 	{
-		rb.setHeader(VIEW_INFO_HEADER, viewName);
+		if (viewName != null)
+		{
+			rb.setHeader(VIEW_INFO_HEADER, viewName);
+		}
 	    super.doFinish(rb);
 	}
 }
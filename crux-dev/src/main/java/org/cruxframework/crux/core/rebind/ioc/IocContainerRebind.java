@@ -27,6 +27,7 @@ import org.cruxframework.crux.core.client.ioc.Inject;
 import org.cruxframework.crux.core.client.ioc.IoCResource.Scope;
 import org.cruxframework.crux.core.client.ioc.IocContainer;
 import org.cruxframework.crux.core.client.ioc.IocProvider;
+import org.cruxframework.crux.core.client.rpc.CruxRpcBatchRequestBuilder;
 import org.cruxframework.crux.core.client.rpc.CruxRpcRequestBuilder;
 import org.cruxframework.crux.core.client.screen.DeviceAdaptive.Device;
 import org.cruxframework.crux.core.client.screen.views.ViewBindable;
@@ -202,11 +203,14 @@ public class IocContainerRebind extends AbstractProxyCreator
 				{
 					throw new CruxGeneratorException("Can not found type: "+instantiationClass);
 				}
-				if (instantiationType.isAssignableTo(remoteServiceType) && ConfigurationFactory.getConfigurations().sendCruxViewNameOnClientRequests().equals("true"))
+				boolean sendViewName = ConfigurationFactory.getConfigurations().sendCruxViewNameOnClientRequests().equals("true");
+				boolean batchCalls = ConfigurationFactory.getConfigurations().enableRpcBatching().equals("true");
+				if (instantiationType.isAssignableTo(remoteServiceType) && (sendViewName || batchCalls))
 				{
+					String requestBuilderClass = (batchCalls ? CruxRpcBatchRequestBuilder.class : CruxRpcRequestBuilder.class).getCanonicalName();
 					srcWriter.println(className + " ret = GWT.create("+instantiationClass+".class);");
 					srcWriter.println("(("+ServiceDefTarget.class.getCanonicalName() + ")ret).setRpcRequestBuilder(new "
-							+ CruxRpcRequestBuilder.class.getCanonicalName() + "(getBoundCruxViewId()));");
+							+ requestBuilderClass + "(" + (sendViewName ? "getBoundCruxViewId()" : "null") + "));");
 					srcWriter.println("return ret;");
 				}
 				else
@@ -18,6 +18,7 @@ package org.cruxframework.crux.core.rebind.rest;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
@@ -38,6 +39,7 @@ import org.cruxframework.crux.core.shared.rest.RestException;
 import org.cruxframework.crux.core.shared.rest.annotation.GET;
 import org.cruxframework.crux.core.shared.rest.annotation.Path;
 import org.cruxframework.crux.core.shared.rest.annotation.StateValidationModel;
+import org.cruxframework.crux.core.utils.ClassUtils;
 import org.cruxframework.crux.core.utils.EncryptUtils;
 import org.cruxframework.crux.core.utils.JClassUtils;
 
@@ -287,12 +289,25 @@ public class CruxRestProxyCreatorFromServerMetadata extends CruxRestProxyCreator
 		}
 
 		JClassType lastParameterType = proxyTypes[proxyTypes.length - 1].isClassOrInterface();
-		if (!isTypesCompatiblesForSerialization(implementationMethod.getReturnType(), JClassUtils.getTypeArgForGenericType(lastParameterType)))
+		if (!isTypesCompatiblesForSerialization(getReturnedValueType(implementationMethod), JClassUtils.getTypeArgForGenericType(lastParameterType)))
 		{
 			throw new CruxGeneratorException("Invalid signature for rest proxy method. Return type of implementation method is not compatible with Callback's type. Method["+method.getReadableDeclaration()+"]");
 		}
 	}
 
+	/**
+	 * Methods that return a {@link java.util.concurrent.Future} send the Future's value as response.
+	 */
+	private Class<?> getReturnedValueType(Method implementationMethod)
+	{
+		Type futureValueType = ClassUtils.getFutureValueType(implementationMethod.getGenericReturnType());
+		if (futureValueType != null)
+		{
+			return ClassUtils.getRawType(futureValueType);
+		}
+		return implementationMethod.getReturnType();
+	}
+
 	private boolean isTypesCompatiblesForSerialization(Class<?> class1, JType jType)
 	{
 		if (jType.isEnum() != null)
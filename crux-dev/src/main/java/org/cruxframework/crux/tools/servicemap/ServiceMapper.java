@@ -142,6 +142,28 @@ public class ServiceMapper extends AbstractMapper
 		}
 	}
 	
+	/**
+	 * Generates the annotation index used by the class scanner
+	 */
+	public void generateAnnotationIndex()
+	{
+		try
+		{
+			File indexFile = new File(getMetaInfFile(), "crux-annotations");
+			if (indexFile.exists() && !isOverride())
+			{
+				logger.info("Annotation index already exists. Skipping generation...");
+				return;
+			}
+			initializeScannerURLs();
+			ClassScanner.generateIndexFile(indexFile);
+		}
+		catch (IOException e)
+		{
+			throw new ServiceMapperException("Error creating annotation index", e);
+		}
+	}
+	
 	/**
 	 * Starts ServiceMapper program
 	 * @param args
@@ -160,6 +182,7 @@ public class ServiceMapper extends AbstractMapper
 		{
 			serviceMapper.processParameters(parameters.values());
 			
+			serviceMapper.generateAnnotationIndex();
 			serviceMapper.generateServicesMap();
 			serviceMapper.generateRestServicesMap();
 		}
@@ -17,8 +17,8 @@ package org.cruxframework.crux.core.config;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -35,7 +35,7 @@ import org.cruxframework.crux.core.i18n.MessageException;
  */
 public abstract class AbstractPropertiesFactory
 {
-	private Map<String, Object> cachedProxies = new HashMap<String, Object>();
+	private Map<Class<?>, Object> cachedProxies = new ConcurrentHashMap<Class<?>, Object>();
 	private final Lock initLock = new ReentrantLock(true);
 			
 	/**
@@ -47,7 +47,7 @@ public abstract class AbstractPropertiesFactory
 	@SuppressWarnings("unchecked")
 	protected <T> T getConstantsFromProperties(final Class<T> targetInterface) throws MessageException
 	{
-		T proxy = (T)cachedProxies.get(targetInterface.getCanonicalName());
+		T proxy = (T)cachedProxies.get(targetInterface);
 		if (proxy != null)
 		{
 			return proxy;
@@ -66,7 +66,7 @@ public abstract class AbstractPropertiesFactory
 	@SuppressWarnings("unchecked")
 	protected <T> T initProxy (final Class<T> targetInterface)
 	{
-		T proxy = (T)cachedProxies.get(targetInterface.getCanonicalName());
+		T proxy = (T)cachedProxies.get(targetInterface);
 		if (proxy == null)
 		{
 
@@ -76,7 +76,7 @@ public abstract class AbstractPropertiesFactory
 			{
 				InvocationHandler invocationHandler = getInvocationHandler(targetInterface);
 				proxy = (T) proxyClass.getConstructor(new Class<?>[] { InvocationHandler.class }).newInstance(new Object[] { invocationHandler });
-				cachedProxies.put(targetInterface.getCanonicalName(), proxy);
+				cachedProxies.put(targetInterface, proxy);
 				return proxy;
 			}
 			catch (Exception e) 
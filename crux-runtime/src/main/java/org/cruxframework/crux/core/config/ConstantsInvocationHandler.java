@@ -61,15 +61,27 @@ public abstract class ConstantsInvocationHandler implements InvocationHandler
 		this(targetInterface, true);
 	}
 
+	/**
+	 * @return the interface handled by this proxy
+	 */
+	protected Class<?> getTargetInterface()
+	{
+		return targetInterface;
+	}
+
 	/**
 	 * 
 	 */
 	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
 	{
 		String name = method.getName();
-		if (this.isCacheable && resolvedConstants.containsKey(name))
+		if (this.isCacheable)
 		{
-			return resolvedConstants.get(name);
+			String cached = resolvedConstants.get(name);
+			if (cached != null)
+			{
+				return cached;
+			}
 		}
 		String message = null;
 		try
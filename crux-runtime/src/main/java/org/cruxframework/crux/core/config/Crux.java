@@ -24,6 +24,10 @@ import org.cruxframework.crux.core.i18n.DefaultServerMessage;
  */
 public interface Crux 
 {
+	//File used to cache the annotation index between restarts. Empty means no cache.
+	@DefaultServerMessage("")
+	String annotationIndexCacheFile();
+
 	@DefaultServerMessage("")
 	String cruxXmlPreProcessors();
 	
@@ -45,12 +49,36 @@ public interface Crux
 	@DefaultServerMessage("true")
 	String enableGenerateHTMLDoctype();
 
+	//Collect request counts and latency histograms for the REST and RPC endpoints. 
+	//See MetricsServlet and the org.cruxframework.crux:type=Metrics MBean.
+	@DefaultServerMessage("false")
+	String enableMetrics();
+
+	//Scan classpath archives and directories concurrently, on a fork-join pool 
+	@DefaultServerMessage("false")
+	String enableParallelClasspathScanning();
+
 	@DefaultServerMessage("true")
 	String enableResourceStateCacheForRestServices();
 
 	@DefaultServerMessage("false")
 	String enableRestHostPageBaseURL();
 
+	//Concurrent requests for an expired cacheable resource wait for one single refresh and share its result
+	@DefaultServerMessage("false")
+	String enableRestRequestCoalescing();
+
+	@DefaultServerMessage("false")
+	String enableRestResponseStreaming();
+
+	//When coalescing requests, serve the expired content, if still available, instead of waiting for the refresh
+	@DefaultServerMessage("false")
+	String enableRestStaleWhileRevalidate();
+
+	//Send the RPC calls made on the same event loop in a single batch request
+	@DefaultServerMessage("false")
+	String enableRpcBatching();
+
 	//Add in documentation!
 	@DefaultServerMessage("org.cruxframework.crux.core.server.rest.state.ETagHandlerImpl")
 	String eTagHandler();
@@ -64,9 +92,36 @@ public interface Crux
 	@DefaultServerMessage("false")
 	String renderWidgetsWithIDs();
 	
+	//Number of threads used to wait for the results of rest methods that return a Future, releasing the 
+	//container threads. Requires a Servlet 3.0 container. Zero waits for the results on the container threads.
+	@DefaultServerMessage("0")
+	String restAsyncThreads();
+
+	//Max time, in milliseconds, to wait for the results of rest methods that return a Future. Non positive values mean no limit.
+	@DefaultServerMessage("30000")
+	String restAsyncTimeout();
+
+	//Max time, in milliseconds, to wait for the refresh of a coalesced rest request, before refreshing it again. 
+	//When the resource state handler coordinates the refreshes of a cluster, its refresh lease time is added to it. 
+	//Non positive values mean no limit.
+	@DefaultServerMessage("10000")
+	String restCoalescingTimeout();
+
 	@DefaultServerMessage("org.cruxframework.crux.core.server.rest.core.dispatch.RestErrorHandlerImpl")
 	String restErrorHandler();
 
+	//Max number of calls accepted on a single RPC batch request.
+	@DefaultServerMessage("50")
+	String rpcBatchMaxCalls();
+
+	//Number of threads used to run the calls of RPC batch requests in parallel. Zero runs them sequentially.
+	@DefaultServerMessage("0")
+	String rpcBatchThreads();
+
+	//Max number of bytes accepted on rest requests body. Negative values mean no limit.
+	@DefaultServerMessage("-1")
+	String restMaxRequestBodySize();
+
 	@DefaultServerMessage("org.cruxframework.crux.core.server.rest.core.registry.RestServiceFactoryImpl")
 	String restServiceFactory();
 	
@@ -88,15 +143,28 @@ public interface Crux
 	String sendCruxViewNameOnClientRequests();
 	@DefaultServerMessage("org.cruxframework.crux.core.server.dispatch.ServiceFactoryImpl")
 	String serviceFactory();
+	void setAnnotationIndexCacheFile(String value);
 	void setDisableRefreshByDefault(String value);
 	void setEnableChildrenWindowsDebug(Boolean value);
 	void setEnableCrux2OldInterfacesCompatibility(Boolean value);
+	void setEnableMetrics(String value);
+	void setEnableParallelClasspathScanning(String value);
 	void setEnableResourceStateCacheForRestServices(String value);
+	void setEnableRestRequestCoalescing(String value);
+	void setEnableRestResponseStreaming(String value);
+	void setEnableRestStaleWhileRevalidate(String value);
+	void setEnableRpcBatching(String value);
 	void setETagHandler(String value);
 	void setLocaleResolver(String value);
 	void setPreferWebSQLForNativDB(Boolean value);
 	void setRenderWidgetsWithIDs(Boolean value);
+	void setRestAsyncThreads(String value);
+	void setRestAsyncTimeout(String value);
+	void setRestCoalescingTimeout(String value);
+	void setRestMaxRequestBodySize(String value);
 	void setRestServiceResourceStateHandler(String value);
+	void setRpcBatchMaxCalls(String value);
+	void setRpcBatchThreads(String value);
 	void setScanAllowedLibs(String value);
 	void setScanAllowedPackages(String value);
 	void setScanIgnoredLibs(String value);
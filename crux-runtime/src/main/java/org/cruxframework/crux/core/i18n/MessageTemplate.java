@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.i18n;
+
+import java.text.DateFormat;
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A message pattern, parsed once and formatted like {@link MessageFormat#format(String, Object...)}.  
+ * Instances are immutable and can be shared by concurrent threads (the number format used for 
+ * numeric arguments is kept per thread).
+ * 
+ * <p>Patterns without arguments are formatted only once. Patterns whose arguments do not declare 
+ * a format type (like <code>{0}</code>) are kept as a list of literal segments and argument indexes. 
+ * Any other pattern is formatted by a copy of a pre-parsed {@link MessageFormat}.</p>
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+class MessageTemplate
+{
+	private final String constant;
+	private final String[] segments;
+	private final int[] arguments;
+	private final MessageFormat format;
+	private final Locale locale;
+	private final ThreadLocal<NumberFormat> numberFormat = new ThreadLocal<NumberFormat>();
+
+	private MessageTemplate(String constant, String[] segments, int[] arguments, MessageFormat format, Locale locale)
+	{
+		this.constant = constant;
+		this.segments = segments;
+		this.arguments = arguments;
+		this.format = format;
+		this.locale = locale;
+	}
+
+	/**
+	 * Parse the given pattern.
+	 * @param pattern
+	 * @return
+	 * @throws IllegalArgumentException if the pattern is invalid
+	 */
+	public static MessageTemplate compile(String pattern) throws IllegalArgumentException
+	{
+		MessageFormat format = new MessageFormat(pattern);
+		if (format.getFormatsByArgumentIndex().length == 0)
+		{
+			return new MessageTemplate(format.format(null), null, null, null, null);
+		}
+		
+		List<String> segments = new ArrayList<String>();
+		List<Integer> arguments = new ArrayList<Integer>();
+		StringBuilder segment = new StringBuilder();
+		boolean inQuote = false;
+		int length = pattern.length();
+		for (int i = 0; i < length; i++)
+		{
+			char c = pattern.charAt(i);
+			if (c == '\'')
+			{
+				if (i + 1 < length && pattern.charAt(i + 1) == '\'')
+				{
+					segment.append(c);
+					i++;
+				}
+				else
+				{
+					inQuote = !inQuote;
+				}
+			}
+			else if (c == '{' && !inQuote)
+			{
+				int end = pattern.indexOf('}', i);
+				int argument = parseArgumentIndex(pattern, i + 1, end);
+				if (argument < 0)
+				{
+					// Formatted arguments ({0,number} for example) are handled by MessageFormat itself 
+					return new MessageTemplate(null, null, null, format, null);
+				}
+				segments.add(segment.toString());
+				segment.setLength(0);
+				arguments.add(argument);
+				i = end;
+			}
+			else
+			{
+				segment.append(c);
+			}
+		}
+		segments.add(segment.toString());
+		
+		int[] argumentIndexes = new int[arguments.size()];
+		for (int i = 0; i < argumentIndexes.length; i++)
+		{
+			argumentIndexes[i] = arguments.get(i);
+		}
+		return new MessageTemplate(null, segments.toArray(new String[segments.size()]), argumentIndexes, null, format.getLocale());
+	}
+
+	/**
+	 * Format the message with the given arguments.
+	 * @param args
+	 * @return
+	 */
+	public String format(Object[] args)
+	{
+		if (constant != null)
+		{
+			return constant;
+		}
+		if (format != null)
+		{
+			return ((MessageFormat) format.clone()).format(args);
+		}
+		
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < arguments.length; i++)
+		{
+			result.append(segments[i]);
+			int argument = arguments[i];
+			if (args == null || argument >= args.length)
+			{
+				result.append('{').append(argument).append('}');
+			}
+			else
+			{
+				result.append(formatArgument(args[argument]));
+			}
+		}
+		result.append(segments[arguments.length]);
+		return result.toString();
+	}
+
+	/**
+	 * Format an argument without a declared format type, the same way MessageFormat does.
+	 * @param value
+	 * @return
+	 */
+	private String formatArgument(Object value)
+	{
+		if (value == null)
+		{
+			return "null";
+		}
+		if (value instanceof String)
+		{
+			return (String) value;
+		}
+		if (value instanceof Number)
+		{
+			NumberFormat result = numberFormat.get();
+			if (result == null)
+			{
+				result = NumberFormat.getInstance(locale);
+				numberFormat.set(result);
+			}
+			return result.format(value);
+		}
+		if (value instanceof Date)
+		{
+			return DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, locale).format(value);
+		}
+		return value.toString();
+	}
+
+	/**
+	 * Parse an argument declaration that contains only its index, ignoring surrounding white spaces.
+	 * @return the argument index or -1 if the declaration contains a format type
+	 */
+	private static int parseArgumentIndex(String pattern, int start, int end)
+	{
+		if (end < 0)
+		{
+			return -1;
+		}
+		String argument = pattern.substring(start, end).trim();
+		if (argument.length() == 0)
+		{
+			return -1;
+		}
+		for (int i = 0; i < argument.length(); i++)
+		{
+			if (!Character.isDigit(argument.charAt(i)))
+			{
+				return -1;
+			}
+		}
+		return Integer.parseInt(argument);
+	}
+}
@@ -15,16 +15,17 @@
  */
 package org.cruxframework.crux.core.i18n;
 
-import java.util.HashMap;
+import java.lang.reflect.Method;
 import java.util.Locale;
 import java.util.Map;
 import java.util.PropertyResourceBundle;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.cruxframework.crux.core.config.AbstractPropertiesFactory;
 import org.cruxframework.crux.core.config.ConstantsInvocationHandler;
 
+import com.google.gwt.i18n.client.Messages.DefaultMessage;
+
 
 /**
  * Factory for messages. Receive an Interface and use it's name to look for 
@@ -62,14 +63,16 @@ public class MessagesFactory extends AbstractPropertiesFactory
 }
 
 /**
- * Dynamic proxy for message resources.
+ * Dynamic proxy for message resources. The message patterns are parsed only once, for each 
+ * locale, and cached as {@link MessageTemplate}s.
  * @author Thiago da Rosa de Bustamante
  * @author Gesse S. F. Dafe
  */
 class MessagesInvocationHandler extends ConstantsInvocationHandler
 {
-	Map<Locale, PropertyResourceBundle> localeMessages = new HashMap<Locale, PropertyResourceBundle>();
-	private static final Lock propertiesLock = new ReentrantLock(true);	
+	private static final MessageTemplate MISSING_MESSAGE = MessageTemplate.compile("");
+	private final Map<Locale, LocaleMessages> localeMessages = new ConcurrentHashMap<Locale, LocaleMessages>();
+	private final Map<Method, MessageTemplate> defaultMessages = new ConcurrentHashMap<Method, MessageTemplate>();
 	
 	public MessagesInvocationHandler(Class<?> targetInterface) 
 	{
@@ -77,27 +80,85 @@ class MessagesInvocationHandler extends ConstantsInvocationHandler
 	}
 	
 	@Override
-	protected <T> PropertyResourceBundle getPropertiesForLocale(final Class<T> targetInterface) 
+	protected String getMessageFromProperties(Object[] args, String name)
 	{
-		Locale userLocale = LocaleResolverInitializer.getLocaleResolver().getUserLocale();
-		PropertyResourceBundle properties = null;
-		if (!localeMessages.containsKey(userLocale))
+		LocaleMessages messages = getLocaleMessages();
+		if (messages.properties == null)
+		{
+			return null;
+		}
+		MessageTemplate template = messages.templates.get(name);
+		if (template == null)
 		{
-			propertiesLock.lock();
-			try
+			template = (messages.properties.containsKey(name) ? MessageTemplate.compile(messages.properties.getString(name)) : MISSING_MESSAGE);
+			messages.templates.put(name, template);
+		}
+		if (template == MISSING_MESSAGE)
+		{
+			return null;
+		}
+		return template.format(args);
+	}
+	
+	@Override
+	protected String getMessageFromAnnotation(Method method, Object[] args, String name)
+	{
+		MessageTemplate template = defaultMessages.get(method);
+		if (template == null)
+		{
+			DefaultServerMessage serverAnnot = method.getAnnotation(DefaultServerMessage.class);
+			DefaultMessage clientAnnot = method.getAnnotation(DefaultMessage.class);
+			if (serverAnnot != null)
 			{
-				properties = loadProperties(targetInterface, userLocale);
-				localeMessages.put(userLocale, properties);
+				template = MessageTemplate.compile(serverAnnot.value());
+			} 
+			else if (clientAnnot != null) 
+			{
+				template = MessageTemplate.compile(clientAnnot.value());
 			}
-			finally
+			else
 			{
-				propertiesLock.unlock();	
+				template = MISSING_MESSAGE;
 			}
+			defaultMessages.put(method, template);
+		}
+		if (template == MISSING_MESSAGE)
+		{
+			return null;
+		}
+		return template.format(args);
+	}
+
+	@Override
+	protected <T> PropertyResourceBundle getPropertiesForLocale(final Class<T> targetInterface) 
+	{
+		return getLocaleMessages().properties;
+	}
+
+	private LocaleMessages getLocaleMessages()
+	{
+		Locale userLocale = LocaleResolverInitializer.getLocaleResolver().getUserLocale();
+		LocaleMessages messages = localeMessages.get(userLocale);
+		if (messages == null)
+		{
+			messages = new LocaleMessages(loadProperties(getTargetInterface(), userLocale));
+			localeMessages.put(userLocale, messages);
 		}
-		else
+		return messages;
+	}
+	
+	/**
+	 * The messages bundle for a locale and its parsed message templates.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	private static class LocaleMessages
+	{
+		private final PropertyResourceBundle properties;
+		private final Map<String, MessageTemplate> templates = new ConcurrentHashMap<String, MessageTemplate>();
+
+		private LocaleMessages(PropertyResourceBundle properties)
 		{
-			properties = localeMessages.get(userLocale);
+			this.properties = properties;
 		}
-		return properties;
 	}
-}
\ No newline at end of file
+}
@@ -22,6 +22,7 @@ import javax.servlet.ServletContextListener;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cruxframework.crux.core.server.dispatch.ServiceFactoryInitializer;
+import org.cruxframework.crux.core.server.metrics.Metrics;
 import org.cruxframework.crux.core.server.rest.core.registry.RestServiceFactoryInitializer;
 
 
@@ -41,6 +42,7 @@ public class InitializerListener implements ServletContextListener
 	 */
 	public void contextDestroyed(ServletContextEvent contextEvent) 
 	{
+		Metrics.unregisterMBean();
 	}
 
 	/**
@@ -53,6 +55,7 @@ public class InitializerListener implements ServletContextListener
 			ServletContext context = contextEvent.getServletContext();
 			ServiceFactoryInitializer.initialize(context);
 			RestServiceFactoryInitializer.initialize(context);
+			Metrics.registerMBean(context.getContextPath());
 			
 		}
 		catch (Throwable e) 
@@ -16,7 +16,6 @@
 package org.cruxframework.crux.core.server.crawling;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URLDecoder;
 
 import javax.servlet.Filter;
@@ -33,7 +32,6 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cruxframework.crux.core.server.Environment;
 import org.cruxframework.crux.core.server.http.GZIPResponseWrapper;
-import org.cruxframework.crux.core.utils.StreamUtils;
 
 
 /**
@@ -41,6 +39,9 @@ import org.cruxframework.crux.core.utils.StreamUtils;
  * See this {@link https://developers.google.com/webmasters/ajax-crawling/} 
  * 
  * The filter also ensure that the responses uses gzip compression and configure a cache for the snapshots.
+ * Snapshots are kept in memory, already compressed, and checked for changes at most once on each 
+ * <code>snapshotsCheckInterval</code> milliseconds (init parameter, default 5000. Negative values 
+ * disable the checks).
  * 
  * @author Thiago da Rosa de Bustamante
  * 
@@ -49,10 +50,12 @@ public final class CrawlingFilter implements Filter
 {
 	private static final String ACCEPT_ENCODING = "accept-encoding";
 	private static final int EXPIRES_DELTA = 86400000; // One day
+	private static final long DEFAULT_SNAPSHOTS_CHECK_INTERVAL = 5000;
 	private static final Log logger = LogFactory.getLog(CrawlingFilter.class);
 	private FilterConfig config;
 	private String defaultSnaphot;
 	private String baseFolder;
+	private SnapshotStore snapshots;
 
 	/**
 	 * 
@@ -67,10 +70,17 @@ public final class CrawlingFilter implements Filter
 				return;
 			}
 			HttpServletRequest request = (HttpServletRequest) req;
-			HttpServletResponse response;
 			String ae = request.getHeader(ACCEPT_ENCODING);
+			boolean acceptsGzip = (ae != null && ae.indexOf("gzip") != -1);
+			String escapedFragmentEncoded = request.getParameter("_escaped_fragment_");
+			if (escapedFragmentEncoded != null && sendSnapshot(request, (HttpServletResponse) res, escapedFragmentEncoded, acceptsGzip))
+			{
+				return;
+			}
+
+			HttpServletResponse response;
 			boolean gzipped = false;
-			if (ae != null && ae.indexOf("gzip") != -1) 
+			if (acceptsGzip) 
 			{        
 				response = new GZIPResponseWrapper((HttpServletResponse) res);
 				gzipped = true;
@@ -82,54 +92,6 @@ public final class CrawlingFilter implements Filter
 
 			response.setContentType("text/html");
 			response.setCharacterEncoding("UTF-8");
-			String escapedFragmentEncoded = request.getParameter("_escaped_fragment_");
-			if (escapedFragmentEncoded != null)
-			{
-				if (logger.isInfoEnabled())
-				{
-					logger.info("A Snapshot for an application page was requested.");
-				}
-				if (escapedFragmentEncoded.length() == 0 && defaultSnaphot != null && defaultSnaphot.length() > 0)
-				{
-					escapedFragmentEncoded=defaultSnaphot;
-				}
-				
-				String escapedFragment = URLDecoder.decode(escapedFragmentEncoded, "UTF-8");
-				String page = getRequestedPage(request);
-				String pagePath = CrawlingUtils.getStaticPageFor(page, escapedFragment);
-				if (pagePath != null && pagePath.length() >0)
-				{
-					if (StringUtils.isNotBlank(baseFolder))
-					{
-						pagePath = baseFolder + "/" + pagePath;
-					}
-					InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(pagePath);
-					if (in == null)
-					{
-						logger.error("snapshot for requested page ["+pagePath+"] not found.");
-					}
-					else
-					{
-						try
-						{
-							StreamUtils.write(in, response.getOutputStream(), true);
-							if (logger.isInfoEnabled())
-							{
-								logger.info("Snapshot for page ["+pagePath+"] was sent.");
-							}
-							return;
-						}
-						catch (IOException e) 
-						{
-							logger.error("Error reading requested page ["+pagePath+"].", e);
-						}
-					}
-				}
-				else
-				{
-					logger.error("A snapshot was requested, but it is not possible to realize the target page.");
-				}
-			}
 			long current = System.currentTimeMillis();
 			long expires = current + EXPIRES_DELTA;
 			HttpServletResponse httpResponse = ((HttpServletResponse)response);
@@ -148,6 +110,56 @@ public final class CrawlingFilter implements Filter
 		}
 	}
 
+	/**
+	 * Send the snapshot for the requested page and fragment, if it exists.
+	 * @param request
+	 * @param response
+	 * @param escapedFragmentEncoded
+	 * @param gzip
+	 * @return true if the snapshot was sent
+	 */
+	private boolean sendSnapshot(HttpServletRequest request, HttpServletResponse response, String escapedFragmentEncoded, boolean gzip)
+	{
+		try
+		{
+			if (logger.isInfoEnabled())
+			{
+				logger.info("A Snapshot for an application page was requested.");
+			}
+			if (escapedFragmentEncoded.length() == 0 && defaultSnaphot != null && defaultSnaphot.length() > 0)
+			{
+				escapedFragmentEncoded=defaultSnaphot;
+			}
+
+			String escapedFragment = URLDecoder.decode(escapedFragmentEncoded, "UTF-8");
+			String page = getRequestedPage(request);
+			String pagePath = CrawlingUtils.getStaticPageFor(page, escapedFragment);
+			if (pagePath == null || pagePath.length() == 0)
+			{
+				logger.error("A snapshot was requested, but it is not possible to realize the target page.");
+				return false;
+			}
+			if (StringUtils.isNotBlank(baseFolder))
+			{
+				pagePath = baseFolder + "/" + pagePath;
+			}
+			if (snapshots.send(request, response, pagePath, gzip))
+			{
+				if (logger.isInfoEnabled())
+				{
+					logger.info("Snapshot for page ["+pagePath+"] was sent.");
+				}
+				return true;
+			}
+			logger.error("snapshot for requested page ["+pagePath+"] not found.");
+		}
+		catch (IOException e) 
+		{
+			logger.error("Error reading requested snapshot.", e);
+		}
+		return false;
+	}
+
 	/**
 	 * 
 	 * @param req
@@ -229,6 +241,8 @@ public final class CrawlingFilter implements Filter
 		{
 			baseFolder = baseFolder.substring(1);
 		}
+		String checkInterval = config.getInitParameter("snapshotsCheckInterval");
+		this.snapshots = new SnapshotStore(StringUtils.isNotBlank(checkInterval) ? Long.parseLong(checkInterval.trim()) : DEFAULT_SNAPSHOTS_CHECK_INTERVAL);
 	}
 
 	@Override
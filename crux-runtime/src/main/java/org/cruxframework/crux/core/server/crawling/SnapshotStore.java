@@ -0,0 +1,221 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.crawling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cruxframework.crux.core.utils.StreamUtils;
+
+/**
+ * Keeps the snapshots served by the {@link CrawlingFilter} in memory, already compressed. Each 
+ * snapshot is read from the classpath on its first request and checked for changes at most once 
+ * on each check interval, being reloaded only if its last modification time changed.
+ * 
+ * <p>Snapshots are sent with ETag and Last-Modified headers, and conditional requests are 
+ * answered with 304 (Not Modified).</p>
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+final class SnapshotStore
+{
+	private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<String, Snapshot>();
+	private final long checkInterval;
+	
+	/**
+	 * @param checkInterval minimum interval, in milliseconds, between checks for changes on a 
+	 * snapshot file. Negative values disable the checks.
+	 */
+	SnapshotStore(long checkInterval)
+	{
+		this.checkInterval = checkInterval;
+	}
+
+	/**
+	 * Send the requested snapshot.
+	 * @param request
+	 * @param response
+	 * @param path the snapshot resource path
+	 * @param gzip true if the client accepts gzip encoded responses
+	 * @return false if the snapshot does not exist.
+	 * @throws IOException
+	 */
+	boolean send(HttpServletRequest request, HttpServletResponse response, String path, boolean gzip) throws IOException
+	{
+		Snapshot snapshot = getSnapshot(path);
+		if (snapshot == null)
+		{
+			return false;
+		}
+		
+		response.setHeader("ETag", snapshot.etag);
+		response.setDateHeader("Last-Modified", snapshot.lastModified);
+		response.setHeader("Vary", "Accept-Encoding");
+		if (isNotModified(request, snapshot))
+		{
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+		
+		byte[] content;
+		if (gzip)
+		{
+			response.setHeader("Content-Encoding", "gzip");
+			content = snapshot.gzippedContent;
+		}
+		else
+		{
+			content = snapshot.content;
+		}
+		response.setContentType("text/html");
+		response.setCharacterEncoding("UTF-8");
+		response.setContentLength(content.length);
+		response.getOutputStream().write(content);
+		return true;
+	}
+
+	private boolean isNotModified(HttpServletRequest request, Snapshot snapshot)
+	{
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null)
+		{
+			return ifNoneMatch.equals("*") || ifNoneMatch.contains(snapshot.etag);
+		}
+		long ifModifiedSince;
+		try
+		{
+			ifModifiedSince = request.getDateHeader("If-Modified-Since");
+		}
+		catch (IllegalArgumentException e)
+		{
+			return false;
+		}
+		// HTTP dates have a precision of seconds
+		return ifModifiedSince >= 0 && (snapshot.lastModified / 1000) <= (ifModifiedSince / 1000);
+	}
+
+	private Snapshot getSnapshot(String path) throws IOException
+	{
+		Snapshot snapshot = snapshots.get(path);
+		long now = System.currentTimeMillis();
+		if (snapshot != null)
+		{
+			if (checkInterval < 0 || now - snapshot.lastChecked < checkInterval)
+			{
+				return snapshot;
+			}
+			snapshot.lastChecked = now;
+			if (getLastModified(snapshot.url) == snapshot.resourceLastModified)
+			{
+				return snapshot;
+			}
+		}
+		
+		URL url = Thread.currentThread().getContextClassLoader().getResource(path);
+		if (url == null)
+		{
+			// Missing snapshots are not cached, as the requested paths come from the clients
+			snapshots.remove(path);
+			return null;
+		}
+		snapshot = load(url, now);
+		snapshots.put(path, snapshot);
+		return snapshot;
+	}
+
+	private Snapshot load(URL url, long now) throws IOException
+	{
+		long resourceLastModified = getLastModified(url);
+		byte[] content;
+		InputStream in = url.openStream();
+		try
+		{
+			content = StreamUtils.read(in);
+		}
+		finally
+		{
+			StreamUtils.safeCloseStream(in);
+		}
+		
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream(content.length / 4 + 64);
+		GZIPOutputStream out = new GZIPOutputStream(gzipped);
+		out.write(content);
+		out.close();
+		
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		String etag = "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(content.length) + "\"";
+		long lastModified = (resourceLastModified > 0 ? resourceLastModified : now);
+		return new Snapshot(url, content, gzipped.toByteArray(), etag, lastModified, resourceLastModified, now);
+	}
+
+	private long getLastModified(URL url)
+	{
+		try
+		{
+			if ("file".equals(url.getProtocol()))
+			{
+				return new File(url.toURI()).lastModified();
+			}
+			URLConnection connection = url.openConnection();
+			connection.setUseCaches(false);
+			long result = connection.getLastModified();
+			StreamUtils.safeCloseStream(connection.getInputStream());
+			return result;
+		}
+		catch (Exception e)
+		{
+			return 0;
+		}
+	}
+	
+	/**
+	 * A snapshot loaded in memory.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	private static class Snapshot
+	{
+		private final URL url;
+		private final byte[] content;
+		private final byte[] gzippedContent;
+		private final String etag;
+		private final long lastModified;
+		private final long resourceLastModified;
+		private volatile long lastChecked;
+
+		private Snapshot(URL url, byte[] content, byte[] gzippedContent, String etag, long lastModified, long resourceLastModified, long lastChecked)
+		{
+			this.url = url;
+			this.content = content;
+			this.gzippedContent = gzippedContent;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.resourceLastModified = resourceLastModified;
+			this.lastChecked = lastChecked;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.dispatch;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpSession;
+
+/**
+ * The request seen by one call of a batch running in parallel. Servlet requests are not thread 
+ * safe, so the attributes set by the call are kept on this wrapper and never written to the 
+ * batch request, and the access to the session goes through a lock shared by all calls of the 
+ * batch.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+class BatchedCallRequest extends HttpServletRequestWrapper
+{
+	private final Object lock;
+	private final Map<String, Object> attributes = new HashMap<String, Object>();
+	private final Set<String> removedAttributes = new HashSet<String>();
+
+	/**
+	 * @param request the batch request
+	 * @param lock the lock shared by all calls of the batch
+	 */
+	public BatchedCallRequest(HttpServletRequest request, Object lock)
+	{
+		super(request);
+		this.lock = lock;
+	}
+
+	@Override
+	public Object getAttribute(String name)
+	{
+		Object value = attributes.get(name);
+		if (value != null || removedAttributes.contains(name))
+		{
+			return value;
+		}
+		synchronized (lock)
+		{
+			return super.getAttribute(name);
+		}
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames()
+	{
+		Set<String> names = new LinkedHashSet<String>();
+		synchronized (lock)
+		{
+			names.addAll(Collections.list(super.getAttributeNames()));
+		}
+		names.removeAll(removedAttributes);
+		names.addAll(attributes.keySet());
+		return Collections.enumeration(names);
+	}
+
+	@Override
+	public void setAttribute(String name, Object value)
+	{
+		if (value == null)
+		{
+			removeAttribute(name);
+			return;
+		}
+		attributes.put(name, value);
+		removedAttributes.remove(name);
+	}
+
+	@Override
+	public void removeAttribute(String name)
+	{
+		attributes.remove(name);
+		removedAttributes.add(name);
+	}
+
+	@Override
+	public HttpSession getSession()
+	{
+		synchronized (lock)
+		{
+			return super.getSession();
+		}
+	}
+
+	@Override
+	public HttpSession getSession(boolean create)
+	{
+		synchronized (lock)
+		{
+			return super.getSession(create);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.dispatch;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * The response seen by one call of a batch running in parallel. Headers and cookies are written 
+ * to the batch response under a lock shared by all calls of the batch.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+class BatchedCallResponse extends HttpServletResponseWrapper
+{
+	private final Object lock;
+
+	/**
+	 * @param response the batch response
+	 * @param lock the lock shared by all calls of the batch
+	 */
+	public BatchedCallResponse(HttpServletResponse response, Object lock)
+	{
+		super(response);
+		this.lock = lock;
+	}
+
+	@Override
+	public void addCookie(Cookie cookie)
+	{
+		synchronized (lock)
+		{
+			super.addCookie(cookie);
+		}
+	}
+
+	@Override
+	public boolean containsHeader(String name)
+	{
+		synchronized (lock)
+		{
+			return super.containsHeader(name);
+		}
+	}
+
+	@Override
+	public void setDateHeader(String name, long date)
+	{
+		synchronized (lock)
+		{
+			super.setDateHeader(name, date);
+		}
+	}
+
+	@Override
+	public void addDateHeader(String name, long date)
+	{
+		synchronized (lock)
+		{
+			super.addDateHeader(name, date);
+		}
+	}
+
+	@Override
+	public void setHeader(String name, String value)
+	{
+		synchronized (lock)
+		{
+			super.setHeader(name, value);
+		}
+	}
+
+	@Override
+	public void addHeader(String name, String value)
+	{
+		synchronized (lock)
+		{
+			super.addHeader(name, value);
+		}
+	}
+
+	@Override
+	public void setIntHeader(String name, int value)
+	{
+		synchronized (lock)
+		{
+			super.setIntHeader(name, value);
+		}
+	}
+
+	@Override
+	public void addIntHeader(String name, int value)
+	{
+		synchronized (lock)
+		{
+			super.addIntHeader(name, value);
+		}
+	}
+}
@@ -15,15 +15,37 @@
  */
 package org.cruxframework.crux.core.server.dispatch;
 
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cruxframework.crux.core.config.ConfigurationFactory;
 import org.cruxframework.crux.core.i18n.LocaleResolver;
 import org.cruxframework.crux.core.i18n.LocaleResolverInitializer;
 import org.cruxframework.crux.core.server.dispatch.st.CruxSynchronizerTokenHandler;
 import org.cruxframework.crux.core.server.dispatch.st.CruxSynchronizerTokenHandlerFactory;
 import org.cruxframework.crux.core.server.dispatch.st.InvalidTokenException;
+import org.cruxframework.crux.core.server.metrics.EndpointMetrics;
+import org.cruxframework.crux.core.server.metrics.EndpointMetrics.Phase;
+import org.cruxframework.crux.core.server.metrics.Metrics;
+import org.cruxframework.crux.core.server.scope.ServiceInstances;
+import org.cruxframework.crux.core.shared.rpc.RpcBatch;
 import org.cruxframework.crux.core.shared.rpc.st.UseSynchronizerToken;
-import org.cruxframework.crux.core.utils.RegexpPatterns;
 
 import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
 import com.google.gwt.user.client.rpc.SerializationException;
@@ -31,12 +53,75 @@ import com.google.gwt.user.server.rpc.RPC;
 import com.google.gwt.user.server.rpc.RPCRequest;
 
 /**
+ * Besides the regular GWT RPC requests, this servlet accepts batch requests (identified by the 
+ * {@link RpcBatch#BATCH_HEADER} header), carrying several encoded calls, each one with its own 
+ * synchronizer token. The calls of a batch run sequentially, or in parallel on a bounded pool 
+ * if the <code>rpcBatchThreads</code> property is greater than zero. Calls running in parallel 
+ * see the request through a {@link BatchedCallRequest} and the response through a 
+ * {@link BatchedCallResponse}, so they do not share the request attributes and do not access 
+ * the session or the response headers concurrently.
  * 
  * @author Thiago Bustamante
  */
 public class RemoteServiceServlet extends com.google.gwt.user.server.rpc.RemoteServiceServlet
 {
 	private static final long serialVersionUID = -5471459247489132091L;
+	private static final String METRICS_ATTRIBUTE = RemoteServiceServlet.class.getName() + ".metrics";
+	private static final String WRITE_START_ATTRIBUTE = RemoteServiceServlet.class.getName() + ".writeStart";
+
+	private transient ExecutorService batchExecutor;
+	private int batchMaxCalls;
+	private transient RpcRequestDecoder requestDecoder;
+
+	@Override
+	public void init() throws ServletException
+	{
+	    super.init();
+	    requestDecoder = new RpcRequestDecoder(this);
+	    batchMaxCalls = Integer.parseInt(ConfigurationFactory.getConfigurations().rpcBatchMaxCalls());
+	    int batchThreads = Integer.parseInt(ConfigurationFactory.getConfigurations().rpcBatchThreads());
+	    if (batchThreads > 0)
+	    {
+	    	batchExecutor = createBatchExecutor(batchThreads);
+	    }
+	}
+	
+	@Override
+	public void destroy()
+	{
+		if (batchExecutor != null)
+		{
+			batchExecutor.shutdown();
+			batchExecutor = null;
+		}
+	    super.destroy();
+	}
+	
+	/**
+	 * Record the time spent compressing and writing the response, when metrics are enabled.
+	 */
+	@Override
+	protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+	{
+		super.service(req, resp);
+		EndpointMetrics metrics = (EndpointMetrics) req.getAttribute(METRICS_ATTRIBUTE);
+		Long writeStart = (Long) req.getAttribute(WRITE_START_ATTRIBUTE);
+		if (metrics != null && writeStart != null)
+		{
+			metrics.record(Phase.WRITE, writeStart);
+		}
+	}
+
+	@Override
+	protected void onAfterResponseSerialized(String serializedResponse)
+	{
+		super.onAfterResponseSerialized(serializedResponse);
+		HttpServletRequest request = getThreadLocalRequest();
+		if (request.getAttribute(METRICS_ATTRIBUTE) != null)
+		{
+			request.setAttribute(WRITE_START_ATTRIBUTE, System.nanoTime());
+		}
+	}
 
 	/**
 	 * @see com.google.gwt.user.server.rpc.RemoteServiceServlet#processCall(java.lang.String)
@@ -44,22 +129,58 @@ public class RemoteServiceServlet extends com.google.gwt.user.server.rpc.RemoteS
 	@Override
 	public String processCall(String payload) throws SerializationException 
 	{
+		if (getThreadLocalRequest().getHeader(RpcBatch.BATCH_HEADER) != null)
+		{
+			return processBatch(payload);
+		}
+		return processCall(payload, null);
+	}
+
+	/**
+	 * Process a single RPC call.
+	 * @param payload the encoded call
+	 * @param synchronizerToken the token sent for the call. If null, the token is read from the request parameters 
+	 * @return the encoded response
+	 * @throws SerializationException
+	 */
+	protected String processCall(String payload, String synchronizerToken) throws SerializationException 
+	{
+		long startTime = Metrics.isEnabled() ? System.nanoTime() : 0;
+		EndpointMetrics metrics = null;
+		boolean failed = true;
 		boolean localeInitializedByServlet = false;
+		Object service = null;
+		RequestContext.initialize(getThreadLocalRequest(), getThreadLocalResponse());
 		try 
 		{
 			localeInitializedByServlet = initUserLocaleResolver();
-			Object service = getServiceForRequest(payload);
-			RPCRequest rpcRequest = RPC.decodeRequest(payload, service.getClass(), this);
+			long routeStartTime = Metrics.isEnabled() ? System.nanoTime() : 0;
+			service = getServiceForRequest(payload);
+			long decodeStartTime = Metrics.isEnabled() ? System.nanoTime() : 0;
+			RPCRequest rpcRequest = requestDecoder.decode(payload, service.getClass());
+			if (Metrics.isEnabled())
+			{
+				metrics = Metrics.getRpcEndpoint(rpcRequest.getMethod());
+				metrics.record(Phase.ROUTE, routeStartTime, decodeStartTime);
+				metrics.record(Phase.INJECT, decodeStartTime);
+				if (synchronizerToken == null) // not batched. Batched calls share the response. 
+				{
+					getThreadLocalRequest().setAttribute(METRICS_ATTRIBUTE, metrics);
+				}
+			}
 			onAfterRequestDeserialized(rpcRequest);
 
 			//TODO: criar um ponto de injecao de comportamento aki.... para permitir que plugins sejam criados (ex: seguranca, logs, etc)
-			CruxSynchronizerTokenHandler handler = CruxSynchronizerTokenHandlerFactory.getCruxSynchronizerTokenHandler(getThreadLocalRequest());
+			CruxSynchronizerTokenHandler handler = (synchronizerToken == null ? 
+					CruxSynchronizerTokenHandlerFactory.getCruxSynchronizerTokenHandler(getThreadLocalRequest()) :
+					CruxSynchronizerTokenHandlerFactory.getCruxSynchronizerTokenHandler(getThreadLocalRequest(), synchronizerToken));
 
 			boolean useToken = checkSynchonizerToken(rpcRequest, handler);
 			try
 			{
-				return RPC.invokeAndEncodeResponse(service, rpcRequest.getMethod(),
-						rpcRequest.getParameters(), rpcRequest.getSerializationPolicy());
+				EncodedResponse response = invokeAndEncodeResponse(service, rpcRequest, metrics);
+				failed = response.failure;
+				return response.payload;
 			}
 			finally
 			{
@@ -81,9 +202,192 @@ public class RemoteServiceServlet extends com.google.gwt.user.server.rpc.RemoteS
 			{
 				clearUserLocaleResolver();
 			}
+			ServiceInstances.releaseInstance(service);
+			RequestContext.clear();
+			if (metrics == null && failed && service != null && Metrics.isEnabled())
+			{
+				// The request could not be decoded, so its method is unknown. Record it for the service
+				metrics = Metrics.getRpcEndpoint(service.getClass().getName());
+			}
+			if (metrics != null)
+			{
+				metrics.recordRequest(startTime, failed);
+			}
+		}
+	}
+
+	/**
+	 * Invoke the service method and encode its response, as {@link RPC#invokeAndEncodeResponse(Object, Method, Object[], 
+	 * com.google.gwt.user.server.rpc.SerializationPolicy)} does. When metrics are enabled, the invocation and the 
+	 * serialization are timed separately, and exceptions thrown by the service are reported as failures.
+	 */
+	private EncodedResponse invokeAndEncodeResponse(Object service, RPCRequest rpcRequest, EndpointMetrics metrics) throws SerializationException
+	{
+		Method method = rpcRequest.getMethod();
+		if (metrics == null)
+		{
+			return new EncodedResponse(RPC.invokeAndEncodeResponse(service, method, rpcRequest.getParameters(), 
+											rpcRequest.getSerializationPolicy()), false);
+		}
+		long time = System.nanoTime();
+		Object result;
+		try
+		{
+			result = method.invoke(service, rpcRequest.getParameters());
+		}
+		catch (IllegalAccessException e)
+		{
+			SecurityException securityException = new SecurityException("Blocked attempt to access inaccessible method '" + method + "' on target '" + service + "'");
+			securityException.initCause(e);
+			throw securityException;
+		}
+		catch (IllegalArgumentException e)
+		{
+			SecurityException securityException = new SecurityException("Blocked attempt to invoke method '" + method + "' with invalid arguments");
+			securityException.initCause(e);
+			throw securityException;
+		}
+		catch (InvocationTargetException e)
+		{
+			time = metrics.record(Phase.INVOKE, time);
+			String response = RPC.encodeResponseForFailure(method, e.getCause(), rpcRequest.getSerializationPolicy());
+			metrics.record(Phase.SERIALIZE, time);
+			return new EncodedResponse(response, true);
+		}
+		time = metrics.record(Phase.INVOKE, time);
+		String response = RPC.encodeResponseForSuccess(method, result, rpcRequest.getSerializationPolicy());
+		metrics.record(Phase.SERIALIZE, time);
+		return new EncodedResponse(response, false);
+	}
+	
+	/**
+	 * Process all the calls of a batch request and encode their responses as a single batch.
+	 * @param payload the batch body
+	 * @return the encoded responses
+	 * @throws SerializationException if the batch is malformed or has too many calls
+	 */
+	protected String processBatch(String payload) throws SerializationException
+	{
+		List<String> fields;
+		try
+		{
+			fields = RpcBatch.readFields(payload);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new SerializationException(e.getMessage(), e);
+		}
+		if (fields.size() % 2 != 0)
+		{
+			throw new SerializationException("Invalid RPC batch: each call must have a token and a payload.");
+		}
+		int calls = fields.size() / 2;
+		if (calls > batchMaxCalls)
+		{
+			throw new SerializationException("Invalid RPC batch: the batch has " + calls + " calls. Maximum allowed: " + batchMaxCalls);
+		}
+		
+		String[] responses = new String[calls];
+		if (batchExecutor == null || calls == 1)
+		{
+			for (int i = 0; i < calls; i++)
+			{
+				responses[i] = processBatchedCall(fields.get(2 * i + 1), fields.get(2 * i));
+			}
+		}
+		else
+		{
+			HttpServletRequest request = getThreadLocalRequest();
+			HttpServletResponse response = getThreadLocalResponse();
+			// Cookies are parsed lazily by some containers, so parse them before the calls share the request
+			request.getCookies();
+			Object lock = new Object();
+			List<Future<String>> futures = new ArrayList<Future<String>>(calls - 1);
+			for (int i = 1; i < calls; i++)
+			{
+				futures.add(batchExecutor.submit(new BatchedCall(fields.get(2 * i + 1), fields.get(2 * i), 
+					new BatchedCallRequest(request, lock), new BatchedCallResponse(response, lock))));
+			}
+			responses[0] = new BatchedCall(fields.get(1), fields.get(0), 
+				new BatchedCallRequest(request, lock), new BatchedCallResponse(response, lock)).call();
+			for (int i = 1; i < calls; i++)
+			{
+				responses[i] = getBatchedResponse(futures.get(i - 1));
+			}
+		}
+		
+		StringBuilder result = new StringBuilder();
+		for (String response : responses)
+		{
+			RpcBatch.appendField(result, response);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Process a call from a batch. Failures are logged and reported to the client as an empty 
+	 * response, so they do not affect the other calls of the batch.
+	 * @param payload
+	 * @param synchronizerToken
+	 * @return
+	 */
+	protected String processBatchedCall(String payload, String synchronizerToken)
+	{
+		try
+		{
+			return processCall(payload, synchronizerToken);
+		}
+		catch (Exception e)
+		{
+			log("An Exception was thrown while processing a batched RPC call.", e);
+			return null;
+		}
+	}
+
+	private String getBatchedResponse(Future<String> future)
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			log("Interrupted while waiting for a batched RPC call.", e);
+			return null;
+		}
+		catch (ExecutionException e)
+		{
+			log("An Exception was thrown while processing a batched RPC call.", e.getCause());
+			return null;
 		}
 	}
 	
+	/**
+	 * Create the pool used to run batched calls in parallel. When all threads are busy and the 
+	 * queue is full, the calls run on the request thread.
+	 * @param threads
+	 * @return
+	 */
+	protected ExecutorService createBatchExecutor(int threads)
+	{
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, 
+					new ArrayBlockingQueue<Runnable>(threads * batchMaxCalls), new ThreadFactory()
+		{
+			private final AtomicInteger count = new AtomicInteger();
+			
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "crux-rpc-batch-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+	
 	/**
 	 * @param rpcRequest
 	 * @param handler
@@ -155,9 +459,15 @@ public class RemoteServiceServlet extends com.google.gwt.user.server.rpc.RemoteS
 			}
 			
 			// We don't need to verify or parse the encodedRequest because it will be already done by
-			// RPC.decodeRequest. So, just read the interface name directly
-			String serviceIntfName = RegexpPatterns.REGEXP_PIPE.split(encodedRequest)[5];			
+			// the RpcRequestDecoder. So, just read the interface name directly
+			String serviceIntfName = RpcRequestDecoder.readServiceInterfaceName(encodedRequest);
 			Object service = ServiceFactoryInitializer.getServiceFactory().getService(serviceIntfName);
+			ServiceInstances serviceInstances = ServiceInstances.get(service.getClass());
+			if (serviceInstances != null && !serviceInstances.isRequestScoped())
+			{
+				// Shared instances must read the request from RequestContext
+				return service;
+			}
 			if (service instanceof RequestAware)
 			{
 				((RequestAware)service).setRequest(getThreadLocalRequest());
@@ -177,4 +487,69 @@ public class RemoteServiceServlet extends com.google.gwt.user.server.rpc.RemoteS
 			throw new IncompatibleRemoteServiceException(e.getLocalizedMessage(), e);
 		} 
 	}
+
+	/**
+	 * An encoded RPC response. Failure responses carry an exception thrown by the service method.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	private static class EncodedResponse
+	{
+		private final String payload;
+		private final boolean failure;
+
+		public EncodedResponse(String payload, boolean failure)
+		{
+			this.payload = payload;
+			this.failure = failure;
+		}
+	}
+
+	/**
+	 * A call from a batch running in parallel. Binds the request and response of the call to 
+	 * the thread, as the RPC infrastructure reads them from thread locals.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	private class BatchedCall implements Callable<String>
+	{
+		private final String payload;
+		private final String synchronizerToken;
+		private final HttpServletRequest request;
+		private final HttpServletResponse response;
+
+		public BatchedCall(String payload, String synchronizerToken, HttpServletRequest request, HttpServletResponse response)
+		{
+			this.payload = payload;
+			this.synchronizerToken = synchronizerToken;
+			this.request = request;
+			this.response = response;
+		}
+
+		@Override
+		public String call()
+		{
+			// The call may run on the request thread (the first call, or any call when the pool is 
+			// saturated), so restore the previous bindings when it finishes
+			HttpServletRequest previousRequest = perThreadRequest.get();
+			HttpServletResponse previousResponse = perThreadResponse.get();
+			perThreadRequest.set(request);
+			perThreadResponse.set(response);
+			try
+			{
+				return processBatchedCall(payload, synchronizerToken);
+			}
+			finally
+			{
+				if (previousRequest == null)
+				{
+					perThreadRequest.remove();
+					perThreadResponse.remove();
+				}
+				else
+				{
+					perThreadRequest.set(previousRequest);
+					perThreadResponse.set(previousResponse);
+				}
+			}
+		}
+	}
 }
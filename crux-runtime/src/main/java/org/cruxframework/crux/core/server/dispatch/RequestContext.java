@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.dispatch;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Gives access to the request being processed by the current thread. It is the way for 
+ * singleton and pooled RPC services (see {@link org.cruxframework.crux.core.server.scope.ServiceScope}) 
+ * to read the request, response and session, as they are not bound to a single request. 
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class RequestContext
+{
+	private static final ThreadLocal<HttpServletRequest> request = new ThreadLocal<HttpServletRequest>();
+	private static final ThreadLocal<HttpServletResponse> response = new ThreadLocal<HttpServletResponse>();
+
+	public static HttpServletRequest getRequest()
+	{
+		return request.get();
+	}
+
+	public static HttpServletResponse getResponse()
+	{
+		return response.get();
+	}
+
+	public static HttpSession getSession()
+	{
+		HttpServletRequest httpRequest = request.get();
+		return (httpRequest == null ? null : httpRequest.getSession());
+	}
+
+	public static void initialize(HttpServletRequest httpRequest, HttpServletResponse httpResponse)
+	{
+		request.set(httpRequest);
+		response.set(httpResponse);
+	}
+
+	public static void clear()
+	{
+		request.remove();
+		response.remove();
+	}
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.dispatch;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
+import com.google.gwt.user.client.rpc.RpcToken;
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.impl.AbstractSerializationStream;
+import com.google.gwt.user.server.rpc.RPC;
+import com.google.gwt.user.server.rpc.RPCRequest;
+import com.google.gwt.user.server.rpc.SerializationPolicy;
+import com.google.gwt.user.server.rpc.SerializationPolicyProvider;
+import com.google.gwt.user.server.rpc.impl.DequeMap;
+import com.google.gwt.user.server.rpc.impl.SerializabilityUtil;
+import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamReader;
+import com.google.gwt.user.server.rpc.impl.TypeNameObfuscator;
+
+/**
+ * Decodes RPC requests like {@link com.google.gwt.user.server.rpc.RPC#decodeRequest(String, Class, SerializationPolicyProvider)}, 
+ * but the service interface, its methods and the serialization policy are resolved only once for 
+ * each service interface and module permutation (strong name), instead of on every request.
+ * 
+ * <p>The payload is parsed a single time. The header fields needed to locate the service (module 
+ * base URL, strong name and interface name) are read directly from the beginning of the payload, 
+ * without splitting it.</p>
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+class RpcRequestDecoder
+{
+	private static final Map<String, Class<?>> PRIMITIVE_TYPES = new HashMap<String, Class<?>>();
+	static
+	{
+		PRIMITIVE_TYPES.put("Z", boolean.class);
+		PRIMITIVE_TYPES.put("B", byte.class);
+		PRIMITIVE_TYPES.put("C", char.class);
+		PRIMITIVE_TYPES.put("D", double.class);
+		PRIMITIVE_TYPES.put("F", float.class);
+		PRIMITIVE_TYPES.put("I", int.class);
+		PRIMITIVE_TYPES.put("J", long.class);
+		PRIMITIVE_TYPES.put("S", short.class);
+	}
+	
+	private final SerializationPolicyProvider serializationPolicyProvider;
+	private final Map<String, ServiceDescriptor> services = new ConcurrentHashMap<String, ServiceDescriptor>();
+	
+	public RpcRequestDecoder(SerializationPolicyProvider serializationPolicyProvider)
+	{
+		this.serializationPolicyProvider = serializationPolicyProvider;
+	}
+
+	/**
+	 * Read the name of the service interface requested, without decoding the payload.
+	 * @param payload
+	 * @return
+	 * @throws IncompatibleRemoteServiceException
+	 */
+	public static String readServiceInterfaceName(String payload) throws IncompatibleRemoteServiceException
+	{
+		return readHeader(payload)[2];
+	}
+
+	/**
+	 * Decode the given RPC request.
+	 * @param payload the encoded request
+	 * @param serviceClass the class of the service that will handle the request. It must implement the requested interface.
+	 * @return
+	 * @throws IncompatibleRemoteServiceException
+	 */
+	public RPCRequest decode(String payload, Class<?> serviceClass) throws IncompatibleRemoteServiceException
+	{
+		String[] header = readHeader(payload);
+		String serviceKey = header[2] + '|' + header[1];
+		ServiceDescriptor descriptor = services.get(serviceKey);
+		boolean newDescriptor = (descriptor == null);
+		if (newDescriptor)
+		{
+			descriptor = new ServiceDescriptor();
+		}
+		
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		try
+		{
+			ServerSerializationStreamReader streamReader = new ServerSerializationStreamReader(classLoader, descriptor);
+			streamReader.prepareToRead(payload);
+
+			RpcToken rpcToken = null;
+			if (streamReader.hasFlags(AbstractSerializationStream.FLAG_RPC_TOKEN_INCLUDED))
+			{
+				rpcToken = (RpcToken) streamReader.deserializeValue(RpcToken.class);
+			}
+			
+			Class<?> serviceInterface = descriptor.getServiceInterface(streamReader, streamReader.readString(), classLoader);
+			if (!serviceInterface.isAssignableFrom(serviceClass))
+			{
+				throw new IncompatibleRemoteServiceException("Blocked attempt to access interface '" + serviceInterface.getName() 
+						+ "', which is not implemented by '" + serviceClass.getName() + "'; this is either misconfiguration or a hack attempt");
+			}
+
+			String methodName = streamReader.readString();
+			int paramCount = streamReader.readInt();
+			if (paramCount > streamReader.getNumberOfTokens())
+			{
+				throw new IncompatibleRemoteServiceException("Invalid number of parameters");
+			}
+			String[] paramTypeNames = new String[paramCount];
+			StringBuilder methodKey = new StringBuilder(methodName);
+			for (int i = 0; i < paramCount; i++)
+			{
+				paramTypeNames[i] = streamReader.readString();
+				methodKey.append('|').append(paramTypeNames[i]);
+			}
+			ServiceMethod method = descriptor.getMethod(streamReader, methodKey.toString(), methodName, paramTypeNames, classLoader);
+
+			DequeMap<TypeVariable<?>, Type> resolvedTypes = new DequeMap<TypeVariable<?>, Type>();
+			for (TypeVariable<Method> typeVariable : method.typeParameters)
+			{
+				SerializabilityUtil.resolveTypes(typeVariable, resolvedTypes);
+			}
+			Object[] parameterValues = new Object[paramCount];
+			for (int i = 0; i < paramCount; i++)
+			{
+				parameterValues[i] = streamReader.deserializeValue(method.parameterTypes[i], method.genericParameterTypes[i], resolvedTypes);
+			}
+			
+			if (newDescriptor && descriptor.hasModulePolicy())
+			{
+				// Only requests that resolved the serialization policy of a module are cached. Unknown 
+				// strong names get the default (legacy) policy, and must not fill the cache
+				services.put(serviceKey, descriptor);
+			}
+			return new RPCRequest(method.method, parameterValues, rpcToken, streamReader.getSerializationPolicy(), streamReader.getFlags());
+		}
+		catch (SerializationException e)
+		{
+			throw new IncompatibleRemoteServiceException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Read the module base URL, the strong name and the service interface name, which are 
+	 * the first three entries of the string table.
+	 * @param payload
+	 * @return
+	 * @throws IncompatibleRemoteServiceException
+	 */
+	private static String[] readHeader(String payload) throws IncompatibleRemoteServiceException
+	{
+		String[] result = new String[3];
+		int start = 0;
+		for (int i = 0; i < 6; i++)
+		{
+			int end = payload.indexOf(AbstractSerializationStream.RPC_SEPARATOR_CHAR, start);
+			if (end < 0)
+			{
+				throw new IncompatibleRemoteServiceException("Malformed RPC request");
+			}
+			if (i >= 3)
+			{
+				result[i - 3] = unescape(payload, start, end);
+			}
+			start = end + 1;
+		}
+		return result;
+	}
+
+	private static String unescape(String payload, int start, int end)
+	{
+		int escape = payload.indexOf('\\', start);
+		if (escape < 0 || escape >= end)
+		{
+			return payload.substring(start, end);
+		}
+		StringBuilder result = new StringBuilder(end - start);
+		for (int i = start; i < end; i++)
+		{
+			char c = payload.charAt(i);
+			if (c == '\\' && i + 1 < end)
+			{
+				c = payload.charAt(++i);
+				switch (c)
+				{
+					case '0':
+						c = '\u0000';
+					break;
+					case '!':
+						c = AbstractSerializationStream.RPC_SEPARATOR_CHAR;
+					break;
+				}
+			}
+			result.append(c);
+		}
+		return result.toString();
+	}
+	
+	private static String deobfuscate(ServerSerializationStreamReader streamReader, String name) throws SerializationException
+	{
+		if (streamReader.hasFlags(AbstractSerializationStream.FLAG_ELIDE_TYPE_NAMES))
+		{
+			SerializationPolicy serializationPolicy = streamReader.getSerializationPolicy();
+			if (!(serializationPolicy instanceof TypeNameObfuscator))
+			{
+				throw new IncompatibleRemoteServiceException("RPC request was encoded with obfuscated type names, "
+						+ "but the SerializationPolicy in use does not implement " + TypeNameObfuscator.class.getName());
+			}
+			String className = ((TypeNameObfuscator) serializationPolicy).getClassNameForTypeId(name);
+			if (className != null)
+			{
+				return className;
+			}
+		}
+		else
+		{
+			// Type names may carry a type signature, after a slash
+			int slash = name.indexOf('/');
+			if (slash != -1)
+			{
+				return name.substring(0, slash);
+			}
+		}
+		return name;
+	}
+
+	private static Class<?> getClass(String name, ClassLoader classLoader) throws ClassNotFoundException
+	{
+		Class<?> result = PRIMITIVE_TYPES.get(name);
+		if (result != null)
+		{
+			return result;
+		}
+		return Class.forName(name, false, classLoader);
+	}
+
+	/**
+	 * Everything resolved for a service interface, on a given module permutation.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	private class ServiceDescriptor implements SerializationPolicyProvider
+	{
+		private volatile SerializationPolicy serializationPolicy;
+		private volatile Class<?> serviceInterface;
+		private final Map<String, ServiceMethod> methods = new ConcurrentHashMap<String, ServiceMethod>();
+		
+		@Override
+		public SerializationPolicy getSerializationPolicy(String moduleBaseURL, String strongName)
+		{
+			SerializationPolicy result = serializationPolicy;
+			if (result == null)
+			{
+				result = serializationPolicyProvider.getSerializationPolicy(moduleBaseURL, strongName);
+				serializationPolicy = result;
+			}
+			return result;
+		}
+		
+		/**
+		 * Check if the serialization policy was loaded for the module permutation, instead of 
+		 * being the default policy used when no policy file is found for the strong name.
+		 * @return
+		 */
+		private boolean hasModulePolicy()
+		{
+			SerializationPolicy result = serializationPolicy;
+			return result != null && result != RPC.getDefaultSerializationPolicy();
+		}
+		
+		private Class<?> getServiceInterface(ServerSerializationStreamReader streamReader, String encodedName, 
+												ClassLoader classLoader) throws SerializationException
+		{
+			Class<?> result = serviceInterface;
+			if (result == null)
+			{
+				String name = deobfuscate(streamReader, encodedName);
+				try
+				{
+					result = RpcRequestDecoder.getClass(name, classLoader);
+				}
+				catch (ClassNotFoundException e)
+				{
+					throw new IncompatibleRemoteServiceException("Could not locate requested interface '" + name + "' in default classloader", e);
+				}
+				serviceInterface = result;
+			}
+			return result;
+		}
+
+		private ServiceMethod getMethod(ServerSerializationStreamReader streamReader, String methodKey, String methodName, 
+										String[] paramTypeNames, ClassLoader classLoader) throws SerializationException
+		{
+			ServiceMethod result = methods.get(methodKey);
+			if (result == null)
+			{
+				Class<?>[] parameterTypes = new Class<?>[paramTypeNames.length];
+				for (int i = 0; i < paramTypeNames.length; i++)
+				{
+					String paramTypeName = deobfuscate(streamReader, paramTypeNames[i]);
+					try
+					{
+						parameterTypes[i] = RpcRequestDecoder.getClass(paramTypeName, classLoader);
+					}
+					catch (ClassNotFoundException e)
+					{
+						throw new IncompatibleRemoteServiceException("Parameter " + i + " of is of an unknown type '" + paramTypeName + "'", e);
+					}
+				}
+				try
+				{
+					result = new ServiceMethod(serviceInterface.getMethod(methodName, parameterTypes));
+				}
+				catch (NoSuchMethodException e)
+				{
+					throw new IncompatibleRemoteServiceException("Could not locate requested method '" + methodName 
+							+ "' in interface '" + serviceInterface.getName() + "'", e);
+				}
+				methods.put(methodKey, result);
+			}
+			return result;
+		}
+	}
+	
+	/**
+	 * A resolved service method.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	private static class ServiceMethod
+	{
+		private final Method method;
+		private final Class<?>[] parameterTypes;
+		private final Type[] genericParameterTypes;
+		private final TypeVariable<Method>[] typeParameters;
+
+		private ServiceMethod(Method method)
+		{
+			this.method = method;
+			this.parameterTypes = method.getParameterTypes();
+			this.genericParameterTypes = method.getGenericParameterTypes();
+			this.typeParameters = method.getTypeParameters();
+		}
+	}
+}
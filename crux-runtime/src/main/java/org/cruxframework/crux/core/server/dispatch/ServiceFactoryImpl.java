@@ -21,11 +21,15 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cruxframework.crux.core.config.ConfigurationFactory;
 import org.cruxframework.crux.core.server.Environment;
+import org.cruxframework.crux.core.server.scope.ServiceInstances;
 
 
 /**
  * Default ServiceFactory implementation. It will use the first implementation found 
  * to the given interface passed.
+ * 
+ * Service instances are created according to the {@link org.cruxframework.crux.core.server.scope.ServiceScope} 
+ * declared by the implementation class.
  *  
  * @author Thiago da Rosa de Bustamante
  *
@@ -34,6 +38,14 @@ public class ServiceFactoryImpl implements ServiceFactory
 {
 	private static boolean initialized = false;
 	private static final Log logger = LogFactory.getLog(ServiceFactoryImpl.class);
+	private static final ServiceInstances.Instantiator instantiator = new ServiceInstances.Instantiator()
+	{
+		@Override
+		public Object newInstance(Class<?> serviceClass) throws Exception
+		{
+			return serviceClass.newInstance();
+		}
+	};
 	
 	private FactoryStrategy strategy;
 
@@ -102,7 +114,7 @@ public class ServiceFactoryImpl implements ServiceFactory
 		{
 			try 
 			{
-				return ServicesCompileMap.getService(serviceName).newInstance();
+				return ServiceInstances.register(ServicesCompileMap.getService(serviceName), instantiator).get();
 			} 
 			catch (Exception e) 
 			{
@@ -149,7 +161,7 @@ public class ServiceFactoryImpl implements ServiceFactory
 		{
 			try 
 			{
-				return Services.getService(serviceName).newInstance();
+				return ServiceInstances.register(Services.getService(serviceName), instantiator).get();
 			} 
 			catch (Exception e) 
 			{
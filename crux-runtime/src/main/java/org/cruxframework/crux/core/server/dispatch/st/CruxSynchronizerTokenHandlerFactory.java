@@ -34,4 +34,20 @@ public class CruxSynchronizerTokenHandlerFactory
 		syncTokenHandler.setSession(request.getSession());
 		return syncTokenHandler;
 	}
+
+	/**
+	 * Create a handler that validates the given token, instead of the token sent as a request 
+	 * parameter. Used when more than one call is sent on the same request.
+	 * @param request
+	 * @param synchronizerToken
+	 * @return
+	 */
+	public static CruxSynchronizerTokenHandler getCruxSynchronizerTokenHandler(HttpServletRequest request, String synchronizerToken)
+	{
+		CruxSynchronizerTokenServiceImpl syncTokenHandler = new CruxSynchronizerTokenServiceImpl();
+		syncTokenHandler.setRequest(request);
+		syncTokenHandler.setSession(request.getSession());
+		syncTokenHandler.setReceivedToken(synchronizerToken);
+		return syncTokenHandler;
+	}
 }
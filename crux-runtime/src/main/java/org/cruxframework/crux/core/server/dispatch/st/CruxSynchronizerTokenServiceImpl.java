@@ -16,12 +16,9 @@
 package org.cruxframework.crux.core.server.dispatch.st;
 
 import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
@@ -32,19 +29,24 @@ import org.cruxframework.crux.core.utils.ClassUtils;
 import com.google.gwt.user.server.Base64Utils;
 
 /**
+ * Each expected or in use token is kept in its own session attribute, so every change 
+ * replicates only the affected entry. Operations over the same method, for the same session, 
+ * are serialized by a lock chosen from a fixed set of lock stripes, so requests from different 
+ * sessions or to different methods do not block each other.
+ *  
  * @author Thiago da Rosa de Bustamante 
  *
  */
 public class CruxSynchronizerTokenServiceImpl implements CruxSynchronizerTokenService, CruxSynchronizerTokenHandler
 {
-	private static final String EXPECTED_TOKENS_ATT = "__CRUX_SYNC_TOKEN_";
+	private static final String EXPECTED_TOKENS_ATT = "__CRUX_SYNC_TOKEN_EXPECTED_";
 	private static final String PROCESSING_TOKENS_ATT = "__CRUX_SYNC_TOKEN_IN_USE_";
+	private static final int LOCK_STRIPES = 64;
 
-	private static ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
-	private static Lock readLock = readWriteLock.readLock();
-	private static Lock writeLock = readWriteLock.writeLock();
+	private static final Lock[] locks = createLocks();
 	private HttpServletRequest request;
 	private HttpSession session;
+	private String receivedToken;
 
 	/**
 	 * @see org.cruxframework.crux.core.server.dispatch.RequestAware#setRequest(javax.servlet.http.HttpServletRequest)
@@ -61,13 +63,24 @@ public class CruxSynchronizerTokenServiceImpl implements CruxSynchronizerTokenSe
 	{
 		this.session = session;
 	}		
+
+	/**
+	 * Set the token received for the method call. If not set, the token is read from the 
+	 * request parameters.
+	 * @param receivedToken
+	 */
+	public void setReceivedToken(String receivedToken)
+	{
+		this.receivedToken = receivedToken;
+	}
 	
 	/**
 	 * @see org.cruxframework.crux.core.shared.rpc.st.CruxSynchronizerTokenService#getSynchronizerToken(java.lang.String)
 	 */
 	public String getSynchronizerToken(String methodFullSignature)
 	{
-		writeLock.lock();
+		Lock lock = getLock(methodFullSignature);
+		lock.lock();
 		try
 		{
 			if (createToken(methodFullSignature))
@@ -77,7 +90,7 @@ public class CruxSynchronizerTokenServiceImpl implements CruxSynchronizerTokenSe
 		}
 		finally
 		{
-			writeLock.unlock();
+			lock.unlock();
 		}
 		
 		return null;
@@ -88,15 +101,7 @@ public class CruxSynchronizerTokenServiceImpl implements CruxSynchronizerTokenSe
 	 */
 	public boolean isMethodRunning(String methodFullSignature)
 	{
-		readLock.lock();
-		try
-		{
-			return getProcessingTokens().containsKey(methodFullSignature);
-		}
-		finally
-		{
-			readLock.unlock();
-		}
+		return session.getAttribute(PROCESSING_TOKENS_ATT + methodFullSignature) != null;
 	}
 
 	/**
@@ -104,11 +109,12 @@ public class CruxSynchronizerTokenServiceImpl implements CruxSynchronizerTokenSe
 	 */
 	public void startMethod(String methodFullSignature) throws InvalidTokenException
 	{
-		writeLock.lock();
+		Lock lock = getLock(methodFullSignature);
+		lock.lock();
 		try
 		{
 			String expectedToken = getExpectedToken(methodFullSignature);
-			String receivedToken = request.getParameter(CRUX_SYNC_TOKEN_PARAM);
+			String receivedToken = (this.receivedToken != null ? this.receivedToken : request.getParameter(CRUX_SYNC_TOKEN_PARAM));
 			if (expectedToken != null && receivedToken != null && expectedToken.equals(receivedToken))
 			{
 				unregisterExpectedToken(methodFullSignature);
@@ -121,38 +127,34 @@ public class CruxSynchronizerTokenServiceImpl implements CruxSynchronizerTokenSe
 		}
 		finally
 		{
-			writeLock.unlock();
+			lock.unlock();
 		}
 	}
 
 	private void registerProcessingToken(String methodFullSignature) 
 	{
-		getProcessingTokens().put(methodFullSignature, true);
-		forceProcessingTokensReplication();
+		session.setAttribute(PROCESSING_TOKENS_ATT + methodFullSignature, Boolean.TRUE);
 	}
 	
 	private void unregisterProcessingToken(String methodFullSignature) 
 	{
-		getProcessingTokens().remove(methodFullSignature);
-		forceProcessingTokensReplication();
+		session.removeAttribute(PROCESSING_TOKENS_ATT + methodFullSignature);
 	}
 
 	private void unregisterExpectedToken(String methodFullSignature) 
 	{
-		getExpectedTokens().remove(methodFullSignature);
-		forceExpectedTokensReplication();
+		session.removeAttribute(EXPECTED_TOKENS_ATT + methodFullSignature);
 	}
 	
 
 	private void registerExpectedToken(String methodFullSignature, String token) 
 	{
-		getExpectedTokens().put(methodFullSignature, token);
-		forceExpectedTokensReplication();
+		session.setAttribute(EXPECTED_TOKENS_ATT + methodFullSignature, token);
 	}
 	
 	private String getExpectedToken(String methodSignature)
 	{
-		 return getExpectedTokens().get(methodSignature);
+		 return (String) session.getAttribute(EXPECTED_TOKENS_ATT + methodSignature);
 	}
 	
 	/**
@@ -160,14 +162,15 @@ public class CruxSynchronizerTokenServiceImpl implements CruxSynchronizerTokenSe
 	 */
 	public void endMethod(String methodFullSignature)
 	{
-		writeLock.lock();
+		Lock lock = getLock(methodFullSignature);
+		lock.lock();
 		try
 		{
 			unregisterProcessingToken(methodFullSignature);
 		}
 		finally
 		{
-			writeLock.unlock();
+			lock.unlock();
 		}
 	}
 	
@@ -209,60 +212,24 @@ public class CruxSynchronizerTokenServiceImpl implements CruxSynchronizerTokenSe
 	}
 	
 	/**
-	 * This is only necessary because Google AppEngine does not replicates sessions the same way other containers do.
-	 * The replication only occurs when you call the <code>setAttribute</code> method on the <code>session</code> object, 
-	 * storing an object different than the previous one stored for the desired key.
-	 * <a href="https://developers.google.com/appengine/docs/java/config/appconfig#Enabling_Sessions">AppEngine Documentation</a>  
-	 */
-	private void forceProcessingTokensReplication() 
-	{
-		Map<String, Boolean> processing = getProcessingTokens();
-		Map<String, Boolean> clone = new HashMap<String, Boolean>();
-		clone.putAll(processing);
-		session.setAttribute(PROCESSING_TOKENS_ATT, clone);
-	}
-
-	/**
-	 * This is only necessary because Google AppEngine does not replicates sessions the same way other containers do.
-	 * The replication only occurs when you call the <code>setAttribute</code> method on the <code>session</code> object, 
-	 * storing an object different than the previous one stored for the desired key.
-	 * <a href="https://developers.google.com/appengine/docs/java/config/appconfig#Enabling_Sessions">AppEngine Documentation</a>  
-	 */
-	private void forceExpectedTokensReplication() 
-	{
-		Map<String, String> expected = getExpectedTokens();
-		Map<String, String> clone = new HashMap<String, String>();
-		clone.putAll(expected);
-		session.setAttribute(EXPECTED_TOKENS_ATT, clone);
-	}
-
-	/**
+	 * Retrieve the lock that guards the tokens of the given method, for the current session.
+	 * @param methodFullSignature
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
-	private Map<String, String> getExpectedTokens()
+	private Lock getLock(String methodFullSignature)
 	{
-		Map<String, String> tokens = (Map<String, String>) this.session.getAttribute(EXPECTED_TOKENS_ATT); 
-		if (tokens == null)
-		{
-			tokens = new HashMap<String, String>();
-			session.setAttribute(EXPECTED_TOKENS_ATT, tokens);
-		}
-		return tokens;
+		int hash = 31 * session.getId().hashCode() + methodFullSignature.hashCode();
+		hash ^= (hash >>> 16);
+		return locks[hash & (LOCK_STRIPES - 1)];
 	}
 
-	/**
-	 * @return
-	 */
-	@SuppressWarnings("unchecked")
-	private Map<String, Boolean> getProcessingTokens()
+	private static Lock[] createLocks()
 	{
-		Map<String, Boolean> inUsetokens = (Map<String, Boolean>) this.session.getAttribute(PROCESSING_TOKENS_ATT); 
-		if (inUsetokens == null)
+		Lock[] result = new Lock[LOCK_STRIPES];
+		for (int i = 0; i < LOCK_STRIPES; i++)
 		{
-			inUsetokens = new HashMap<String, Boolean>();
-			session.setAttribute(PROCESSING_TOKENS_ATT, inUsetokens);
+			result[i] = new ReentrantLock();
 		}
-		return inUsetokens;
+		return result;
 	}
 }
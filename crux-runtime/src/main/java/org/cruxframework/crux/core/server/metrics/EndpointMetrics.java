@@ -0,0 +1,217 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cruxframework.crux.core.server.metrics.LatencyHistogram.Snapshot;
+
+/**
+ * Counters and latency histograms for a single REST resource method or RPC method.
+ * 
+ * <p>The phases are timed in sequence, using the current time returned by each 
+ * record call as the start of the next phase:</p>
+ * <pre>
+ * long time = System.nanoTime();
+ * ...
+ * time = metrics.record(Phase.INJECT, time);
+ * ...
+ * time = metrics.record(Phase.INVOKE, time);
+ * </pre>
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class EndpointMetrics
+{
+	public static enum Phase{ROUTE, INJECT, INVOKE, SERIALIZE, GZIP, WRITE, TOTAL}
+	
+	private final String name;
+	private final LatencyHistogram[] phases;
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong stateCacheHits = new AtomicLong();
+	private final AtomicLong stateCacheMisses = new AtomicLong();
+	private final AtomicLong notModified = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	EndpointMetrics(String name)
+	{
+		this.name = name;
+		Phase[] values = Phase.values();
+		this.phases = new LatencyHistogram[values.length];
+		for (int i = 0; i < values.length; i++)
+		{
+			phases[i] = new LatencyHistogram();
+		}
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Record the elapsed time of the given phase.
+	 * @param phase
+	 * @param startNanos start time of the phase, as returned by {@link System#nanoTime()}
+	 * @return the current time, in nanoseconds
+	 */
+	public long record(Phase phase, long startNanos)
+	{
+		return phases[phase.ordinal()].recordSince(startNanos);
+	}
+
+	/**
+	 * Record the elapsed time of the given phase.
+	 * @param phase
+	 * @param startNanos start time of the phase, as returned by {@link System#nanoTime()}
+	 * @param endNanos end time of the phase, as returned by {@link System#nanoTime()}
+	 */
+	public void record(Phase phase, long startNanos, long endNanos)
+	{
+		phases[phase.ordinal()].record((endNanos - startNanos) / 1000);
+	}
+
+	/**
+	 * Count a finished request and record its total time.
+	 * @param startNanos start time of the request, as returned by {@link System#nanoTime()}
+	 * @param failed true if the request failed with an error
+	 */
+	public void recordRequest(long startNanos, boolean failed)
+	{
+		requests.incrementAndGet();
+		if (failed)
+		{
+			errors.incrementAndGet();
+		}
+		phases[Phase.TOTAL.ordinal()].recordSince(startNanos);
+	}
+
+	public void recordStateCacheHit()
+	{
+		stateCacheHits.incrementAndGet();
+	}
+
+	public void recordStateCacheMiss()
+	{
+		stateCacheMisses.incrementAndGet();
+	}
+
+	public void recordNotModified()
+	{
+		notModified.incrementAndGet();
+	}
+
+	/**
+	 * Count a request that shared the refresh made by another concurrent request for 
+	 * the same expired resource.
+	 */
+	public void recordCoalesced()
+	{
+		coalesced.incrementAndGet();
+	}
+
+	public long getRequests()
+	{
+		return requests.get();
+	}
+
+	public long getErrors()
+	{
+		return errors.get();
+	}
+
+	public long getStateCacheHits()
+	{
+		return stateCacheHits.get();
+	}
+
+	public long getStateCacheMisses()
+	{
+		return stateCacheMisses.get();
+	}
+
+	public long getNotModified()
+	{
+		return notModified.get();
+	}
+
+	public long getCoalesced()
+	{
+		return coalesced.get();
+	}
+
+	public Snapshot getSnapshot(Phase phase)
+	{
+		return phases[phase.ordinal()].getSnapshot();
+	}
+
+	public void reset()
+	{
+		for (LatencyHistogram histogram : phases)
+		{
+			histogram.reset();
+		}
+		requests.set(0);
+		errors.set(0);
+		stateCacheHits.set(0);
+		stateCacheMisses.set(0);
+		notModified.set(0);
+		coalesced.set(0);
+	}
+
+	/**
+	 * Describe the current values as a map, ready for JSON serialization. Times are 
+	 * in microseconds and phases with no recorded values are omitted.
+	 * @return
+	 */
+	public Map<String, Object> toMap()
+	{
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("requests", getRequests());
+		result.put("errors", getErrors());
+		if (getStateCacheHits() > 0 || getStateCacheMisses() > 0 || getNotModified() > 0 || getCoalesced() > 0)
+		{
+			Map<String, Object> stateCache = new LinkedHashMap<String, Object>();
+			stateCache.put("hits", getStateCacheHits());
+			stateCache.put("misses", getStateCacheMisses());
+			stateCache.put("notModified", getNotModified());
+			stateCache.put("coalesced", getCoalesced());
+			result.put("stateCache", stateCache);
+		}
+		Map<String, Object> phaseValues = new LinkedHashMap<String, Object>();
+		for (Phase phase : Phase.values())
+		{
+			Snapshot snapshot = getSnapshot(phase);
+			if (snapshot.getCount() > 0)
+			{
+				Map<String, Object> values = new LinkedHashMap<String, Object>();
+				values.put("count", snapshot.getCount());
+				values.put("mean", Math.round(snapshot.getMean()));
+				values.put("p50", snapshot.getPercentile(50));
+				values.put("p90", snapshot.getPercentile(90));
+				values.put("p99", snapshot.getPercentile(99));
+				values.put("p999", snapshot.getPercentile(99.9));
+				values.put("max", snapshot.getMax());
+				phaseValues.put(phase.name().toLowerCase(), values);
+			}
+		}
+		result.put("phases", phaseValues);
+		return result;
+	}
+}
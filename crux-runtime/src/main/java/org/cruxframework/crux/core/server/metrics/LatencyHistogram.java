@@ -0,0 +1,205 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram, with log-linear buckets (as the HdrHistogram does). Each 
+ * power of two range is split in {@value #SUB_BUCKET_HALF_COUNT} linear sub buckets, so the 
+ * reported percentiles have a relative error below 7%, with a fixed memory footprint.
+ * 
+ * <p>Values are recorded in microseconds. Values bigger than {@link #MAX_VALUE} are recorded 
+ * as {@link #MAX_VALUE}. Snapshots are not atomic: a snapshot taken while values are recorded 
+ * may not include all of them.</p>
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+	private static final int MAX_VALUE_BITS = 32;
+	public static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+	private static final int BUCKETS = bucketIndex(MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record the elapsed time since the given start time.
+	 * @param startNanos start time, as returned by {@link System#nanoTime()}
+	 * @return the current time, in nanoseconds, to be used as start time for the next phase
+	 */
+	public long recordSince(long startNanos)
+	{
+		long now = System.nanoTime();
+		record((now - startNanos) / 1000);
+		return now;
+	}
+
+	/**
+	 * Record a value, in microseconds.
+	 * @param value
+	 */
+	public void record(long value)
+	{
+		if (value < 0)
+		{
+			value = 0;
+		}
+		else if (value > MAX_VALUE)
+		{
+			value = MAX_VALUE;
+		}
+		counts.incrementAndGet(bucketIndex(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		long currentMax;
+		while (value > (currentMax = max.get()))
+		{
+			if (max.compareAndSet(currentMax, value))
+			{
+				break;
+			}
+		}
+	}
+
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	public void reset()
+	{
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			counts.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	public Snapshot getSnapshot()
+	{
+		long[] bucketCounts = new long[BUCKETS];
+		long snapshotCount = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			bucketCounts[i] = counts.get(i);
+			snapshotCount += bucketCounts[i];
+		}
+		return new Snapshot(bucketCounts, snapshotCount, total.get(), max.get());
+	}
+
+	private static int bucketIndex(long value)
+	{
+		if (value < SUB_BUCKET_COUNT)
+		{
+			return (int) value;
+		}
+		int magnitude = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+		return (magnitude * SUB_BUCKET_HALF_COUNT) + (int) (value >>> magnitude);
+	}
+
+	/**
+	 * The highest value that is recorded in the given bucket.
+	 */
+	private static long highestValue(int index)
+	{
+		if (index < SUB_BUCKET_COUNT)
+		{
+			return index;
+		}
+		int magnitude = (index / SUB_BUCKET_HALF_COUNT) - 1;
+		long subBucket = (index % SUB_BUCKET_HALF_COUNT) + SUB_BUCKET_HALF_COUNT;
+		return ((subBucket + 1) << magnitude) - 1;
+	}
+
+	/**
+	 * A point in time view of a histogram. All values are in microseconds.
+	 * 
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	public static class Snapshot
+	{
+		private final long[] bucketCounts;
+		private final long count;
+		private final long total;
+		private final long max;
+
+		private Snapshot(long[] bucketCounts, long count, long total, long max)
+		{
+			this.bucketCounts = bucketCounts;
+			this.count = count;
+			this.total = total;
+			this.max = max;
+		}
+
+		public long getCount()
+		{
+			return count;
+		}
+
+		public long getTotal()
+		{
+			return total;
+		}
+
+		public long getMax()
+		{
+			return max;
+		}
+
+		public double getMean()
+		{
+			return count == 0 ? 0 : (double) total / count;
+		}
+
+		/**
+		 * Returns the value below which the given percentage of the recorded values are.
+		 * @param percentile a value between 0 and 100
+		 * @return
+		 */
+		public long getPercentile(double percentile)
+		{
+			if (count == 0)
+			{
+				return 0;
+			}
+			long rank = (long) Math.ceil((percentile / 100) * count);
+			if (rank < 1)
+			{
+				rank = 1;
+			}
+			long accumulated = 0;
+			for (int i = 0; i < bucketCounts.length; i++)
+			{
+				accumulated += bucketCounts[i];
+				if (accumulated >= rank)
+				{
+					return Math.min(highestValue(i), max);
+				}
+			}
+			return max;
+		}
+	}
+}
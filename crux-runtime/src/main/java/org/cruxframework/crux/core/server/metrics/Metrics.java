@@ -0,0 +1,233 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.cruxframework.crux.core.config.ConfigurationFactory;
+import org.cruxframework.crux.core.server.metrics.EndpointMetrics.Phase;
+
+/**
+ * Registry for the metrics of the REST and RPC endpoints. Metrics are only collected if 
+ * the <code>enableMetrics</code> property is true. They are exposed through JMX (when 
+ * {@link #registerMBean(String)} is called) and through the {@link MetricsServlet}.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class Metrics
+{
+	private static final Log logger = LogFactory.getLog(Metrics.class);
+	private static final String MBEAN_DOMAIN = "org.cruxframework.crux";
+
+	private static final boolean enabled = Boolean.parseBoolean(ConfigurationFactory.getConfigurations().enableMetrics());
+	private static final ConcurrentMap<String, EndpointMetrics> restEndpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+	private static final ConcurrentMap<String, EndpointMetrics> rpcEndpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+	private static final ConcurrentMap<Method, EndpointMetrics> rpcMethods = new ConcurrentHashMap<Method, EndpointMetrics>();
+	private static final ObjectMapper mapper = new ObjectMapper();
+	private static ObjectName mbeanName;
+
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Retrieve the metrics for the given REST endpoint.
+	 * @param name
+	 * @return the endpoint metrics or null, if metrics are not enabled
+	 */
+	public static EndpointMetrics getRestEndpoint(String name)
+	{
+		return getEndpoint(restEndpoints, name);
+	}
+
+	/**
+	 * Retrieve the metrics for the given RPC method.
+	 * @param name
+	 * @return the endpoint metrics or null, if metrics are not enabled
+	 */
+	public static EndpointMetrics getRpcEndpoint(String name)
+	{
+		return getEndpoint(rpcEndpoints, name);
+	}
+
+	/**
+	 * Retrieve the metrics for the given RPC method.
+	 * @param method
+	 * @return the endpoint metrics or null, if metrics are not enabled
+	 */
+	public static EndpointMetrics getRpcEndpoint(Method method)
+	{
+		if (!enabled)
+		{
+			return null;
+		}
+		EndpointMetrics endpoint = rpcMethods.get(method);
+		if (endpoint == null)
+		{
+			endpoint = getRpcEndpoint(method.getDeclaringClass().getName() + "." + method.getName());
+			rpcMethods.putIfAbsent(method, endpoint);
+		}
+		return endpoint;
+	}
+
+	public static Map<String, EndpointMetrics> getRestEndpoints()
+	{
+		return Collections.unmodifiableMap(restEndpoints);
+	}
+
+	public static Map<String, EndpointMetrics> getRpcEndpoints()
+	{
+		return Collections.unmodifiableMap(rpcEndpoints);
+	}
+
+	/**
+	 * Describe the metrics of all the endpoints as a map, ready for JSON serialization. The 
+	 * endpoints are sorted by the 99th percentile of their total time, slowest first.
+	 * @return
+	 */
+	public static Map<String, Object> getSnapshot()
+	{
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("enabled", enabled);
+		result.put("rest", describe(restEndpoints));
+		result.put("rpc", describe(rpcEndpoints));
+		return result;
+	}
+
+	/**
+	 * The same as {@link #getSnapshot()}, serialized as JSON.
+	 * @return
+	 * @throws IOException
+	 */
+	public static String getSnapshotAsJson() throws IOException
+	{
+		return mapper.writeValueAsString(getSnapshot());
+	}
+
+	public static void reset()
+	{
+		for (EndpointMetrics endpoint : restEndpoints.values())
+		{
+			endpoint.reset();
+		}
+		for (EndpointMetrics endpoint : rpcEndpoints.values())
+		{
+			endpoint.reset();
+		}
+	}
+
+	/**
+	 * Register the metrics MBean on the platform MBean server, if metrics are enabled.
+	 * @param contextPath context path of the application, used to identify the MBean
+	 */
+	public static synchronized void registerMBean(String contextPath)
+	{
+		if (!enabled || mbeanName != null)
+		{
+			return;
+		}
+		try
+		{
+			String context = (contextPath == null || contextPath.length() == 0) ? "/" : contextPath;
+			ObjectName name = new ObjectName(MBEAN_DOMAIN + ":type=Metrics,context=" + ObjectName.quote(context));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(new MetricsMonitor(), name);
+			mbeanName = name;
+		}
+		catch (Exception e)
+		{
+			logger.error("Error registering metrics MBean.", e);
+		}
+	}
+
+	public static synchronized void unregisterMBean()
+	{
+		if (mbeanName != null)
+		{
+			try
+			{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+			}
+			catch (Exception e)
+			{
+				logger.error("Error unregistering metrics MBean.", e);
+			}
+			mbeanName = null;
+		}
+	}
+
+	private static EndpointMetrics getEndpoint(ConcurrentMap<String, EndpointMetrics> endpoints, String name)
+	{
+		if (!enabled)
+		{
+			return null;
+		}
+		EndpointMetrics endpoint = endpoints.get(name);
+		if (endpoint == null)
+		{
+			endpoint = new EndpointMetrics(name);
+			EndpointMetrics previous = endpoints.putIfAbsent(name, endpoint);
+			if (previous != null)
+			{
+				endpoint = previous;
+			}
+		}
+		return endpoint;
+	}
+
+	private static Map<String, Object> describe(ConcurrentMap<String, EndpointMetrics> endpoints)
+	{
+		List<EndpointMetrics> sorted = new ArrayList<EndpointMetrics>(endpoints.values());
+		final Map<EndpointMetrics, Long> totals = new HashMap<EndpointMetrics, Long>();
+		for (EndpointMetrics endpoint : sorted)
+		{
+			totals.put(endpoint, endpoint.getSnapshot(Phase.TOTAL).getPercentile(99));
+		}
+		Collections.sort(sorted, new Comparator<EndpointMetrics>()
+		{
+			@Override
+			public int compare(EndpointMetrics o1, EndpointMetrics o2)
+			{
+				int result = totals.get(o2).compareTo(totals.get(o1));
+				return result != 0 ? result : o1.getName().compareTo(o2.getName());
+			}
+		});
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		for (EndpointMetrics endpoint : sorted)
+		{
+			result.put(endpoint.getName(), endpoint.toMap());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.metrics;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * @author Thiago da Rosa de Bustamante
+ */
+public class MetricsMonitor implements MetricsMonitorMBean
+{
+	@Override
+	public boolean isEnabled()
+	{
+		return Metrics.isEnabled();
+	}
+
+	@Override
+	public String[] getRestEndpoints()
+	{
+		return toArray(Metrics.getRestEndpoints().keySet());
+	}
+
+	@Override
+	public String[] getRpcEndpoints()
+	{
+		return toArray(Metrics.getRpcEndpoints().keySet());
+	}
+
+	@Override
+	public long getStateCacheHits()
+	{
+		long result = 0;
+		for (EndpointMetrics endpoint : Metrics.getRestEndpoints().values())
+		{
+			result += endpoint.getStateCacheHits();
+		}
+		return result;
+	}
+
+	@Override
+	public long getStateCacheMisses()
+	{
+		long result = 0;
+		for (EndpointMetrics endpoint : Metrics.getRestEndpoints().values())
+		{
+			result += endpoint.getStateCacheMisses();
+		}
+		return result;
+	}
+
+	@Override
+	public long getStateCacheNotModified()
+	{
+		long result = 0;
+		for (EndpointMetrics endpoint : Metrics.getRestEndpoints().values())
+		{
+			result += endpoint.getNotModified();
+		}
+		return result;
+	}
+
+	@Override
+	public long getStateCacheCoalesced()
+	{
+		long result = 0;
+		for (EndpointMetrics endpoint : Metrics.getRestEndpoints().values())
+		{
+			result += endpoint.getCoalesced();
+		}
+		return result;
+	}
+
+	@Override
+	public String getSnapshot()
+	{
+		try
+		{
+			return Metrics.getSnapshotAsJson();
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Error serializing metrics snapshot.", e);
+		}
+	}
+
+	@Override
+	public void reset()
+	{
+		Metrics.reset();
+	}
+
+	private String[] toArray(Set<String> names)
+	{
+		return names.toArray(new String[names.size()]);
+	}
+}
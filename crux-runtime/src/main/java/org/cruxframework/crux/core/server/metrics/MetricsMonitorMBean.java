@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.metrics;
+
+/**
+ * JMX view of the endpoint metrics. Times are in microseconds.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public interface MetricsMonitorMBean
+{
+	boolean isEnabled();
+	String[] getRestEndpoints();
+	String[] getRpcEndpoints();
+	long getStateCacheHits();
+	long getStateCacheMisses();
+	long getStateCacheNotModified();
+	long getStateCacheCoalesced();
+	
+	/**
+	 * The metrics of all endpoints, as JSON, slowest endpoints first.
+	 */
+	String getSnapshot();
+	void reset();
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.metrics;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Sends a JSON snapshot of the REST and RPC endpoint metrics. Endpoints are sorted by 
+ * the 99th percentile of their total time, slowest first. Times are in microseconds.
+ * 
+ * <p>The snapshot exposes internal details of the application, so this servlet must be 
+ * mapped to a protected path.</p>
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class MetricsServlet extends HttpServlet
+{
+	private static final long serialVersionUID = -2791245378562018532L;
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+	{
+		byte[] content = Metrics.getSnapshotAsJson().getBytes("UTF-8");
+		resp.setContentType("application/json; charset=UTF-8");
+		resp.setHeader("Cache-Control", "no-cache, no-store");
+		resp.setContentLength(content.length);
+		resp.getOutputStream().write(content);
+	}
+}
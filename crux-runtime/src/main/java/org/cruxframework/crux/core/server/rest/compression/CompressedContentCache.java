@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.compression;
+
+import org.cruxframework.crux.core.utils.ClockCache;
+
+/**
+ * Keeps the encoded representations of public cacheable resources, so the same content is not 
+ * compressed again on every request. 
+ * 
+ * Each entry is bound to the eTag of the content that was encoded and is only served while 
+ * the resource still resolves to the same eTag. The cache is bounded by the total number 
+ * of bytes stored. Entries are discarded by a {@link ClockCache}, so reads take no lock.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class CompressedContentCache
+{
+	private static final int ENTRY_OVERHEAD = 64;
+
+	private final ClockCache<Entry> entries;
+
+	public CompressedContentCache(long maxSize)
+	{
+		this.entries = new ClockCache<Entry>(maxSize);
+	}
+
+	/**
+	 * Retrieve the encoded content stored for the given resource, if it was generated for the given eTag.
+	 * @param key the resource key
+	 * @param encoding the content coding
+	 * @param etag the current eTag of the resource
+	 * @return
+	 */
+	public byte[] get(String key, String encoding, String etag)
+	{
+		Entry entry = entries.get(encoding + "|" + key);
+		if (entry != null && entry.etag.equals(etag))
+		{
+			return entry.content;
+		}
+		return null;
+	}
+
+	/**
+	 * Store the encoded content for the given resource.
+	 * @param key the resource key
+	 * @param encoding the content coding
+	 * @param etag the eTag of the content that was encoded
+	 * @param content the encoded content
+	 */
+	public void put(String key, String encoding, String etag, byte[] content)
+	{
+		String entryKey = encoding + "|" + key;
+		entries.put(entryKey, new Entry(etag, content), ENTRY_OVERHEAD + (entryKey.length() * 2) + content.length);
+	}
+
+	public void clear()
+	{
+		entries.clear();
+	}
+
+	/**
+	 * The number of bytes currently stored.
+	 * @return
+	 */
+	public long getSize()
+	{
+		return entries.getSize();
+	}
+
+	private static class Entry
+	{
+		private final String etag;
+		private final byte[] content;
+
+		private Entry(String etag, byte[] content)
+		{
+			this.etag = etag;
+			this.content = content;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.compression;
+
+import org.cruxframework.crux.core.i18n.DefaultServerMessage;
+
+/**
+ * @author Thiago da Rosa de Bustamante
+ *
+ */
+public interface CompressionConfig
+{
+	@DefaultServerMessage("true")
+	String enabled();
+
+	@DefaultServerMessage("org.cruxframework.crux.core.server.rest.compression.GzipContentEncoder")
+	String encoders();
+
+	@DefaultServerMessage("-1")
+	String compressionLevel();
+
+	@DefaultServerMessage("128")
+	String minContentLength();
+
+	@DefaultServerMessage("-1")
+	String maxContentLength();
+
+	@DefaultServerMessage("16")
+	String maxPooledDeflaters();
+
+	@DefaultServerMessage("8388608")
+	String cacheMaxSizeInBytes();
+}
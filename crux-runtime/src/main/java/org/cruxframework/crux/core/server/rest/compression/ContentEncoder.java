@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes REST responses for one HTTP content coding. Encoders are registered through the 
+ * <code>encoders</code> property of {@link CompressionConfig} and must be thread safe.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public interface ContentEncoder
+{
+	/**
+	 * The content coding name, as used in the Accept-Encoding and Content-Encoding headers.
+	 * @return
+	 */
+	String getEncoding();
+
+	/**
+	 * Encode the given content.
+	 * @param content
+	 * @param offset
+	 * @param length
+	 * @return the encoded bytes
+	 * @throws IOException
+	 */
+	byte[] encode(byte[] content, int offset, int length) throws IOException;
+
+	/**
+	 * Create a stream that encodes all bytes written to it into the given output. Closing the 
+	 * returned stream finishes the encoding and releases its resources, but does not close 
+	 * the output.
+	 * @param out
+	 * @return
+	 * @throws IOException
+	 */
+	OutputStream createOutputStream(OutputStream out) throws IOException;
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Base class for the encoders based on the deflate algorithm. The {@link Deflater} instances 
+ * are taken from a {@link DeflaterPool} and returned to it when the encoding finishes.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public abstract class DeflaterContentEncoder implements ContentEncoder
+{
+	private static final int BUFFER_SIZE = 8192;
+	// No flags, no modification time and OS 0, the header written by GZIPOutputStream up to JDK 15
+	private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+	private final String encoding;
+	private final boolean gzip;
+	private final DeflaterPool pool;
+
+	/**
+	 * @param encoding the content coding name
+	 * @param gzip if true, the gzip file format is produced. Otherwise, the zlib format is used.
+	 */
+	protected DeflaterContentEncoder(String encoding, boolean gzip)
+	{
+		CompressionConfig config = CompressionConfigurationFactory.getConfigurations();
+		this.encoding = encoding;
+		this.gzip = gzip;
+		this.pool = new DeflaterPool(Integer.parseInt(config.compressionLevel()), gzip, Integer.parseInt(config.maxPooledDeflaters()));
+	}
+
+	@Override
+	public String getEncoding()
+	{
+		return encoding;
+	}
+
+	@Override
+	public byte[] encode(byte[] content, int offset, int length) throws IOException
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(length / 2, 64));
+		OutputStream encoder = createOutputStream(output);
+		try
+		{
+			encoder.write(content, offset, length);
+		}
+		finally
+		{
+			encoder.close();
+		}
+		return output.toByteArray();
+	}
+
+	@Override
+	public OutputStream createOutputStream(OutputStream out) throws IOException
+	{
+		return new EncoderOutputStream(out, pool.acquire());
+	}
+
+	private class EncoderOutputStream extends DeflaterOutputStream
+	{
+		private final CRC32 crc;
+		private boolean closed;
+
+		public EncoderOutputStream(OutputStream out, Deflater deflater) throws IOException
+		{
+			super(out, deflater, BUFFER_SIZE);
+			if (gzip)
+			{
+				crc = new CRC32();
+				out.write(GZIP_HEADER);
+			}
+			else
+			{
+				crc = null;
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			if (closed)
+			{
+				throw new IOException("Stream closed");
+			}
+			super.write(b, off, len);
+			if (crc != null)
+			{
+				crc.update(b, off, len);
+			}
+		}
+
+		@Override
+		public void finish() throws IOException
+		{
+			if (!def.finished())
+			{
+				super.finish();
+				if (crc != null)
+				{
+					writeInt((int) crc.getValue());
+					writeInt((int) def.getBytesRead());
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if (!closed)
+			{
+				closed = true;
+				try
+				{
+					finish();
+					out.flush();
+				}
+				finally
+				{
+					pool.release(def);
+				}
+			}
+		}
+
+		/**
+		 * Writes an int in little endian order, as required by the gzip trailer.
+		 */
+		private void writeInt(int value) throws IOException
+		{
+			out.write(value & 0xFF);
+			out.write((value >> 8) & 0xFF);
+			out.write((value >> 16) & 0xFF);
+			out.write((value >> 24) & 0xFF);
+		}
+	}
+}
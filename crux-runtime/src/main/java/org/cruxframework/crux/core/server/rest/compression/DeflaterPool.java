@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.compression;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Keeps idle {@link Deflater} instances, so their native buffers are reused across requests 
+ * instead of being allocated and released for every compressed response.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class DeflaterPool
+{
+	private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+	private final AtomicInteger idle = new AtomicInteger();
+	private final int level;
+	private final boolean nowrap;
+	private final int maxIdle;
+
+	/**
+	 * @param level the compression level
+	 * @param nowrap if true, raw deflate data is produced, without the zlib header and checksum
+	 * @param maxIdle the max number of idle deflaters kept by the pool
+	 */
+	public DeflaterPool(int level, boolean nowrap, int maxIdle)
+	{
+		this.level = level;
+		this.nowrap = nowrap;
+		this.maxIdle = maxIdle;
+	}
+
+	public Deflater acquire()
+	{
+		Deflater deflater = deflaters.poll();
+		if (deflater != null)
+		{
+			idle.decrementAndGet();
+			return deflater;
+		}
+		return new Deflater(level, nowrap);
+	}
+
+	public void release(Deflater deflater)
+	{
+		if (idle.incrementAndGet() <= maxIdle)
+		{
+			deflater.reset();
+			deflaters.offer(deflater);
+		}
+		else
+		{
+			idle.decrementAndGet();
+			deflater.end();
+		}
+	}
+}
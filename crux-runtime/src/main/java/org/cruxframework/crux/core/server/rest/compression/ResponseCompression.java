@@ -0,0 +1,257 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.compression;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cruxframework.crux.core.server.rest.spi.HttpRequest;
+import org.cruxframework.crux.core.server.rest.util.HttpHeaderNames;
+
+/**
+ * Compression stage for REST responses. It chooses the content coding for each request, 
+ * among the encoders configured, and keeps the encoded representations of cacheable 
+ * resources.
+ * 
+ * To configure the compression, you can create a file named CompressionConfig.properties and 
+ * configure the following properties:
+ * 
+ * enabled - To enable or disable the response compression
+ * encoders - Comma separated list of {@link ContentEncoder} classes, in order of preference. 
+ *            When the client accepts more than one of them, the first one is used.
+ * compressionLevel - The deflate compression level (0-9), or -1 for the default level
+ * minContentLength - Responses up to this number of bytes are never compressed
+ * maxContentLength - Larger responses are never compressed. Use -1 for no limit
+ * maxPooledDeflaters - The max number of idle deflaters kept by each encoder
+ * cacheMaxSizeInBytes - The max number of bytes kept by the cache of compressed responses. 
+ *                       Use 0 to disable it.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class ResponseCompression
+{
+	private static final Log logger = LogFactory.getLog(ResponseCompression.class);
+	private static final Lock lock = new ReentrantLock();
+	private static volatile boolean initialized = false;
+	private static boolean enabled;
+	private static ContentEncoder[] encoders;
+	private static ContentEncoder gzipEncoder;
+	private static CompressedContentCache cache;
+	private static int minContentLength = 128;
+	private static int maxContentLength = -1;
+
+	/**
+	 * Choose the encoder for the response, based on the Accept-Encoding header sent by the client.
+	 * @param request
+	 * @return the encoder or null if the response must not be encoded.
+	 */
+	public static ContentEncoder getEncoder(HttpRequest request)
+	{
+		initialize();
+		if (!enabled)
+		{
+			return null;
+		}
+		String acceptEncoding = request.getHttpHeaders().getHeaderString(HttpHeaderNames.ACCEPT_ENCODING);
+		if (acceptEncoding == null || acceptEncoding.length() == 0)
+		{
+			return null;
+		}
+		for (ContentEncoder encoder : encoders)
+		{
+			if (isAccepted(acceptEncoding, encoder.getEncoding()))
+			{
+				return encoder;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The gzip encoder, used to store compressed content in the response cache.
+	 * @return the encoder or null if the compression could not be initialized.
+	 */
+	public static ContentEncoder getGzipEncoder()
+	{
+		initialize();
+		return gzipEncoder;
+	}
+
+	/**
+	 * Responses up to this number of bytes are not compressed.
+	 * @return
+	 */
+	public static int getMinContentLength()
+	{
+		initialize();
+		return minContentLength;
+	}
+
+	/**
+	 * Check if a response with the given number of bytes can be compressed.
+	 * @param length
+	 * @return
+	 */
+	public static boolean isCompressible(int length)
+	{
+		initialize();
+		return length > minContentLength && (maxContentLength < 0 || length <= maxContentLength);
+	}
+
+	/**
+	 * Encode the content. If a cache key and an eTag are provided, the encoded bytes are kept, 
+	 * and reused while the resource resolves to the same eTag.
+	 * @param encoder
+	 * @param content
+	 * @param key the resource key, or null if the content can not be cached 
+	 * @param etag the content eTag, or null if the content can not be cached
+	 * @return
+	 * @throws IOException
+	 */
+	public static byte[] encode(ContentEncoder encoder, byte[] content, String key, String etag) throws IOException
+	{
+		initialize();
+		boolean cacheable = (cache != null && key != null && etag != null);
+		if (cacheable)
+		{
+			byte[] encoded = cache.get(key, encoder.getEncoding(), etag);
+			if (encoded != null)
+			{
+				return encoded;
+			}
+		}
+		byte[] encoded = encoder.encode(content, 0, content.length);
+		if (cacheable)
+		{
+			cache.put(key, encoder.getEncoding(), etag, encoded);
+		}
+		return encoded;
+	}
+
+	/**
+	 * Retrieve the cache for compressed responses.
+	 * @return the cache or null if it is not enabled.
+	 */
+	public static CompressedContentCache getCache()
+	{
+		initialize();
+		return cache;
+	}
+
+	/**
+	 * Check if the coding is accepted by the given Accept-Encoding header value. 
+	 * Codings explicitly refused (q=0) are not accepted. 
+	 */
+	static boolean isAccepted(String acceptEncoding, String encoding)
+	{
+		float wildcard = -1;
+		for (String coding : acceptEncoding.split(","))
+		{
+			String name = coding;
+			float quality = 1;
+			int index = coding.indexOf(';');
+			if (index >= 0)
+			{
+				name = coding.substring(0, index);
+				quality = parseQuality(coding.substring(index + 1));
+			}
+			name = name.trim();
+			if (name.equalsIgnoreCase(encoding) || (name.equalsIgnoreCase("x-" + encoding)))
+			{
+				return quality > 0;
+			}
+			if (name.equals("*"))
+			{
+				wildcard = quality;
+			}
+		}
+		return wildcard > 0;
+	}
+
+	private static float parseQuality(String params)
+	{
+		for (String param : params.split(";"))
+		{
+			param = param.trim();
+			if (param.startsWith("q="))
+			{
+				try
+				{
+					return Float.parseFloat(param.substring(2).trim());
+				}
+				catch (NumberFormatException e)
+				{
+					return 0;
+				}
+			}
+		}
+		return 1;
+	}
+
+	private static void initialize()
+	{
+		if (initialized) return;
+
+		lock.lock();
+		try
+		{
+			if (initialized) return;
+			CompressionConfig config = CompressionConfigurationFactory.getConfigurations();
+			enabled = Boolean.parseBoolean(config.enabled());
+			minContentLength = Integer.parseInt(config.minContentLength());
+			maxContentLength = Integer.parseInt(config.maxContentLength());
+			List<ContentEncoder> configuredEncoders = new ArrayList<ContentEncoder>();
+			for (String encoderClass : config.encoders().split(","))
+			{
+				if (encoderClass.trim().length() > 0)
+				{
+					ContentEncoder encoder = (ContentEncoder) Class.forName(encoderClass.trim()).newInstance();
+					configuredEncoders.add(encoder);
+					if ("gzip".equals(encoder.getEncoding()))
+					{
+						gzipEncoder = encoder;
+					}
+				}
+			}
+			encoders = configuredEncoders.toArray(new ContentEncoder[configuredEncoders.size()]);
+			if (gzipEncoder == null)
+			{
+				gzipEncoder = new GzipContentEncoder();
+			}
+			long cacheMaxSize = Long.parseLong(config.cacheMaxSizeInBytes());
+			if (cacheMaxSize > 0)
+			{
+				cache = new CompressedContentCache(cacheMaxSize);
+			}
+		}
+		catch (Exception e)
+		{
+			logger.error("Error initializing response compression. Responses will not be compressed.", e);
+			enabled = false;
+			encoders = new ContentEncoder[0];
+		}
+		finally
+		{
+			initialized = true;
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.core;
+
+import org.cruxframework.crux.core.server.rest.spi.HttpRequest;
+import org.cruxframework.crux.core.server.rest.spi.HttpResponse;
+
+/**
+ * Gives access to the request being processed by the current thread. It is the way for 
+ * singleton and pooled REST services (see {@link org.cruxframework.crux.core.server.scope.ServiceScope}) 
+ * to read the request and response, as they are not bound to a single request. 
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class HttpRequestContext
+{
+	private static final ThreadLocal<HttpRequest> request = new ThreadLocal<HttpRequest>();
+	private static final ThreadLocal<HttpResponse> response = new ThreadLocal<HttpResponse>();
+
+	public static HttpRequest getRequest()
+	{
+		return request.get();
+	}
+
+	public static HttpResponse getResponse()
+	{
+		return response.get();
+	}
+
+	public static void initialize(HttpRequest httpRequest, HttpResponse httpResponse)
+	{
+		request.set(httpRequest);
+		response.set(httpResponse);
+	}
+
+	public static void clear()
+	{
+		request.remove();
+		response.remove();
+	}
+}
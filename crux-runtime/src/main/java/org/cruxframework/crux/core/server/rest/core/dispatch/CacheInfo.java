@@ -67,6 +67,17 @@ public class CacheInfo
 	{
 		return cacheTime > 0;
 	}
+
+	/**
+	 * Check if the response can be shared among different users by the server side caches. 
+	 * Only public responses can: private responses are intended for a single user and no-cache 
+	 * responses must be revalidated on each request.
+	 * @return
+	 */
+	public boolean isSharedCacheAllowed()
+	{
+		return isCacheEnabled() && CacheControl.PUBLIC.equals(cacheControl);
+	}
 	
 	
 	public boolean isNoTransform()
@@ -15,6 +15,7 @@
  */
 package org.cruxframework.crux.core.server.rest.core.dispatch;
 
+import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -37,6 +38,7 @@ class GroupValueInjector implements ValueInjector
 	protected ValueInjector[] params;
 	private PropertyInfo[] properties;
 	private final Class<?> baseClass;
+	private InvokerGenerator.Populator populator;
 	
 	public GroupValueInjector(RestParameterType restParameterType, Type type, String paramPrefix)
     {
@@ -90,8 +92,19 @@ class GroupValueInjector implements ValueInjector
 	    }
 	    params = injectors.toArray(new ValueInjector[injectors.size()]);
 	    this.properties = writeableProperties.toArray(new PropertyInfo[writeableProperties.size()]);
+	    initializePopulator();
     }
 
+	private void initializePopulator()
+	{
+		Method[] setters = new Method[properties.length];
+		for (int i = 0; i < properties.length; i++)
+		{
+			setters[i] = properties[i].getWriteMethod();
+		}
+		populator = InvokerGenerator.createPopulator(baseClass, setters);
+	}
+
 	private boolean isAllowedComplexType(Class<?> type)
 	{
 		if (type.isArray() || Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type))
@@ -127,11 +140,23 @@ class GroupValueInjector implements ValueInjector
 		Object result;
         try
         {
-	        result = baseClass.newInstance();
-	        for (int i=0; i< params.length; i++)
-	        {
-	        	properties[i].getWriteMethod().invoke(result, params[i].inject(request));
-	        }
+        	if (populator != null)
+        	{
+        		Object[] values = new Object[params.length];
+        		for (int i=0; i< params.length; i++)
+        		{
+        			values[i] = params[i].inject(request);
+        		}
+        		result = populator.populate(values);
+        	}
+        	else
+        	{
+        		result = baseClass.newInstance();
+        		for (int i=0; i< params.length; i++)
+        		{
+        			properties[i].getWriteMethod().invoke(result, params[i].inject(request));
+        		}
+        	}
         }
         catch (Exception e)
         {
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.core.dispatch;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Generates, with javassist, classes that call the rest service methods and populate the 
+ * group parameters with direct calls, avoiding the reflection cost on each request.
+ * 
+ * Generation is only possible when the target members are public. When any class can not 
+ * be generated, null is returned and callers must fall back to reflection. 
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class InvokerGenerator
+{
+	private static final Log logger = LogFactory.getLog(InvokerGenerator.class);
+	private static final AtomicInteger nextId = new AtomicInteger();
+	private static final Lock lock = new ReentrantLock();
+	private static ClassPool classPool;
+	private static Set<ClassLoader> registeredLoaders = new HashSet<ClassLoader>();
+
+	/**
+	 * Call a rest service method. Arguments are not validated: primitive parameters must 
+	 * not receive null values.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	public static interface Invoker
+	{
+		Object invoke(Object resource, Object[] args) throws Throwable;
+	}
+
+	/**
+	 * Create a new instance of a group parameter type and call its setters with the given values
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	public static interface Populator
+	{
+		Object populate(Object[] values) throws Exception;
+	}
+
+	/**
+	 * Generate an invoker for the given method
+	 * @param method
+	 * @return the invoker or null if it can not be generated
+	 */
+	public static Invoker createInvoker(Method method)
+	{
+		Class<?> declaringClass = method.getDeclaringClass();
+		if (!Modifier.isPublic(method.getModifiers()) || !isPublic(declaringClass) || Modifier.isStatic(method.getModifiers()))
+		{
+			return null;
+		}
+		StringBuilder body = new StringBuilder("public Object invoke(Object resource, Object[] args) throws Throwable {");
+		boolean isVoid = method.getReturnType().equals(Void.TYPE);
+		body.append(isVoid ? "" : "return ($w)");
+		body.append("((").append(getSourceName(declaringClass)).append(")$1).").append(method.getName()).append("(");
+		appendArguments(body, method.getParameterTypes());
+		body.append(");");
+		body.append(isVoid ? "return null;}" : "}");
+
+		return (Invoker) generate(declaringClass, Invoker.class, body.toString());
+	}
+
+	/**
+	 * Generate a populator that calls the given setters, in order, on a new instance of the given type
+	 * @param type
+	 * @param setters
+	 * @return the populator or null if it can not be generated
+	 */
+	public static Populator createPopulator(Class<?> type, Method[] setters)
+	{
+		if (!isPublic(type) || Modifier.isAbstract(type.getModifiers()) || !hasPublicDefaultConstructor(type))
+		{
+			return null;
+		}
+		String typeName = getSourceName(type);
+		StringBuilder body = new StringBuilder("public Object populate(Object[] values) throws Exception {");
+		body.append(typeName).append(" result = new ").append(typeName).append("();");
+		for (int i = 0; i < setters.length; i++)
+		{
+			Method setter = setters[i];
+			if (!Modifier.isPublic(setter.getModifiers()) || !isPublic(setter.getDeclaringClass()) || setter.getParameterTypes().length != 1)
+			{
+				return null;
+			}
+			body.append("result.").append(setter.getName()).append("(");
+			appendArgument(body, setter.getParameterTypes()[0], "$1", i);
+			body.append(");");
+		}
+		body.append("return result;}");
+
+		return (Populator) generate(type, Populator.class, body.toString());
+	}
+
+	private static Object generate(Class<?> targetClass, Class<?> interfaceType, String body)
+	{
+		ClassLoader classLoader = targetClass.getClassLoader();
+		if (classLoader == null)
+		{
+			return null;
+		}
+		lock.lock();
+		try
+		{
+			ClassPool pool = getClassPool(classLoader);
+			String className = targetClass.getName() + "$$Crux" + interfaceType.getSimpleName() + nextId.incrementAndGet();
+			CtClass ctClass = pool.makeClass(className);
+			ctClass.addInterface(pool.get(interfaceType.getName()));
+			CtMethod ctMethod = CtNewMethod.make(body, ctClass);
+			ctClass.addMethod(ctMethod);
+			Class<?> generated = ctClass.toClass(classLoader, targetClass.getProtectionDomain());
+			ctClass.detach();
+			return generated.newInstance();
+		}
+		catch (Throwable e)
+		{
+			if (logger.isDebugEnabled())
+			{
+				logger.debug("Can not generate " + interfaceType.getSimpleName() + " for class [" + targetClass.getName() + "]. Using reflection.", e);
+			}
+			return null;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private static ClassPool getClassPool(ClassLoader classLoader)
+	{
+		if (classPool == null)
+		{
+			classPool = new ClassPool(true);
+			classPool.appendClassPath(new LoaderClassPath(InvokerGenerator.class.getClassLoader()));
+		}
+		if (registeredLoaders.add(classLoader))
+		{
+			classPool.appendClassPath(new LoaderClassPath(classLoader));
+		}
+		return classPool;
+	}
+
+	private static void appendArguments(StringBuilder body, Class<?>[] parameterTypes)
+	{
+		for (int i = 0; i < parameterTypes.length; i++)
+		{
+			if (i > 0)
+			{
+				body.append(",");
+			}
+			appendArgument(body, parameterTypes[i], "$2", i);
+		}
+	}
+
+	private static void appendArgument(StringBuilder body, Class<?> type, String array, int index)
+	{
+		String value = array + "[" + index + "]";
+		if (type.isPrimitive())
+		{
+			Class<?> wrapper = getWrapperType(type);
+			body.append("((").append(wrapper.getName()).append(")").append(value).append(").").append(type.getName()).append("Value()");
+		}
+		else
+		{
+			body.append("(").append(getSourceName(type)).append(")").append(value);
+		}
+	}
+
+	private static Class<?> getWrapperType(Class<?> type)
+	{
+		if (type == Integer.TYPE) return Integer.class;
+		if (type == Long.TYPE) return Long.class;
+		if (type == Boolean.TYPE) return Boolean.class;
+		if (type == Double.TYPE) return Double.class;
+		if (type == Float.TYPE) return Float.class;
+		if (type == Short.TYPE) return Short.class;
+		if (type == Byte.TYPE) return Byte.class;
+		return Character.class;
+	}
+
+	private static String getSourceName(Class<?> type)
+	{
+		if (type.isArray())
+		{
+			return getSourceName(type.getComponentType()) + "[]";
+		}
+		return type.getName();
+	}
+
+	private static boolean isPublic(Class<?> type)
+	{
+		while (type != null)
+		{
+			if (!Modifier.isPublic(type.getModifiers()))
+			{
+				return false;
+			}
+			type = type.getEnclosingClass();
+		}
+		return true;
+	}
+
+	private static boolean hasPublicDefaultConstructor(Class<?> type)
+	{
+		if (type.getEnclosingClass() != null && !Modifier.isStatic(type.getModifiers()))
+		{
+			return false;
+		}
+		try
+		{
+			Constructor<?> constructor = type.getConstructor();
+			return Modifier.isPublic(constructor.getModifiers());
+		}
+		catch (NoSuchMethodException e)
+		{
+			return false;
+		}
+	}
+}
@@ -15,6 +15,7 @@
  */
 package org.cruxframework.crux.core.server.rest.core.dispatch;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Type;
@@ -22,9 +23,11 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.codehaus.jackson.map.ObjectReader;
+import org.cruxframework.crux.core.config.ConfigurationFactory;
 import org.cruxframework.crux.core.server.rest.core.MediaType;
 import org.cruxframework.crux.core.server.rest.spi.BadRequestException;
 import org.cruxframework.crux.core.server.rest.spi.HttpRequest;
+import org.cruxframework.crux.core.server.rest.spi.RequestEntityTooLargeException;
 import org.cruxframework.crux.core.server.rest.spi.UnsupportedMediaTypeException;
 import org.cruxframework.crux.core.server.rest.util.JsonUtil;
 import org.cruxframework.crux.core.utils.ClassUtils;
@@ -40,16 +43,26 @@ public class MessageBodyParamInjector extends StringParameterInjector implements
 	private static final Lock lock = new ReentrantLock();
 	private ObjectReader reader;
 	private Type type;
+	private boolean streamingEnabled;
+	private long maxBodySize;
 
 	public MessageBodyParamInjector(Class<?> declaringClass, Type type)
 	{
 		super(ClassUtils.getRawType(type), "body", null);
 		this.type = type;
+		// Types that can not be built from a String are always read as JSON, directly from the request stream
+		this.streamingEnabled = (constructor == null && valueOf == null && !rawType.isPrimitive());
+		this.maxBodySize = Long.parseLong(ConfigurationFactory.getConfigurations().restMaxRequestBodySize());
 	}
 
 	public Object inject(HttpRequest request)
 	{
-		InputStream is = request.getInputStream();
+		checkContentLength(request);
+		if (streamingEnabled)
+		{
+			return extractValue(request);
+		}
+		BoundedInputStream is = new BoundedInputStream(request.getInputStream(), maxBodySize);
 		String body;
 		try
 		{
@@ -57,6 +70,7 @@ public class MessageBodyParamInjector extends StringParameterInjector implements
 		}
 		catch (IOException e)
 		{
+			checkBodySize(request, is);
 			throw new BadRequestException("Can not read request body for path: " + request.getUri().getPath());
 		}
 		return extractValue(body, request);
@@ -67,46 +81,172 @@ public class MessageBodyParamInjector extends StringParameterInjector implements
 		Object value = extractValue(strVal);
 		if (strVal != null && value == null)
 		{
-			MediaType mediaType = request.getHttpHeaders().getMediaType();
-			if (mediaType == null)
+			checkMediaType(request);
+			try
+			{
+				if (strVal == null || strVal.length()==0)
+				{
+					strVal = defaultValue;
+				}
+				value = getReader().readValue(strVal);
+			}
+			catch (Exception e)
 			{
-				mediaType = MediaType.WILDCARD_TYPE;
+				throw new BadRequestException("Can not read request body for path: " + request.getUri().getPath(), e);
 			}
-			if (mediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE))
+		}
+		return value;
+	}
+
+	/**
+	 * Deserializes the request body directly from the request input stream, without 
+	 * creating any intermediate String.
+	 * @param request
+	 * @return
+	 */
+	protected Object extractValue(HttpRequest request)
+	{
+		checkMediaType(request);
+		BoundedInputStream is = new BoundedInputStream(request.getInputStream(), maxBodySize);
+		try
+		{
+			return getReader().readValue(is);
+		}
+		catch (Exception e)
+		{
+			checkBodySize(request, is);
+			throw new BadRequestException("Can not read request body for path: " + request.getUri().getPath(), e);
+		}
+	}
+
+	private void checkMediaType(HttpRequest request)
+	{
+		MediaType mediaType = request.getHttpHeaders().getMediaType();
+		if (mediaType == null)
+		{
+			mediaType = MediaType.WILDCARD_TYPE;
+		}
+		if (!mediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE))
+		{
+			throw new UnsupportedMediaTypeException("Media type not supported: " + mediaType.toString());
+		}
+	}
+
+	private void checkContentLength(HttpRequest request)
+	{
+		if (maxBodySize >= 0)
+		{
+			int length;
+			try
+			{
+				length = request.getHttpHeaders().getLength();
+			}
+			catch (NumberFormatException e)
+			{
+				throw new BadRequestException("Invalid content length for path: " + request.getUri().getPath(), e);
+			}
+			if (length > maxBodySize)
+			{
+				throw new RequestEntityTooLargeException("Request body exceeds the maximum allowed size (" + maxBodySize + " bytes) " +
+						"for path: " + request.getUri().getPath(), "Request body too large");
+			}
+		}
+	}
+
+	private void checkBodySize(HttpRequest request, BoundedInputStream is)
+	{
+		if (is.isLimitExceeded())
+		{
+			throw new RequestEntityTooLargeException("Request body exceeds the maximum allowed size (" + maxBodySize + " bytes) " +
+					"for path: " + request.getUri().getPath(), "Request body too large");
+		}
+	}
+
+	private ObjectReader getReader()
+	{
+		if (this.reader == null)
+		{
+			lock.lock();
+			try
 			{
 				if (this.reader == null)
 				{
-					lock.lock();
-					try
-					{
-						if (this.reader == null)
-						{
-							this.reader = JsonUtil.createReader(type);
-						}
-					}
-					finally
-					{
-						lock.unlock();
-					}
+					this.reader = JsonUtil.createReader(type);
 				}
-				try
-                {
-					if (strVal == null || strVal.length()==0)
-					{
-						strVal = defaultValue;
-					}
-	                value = this.reader.readValue(strVal);
-                }
-                catch (Exception e)
-                {
-        			throw new BadRequestException("Can not read request body for path: " + request.getUri().getPath(), e);
-                }
 			}
-			else
+			finally
 			{
-				throw new UnsupportedMediaTypeException("Media type not supported: " + mediaType.toString());
+				lock.unlock();
 			}
 		}
-		return value;
+		return this.reader;
+	}
+
+	/**
+	 * Fails any read after the given number of bytes was consumed. Used to reject bodies sent 
+	 * without a Content-Length header (chunked requests) as soon as they exceed the limit.
+	 */
+	private static class BoundedInputStream extends FilterInputStream
+	{
+		private final long limit;
+		private long count;
+		private boolean limitExceeded;
+
+		private BoundedInputStream(InputStream in, long limit)
+		{
+			super(in);
+			this.limit = limit;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int b = super.read();
+			if (b >= 0)
+			{
+				count(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			int read = super.read(b, off, len);
+			if (read > 0)
+			{
+				count(read);
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException
+		{
+			long skipped = super.skip(n);
+			count(skipped);
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported()
+		{
+			return false;
+		}
+
+		private void count(long read) throws IOException
+		{
+			count += read;
+			if (limit >= 0 && count > limit)
+			{
+				limitExceeded = true;
+				throw new IOException("Request body exceeds the maximum allowed size: " + limit);
+			}
+		}
+
+		private boolean isLimitExceeded()
+		{
+			return limitExceeded;
+		}
 	}
-}
\ No newline at end of file
+}
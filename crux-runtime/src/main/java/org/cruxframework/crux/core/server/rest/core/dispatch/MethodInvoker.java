@@ -22,14 +22,22 @@ import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cruxframework.crux.core.server.metrics.EndpointMetrics;
+import org.cruxframework.crux.core.server.metrics.EndpointMetrics.Phase;
 import org.cruxframework.crux.core.server.rest.core.RequestProcessors;
 import org.cruxframework.crux.core.server.rest.spi.BadRequestException;
 import org.cruxframework.crux.core.server.rest.spi.HttpRequest;
 import org.cruxframework.crux.core.server.rest.spi.InternalServerErrorException;
 import org.cruxframework.crux.core.server.rest.spi.RestFailure;
+import org.cruxframework.crux.core.server.rest.spi.ServiceUnavailableException;
 import org.cruxframework.crux.core.shared.rest.annotation.CookieParam;
 import org.cruxframework.crux.core.shared.rest.annotation.DefaultValue;
 import org.cruxframework.crux.core.shared.rest.annotation.FormParam;
@@ -54,9 +62,21 @@ public class MethodInvoker
 	protected List<RequestPreprocessor> preprocessors;
 	protected List<RequestPostprocessor> postprocessors;
 	private RestErrorHandler restErrorHandler; 
+	private InvokerGenerator.Invoker invoker;
+	private boolean[] primitiveParams;
+	private EndpointMetrics metrics;
 
 	public MethodInvoker(Class<?> root, Method method, String httpMethod)
 	{
+		this(root, method, httpMethod, null);
+	}
+
+	/**
+	 * @param metrics if not null, receives the time spent injecting the arguments and invoking the method
+	 */
+	public MethodInvoker(Class<?> root, Method method, String httpMethod, EndpointMetrics metrics)
+	{
+		this.metrics = metrics;
 		this.method = method;
 		this.rootClass = root;
 		this.restErrorHandler = RestErrorHandlerFactory.createErrorHandler(method);
@@ -69,6 +89,7 @@ public class MethodInvoker
 			params[i] = createParameterExtractor(root, paramType, annotations);
 		}
 		validateParamExtractors(httpMethod);
+		initializeInvoker();
 		initializePreprocessors();
 		initializePostprocessors();
 	}
@@ -109,10 +130,19 @@ public class MethodInvoker
 	{
 		preprocess(request);
 		
+		long time = (metrics != null) ? System.nanoTime() : 0;
 		Object[] args = injectArguments(request);
+		if (metrics != null)
+		{
+			time = metrics.record(Phase.INJECT, time);
+		}
 
 		try
 		{
+			if (invoker != null)
+			{
+				return invokeGenerated(resource, args);
+			}
 			Object result = method.invoke(resource, args);
 			return result;
 		}
@@ -153,10 +183,91 @@ public class MethodInvoker
 		}
 		finally
 		{
+			if (metrics != null)
+			{
+				metrics.record(Phase.INVOKE, time);
+			}
 			postprocess(request);
 		}		
 	}
 
+	/**
+	 * Waits for the result of a method that returns a {@link Future}. Failures are reported 
+	 * the same way they are for methods that return their results directly.
+	 * @param future
+	 * @param timeout max time to wait, in milliseconds. Non positive values mean no limit.
+	 * @return
+	 * @throws RestFailure
+	 */
+	public Object getAsyncResult(Future<?> future, long timeout) throws RestFailure
+	{
+		try
+		{
+			if (timeout > 0)
+			{
+				return future.get(timeout, TimeUnit.MILLISECONDS);
+			}
+			return future.get();
+		}
+		catch (ExecutionException e)
+		{
+			return restErrorHandler.handleError(new InvocationTargetException(e.getCause()));
+		}
+		catch (TimeoutException e)
+		{
+			future.cancel(true);
+			throw new ServiceUnavailableException("Timeout waiting for the result of method: " + method.toString(), "Timeout executing requested service", e);
+		}
+		catch (CancellationException e)
+		{
+			throw new InternalServerErrorException("Execution cancelled for method: " + method.toString(), "Can not execute requested service", e);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			future.cancel(true);
+			throw new InternalServerErrorException("Interrupted waiting for the result of method: " + method.toString(), "Can not execute requested service", e);
+		}
+	}
+
+	/**
+	 * Call the method through the generated invoker. Errors are reported the same way 
+	 * {@link Method#invoke(Object, Object...)} does.
+	 */
+	private Object invokeGenerated(Object resource, Object[] args) throws InvocationTargetException
+	{
+		if (resource == null || !method.getDeclaringClass().isInstance(resource))
+		{
+			throw new IllegalArgumentException("object is not an instance of declaring class");
+		}
+		for (int i = 0; i < primitiveParams.length; i++)
+		{
+			if (primitiveParams[i] && args[i] == null)
+			{
+				throw new IllegalArgumentException("null value for primitive parameter");
+			}
+		}
+		try
+		{
+			return invoker.invoke(resource, args);
+		}
+		catch (Throwable e)
+		{
+			throw new InvocationTargetException(e);
+		}
+	}
+
+	protected void initializeInvoker()
+	{
+		invoker = InvokerGenerator.createInvoker(method);
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		primitiveParams = new boolean[parameterTypes.length];
+		for (int i = 0; i < parameterTypes.length; i++)
+		{
+			primitiveParams[i] = parameterTypes[i].isPrimitive();
+		}
+	}
+
 	protected void initializePostprocessors() throws RequestProcessorException
     {
 		RequestProcessorContext context = new RequestProcessorContext();
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.core.dispatch;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.cruxframework.crux.core.config.ConfigurationFactory;
+import org.cruxframework.crux.core.server.rest.core.dispatch.ResourceMethod.MethodReturn;
+
+/**
+ * Coalesces the concurrent refreshes of one expired cacheable resource. The first request 
+ * that finds the resource expired becomes the leader of a {@link Flight} and invokes the 
+ * resource method, or waits for another node to refresh it. The other requests for the same 
+ * key wait, for a bounded time, and share the leader's {@link MethodReturn}.
+ * 
+ * Only resources with public cache control are coalesced, as the shared result must be the 
+ * same for every user. Resources that implement HttpResponseAware are not coalesced either, 
+ * because the headers they write to the leader's response would not reach the other requests.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+class RequestCoalescer
+{
+	private static final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+	private static final boolean enabled = Boolean.parseBoolean(ConfigurationFactory.getConfigurations().enableRestRequestCoalescing());
+	private static final boolean staleWhileRevalidate = Boolean.parseBoolean(ConfigurationFactory.getConfigurations().enableRestStaleWhileRevalidate());
+	private static final long timeout = Long.parseLong(ConfigurationFactory.getConfigurations().restCoalescingTimeout());
+
+	/**
+	 * One refresh in progress. Only the leader can complete it. 
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	static class Flight
+	{
+		private final String key;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private final Thread leader = Thread.currentThread();
+		private MethodReturn result;
+		private Exception error;
+
+		private Flight(String key)
+		{
+			this.key = key;
+		}
+
+		public boolean isLeader()
+		{
+			return leader == Thread.currentThread();
+		}
+
+		/**
+		 * Publish the leader's result to the waiting requests
+		 * @param result the refreshed method return
+		 */
+		public void complete(MethodReturn result)
+		{
+			this.result = result;
+			release();
+		}
+
+		/**
+		 * Publish the leader's error to the waiting requests
+		 * @param error
+		 */
+		public void fail(Exception error)
+		{
+			this.error = error;
+			release();
+		}
+
+		/**
+		 * Finish the flight. If neither {@link #complete(MethodReturn)} nor {@link #fail(Exception)} 
+		 * was called, the waiting requests receive a null result.
+		 */
+		public void release()
+		{
+			if (done.getCount() > 0)
+			{
+				flights.remove(key, this);
+				done.countDown();
+			}
+		}
+
+		/**
+		 * Wait for the leader to finish the flight.
+		 * @param timeout max time to wait, in milliseconds. Non positive values mean no limit.
+		 * @return true if the flight was finished
+		 * @throws InterruptedException
+		 */
+		public boolean await(long timeout) throws InterruptedException
+		{
+			if (timeout > 0)
+			{
+				return done.await(timeout, TimeUnit.MILLISECONDS);
+			}
+			done.await();
+			return true;
+		}
+
+		/**
+		 * The leader's result. If the leader failed, its error is thrown.
+		 * @return
+		 * @throws Exception
+		 */
+		public MethodReturn getResult() throws Exception
+		{
+			if (error != null)
+			{
+				throw error;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Join the flight for the given key, starting a new one, led by the caller, if there is no 
+	 * refresh in progress. The leader must always call {@link Flight#release()}.
+	 * @param key
+	 * @return
+	 */
+	static Flight join(String key)
+	{
+		Flight flight = new Flight(key);
+		Flight current = flights.putIfAbsent(key, flight);
+		return (current != null) ? current : flight;
+	}
+
+	static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * If true, requests that find a refresh in progress are served with the expired content, when 
+	 * it is still available, instead of waiting for the refresh.
+	 * @return
+	 */
+	static boolean isStaleWhileRevalidate()
+	{
+		return staleWhileRevalidate;
+	}
+
+	/**
+	 * Max time, in milliseconds, to wait for a refresh in progress
+	 * @return
+	 */
+	static long getTimeout()
+	{
+		return timeout;
+	}
+}
@@ -15,22 +15,35 @@
  */
 package org.cruxframework.crux.core.server.rest.core.dispatch;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.map.ObjectWriter;
+import org.cruxframework.crux.core.config.ConfigurationFactory;
+import org.cruxframework.crux.core.server.metrics.EndpointMetrics;
+import org.cruxframework.crux.core.server.metrics.EndpointMetrics.Phase;
+import org.cruxframework.crux.core.server.metrics.Metrics;
 import org.cruxframework.crux.core.server.rest.annotation.RestService.CorsSupport;
 import org.cruxframework.crux.core.server.rest.annotation.RestService.JsonPSupport;
 import org.cruxframework.crux.core.server.rest.core.EntityTag;
+import org.cruxframework.crux.core.server.rest.core.HttpRequestContext;
 import org.cruxframework.crux.core.server.rest.core.HttpRequestAware;
 import org.cruxframework.crux.core.server.rest.core.HttpResponseAware;
 import org.cruxframework.crux.core.server.rest.core.registry.RestServiceFactoryInitializer;
@@ -39,10 +52,16 @@ import org.cruxframework.crux.core.server.rest.spi.HttpResponse;
 import org.cruxframework.crux.core.server.rest.spi.HttpServletResponseHeaders;
 import org.cruxframework.crux.core.server.rest.spi.InternalServerErrorException;
 import org.cruxframework.crux.core.server.rest.spi.RestFailure;
+import org.cruxframework.crux.core.server.rest.state.ETagHandler;
+import org.cruxframework.crux.core.server.rest.state.ETagOutputStream;
 import org.cruxframework.crux.core.server.rest.state.ResourceStateConfig;
+import org.cruxframework.crux.core.server.rest.state.ResponseCache;
+import org.cruxframework.crux.core.server.rest.state.ResponseCache.CachedResponse;
+import org.cruxframework.crux.core.server.rest.state.StreamingETagHandler;
 import org.cruxframework.crux.core.server.rest.util.HttpHeaderNames;
 import org.cruxframework.crux.core.server.rest.util.HttpMethodHelper;
 import org.cruxframework.crux.core.server.rest.util.JsonUtil;
+import org.cruxframework.crux.core.server.scope.ServiceInstances;
 import org.cruxframework.crux.core.utils.ClassUtils;
 import org.cruxframework.crux.core.utils.EncryptUtils;
 
@@ -53,8 +72,18 @@ import org.cruxframework.crux.core.utils.EncryptUtils;
  */
 public class ResourceMethod
 {
+	private static final Log logger = LogFactory.getLog(ResourceMethod.class);
+	private static final ServiceInstances.Instantiator serviceInstantiator = new ServiceInstances.Instantiator()
+	{
+		@Override
+		public Object newInstance(Class<?> serviceClass) throws Exception
+		{
+			return RestServiceFactoryInitializer.getServiceFactory().getService(serviceClass);
+		}
+	};
 	private static final Lock lock = new ReentrantLock();
 	private static final Lock exceptionlock = new ReentrantLock();
+	private static final int SERIALIZATION_BUFFER_SIZE = 1024;
 
 	protected String httpMethod;
 	protected Method method;
@@ -62,6 +91,7 @@ public class ResourceMethod
 	protected Type genericReturnType;
 	protected MethodInvoker methodInvoker;
 	protected ObjectWriter writer;
+	protected JsonFactory jsonFactory;
 	protected Map<String, ObjectWriter> exceptionWriters = new HashMap<String, ObjectWriter>();
 	protected Map<String, String> exceptionIds = new HashMap<String, String>();
 	protected CacheInfo cacheInfo;
@@ -70,7 +100,12 @@ public class ResourceMethod
 	protected CorsData corsData;
 	private boolean etagGenerationEnabled = false;
 	private boolean isRequestAware;
-	private boolean isResponseAware;;
+	private boolean isResponseAware;
+	private boolean streamingEnabled;
+	private boolean asyncResult;
+	private long asyncTimeout;
+	private EndpointMetrics metrics;
+	private ServiceInstances serviceInstances;
 
 	public ResourceMethod(Class<?> clazz, Method method, String httpMethod)
 	{
@@ -78,8 +113,22 @@ public class ResourceMethod
 		this.resourceClass = clazz;
 		this.isRequestAware = HttpRequestAware.class.isAssignableFrom(resourceClass);
 		this.isResponseAware = HttpResponseAware.class.isAssignableFrom(resourceClass);
+		this.serviceInstances = ServiceInstances.register(resourceClass, serviceInstantiator);
+		if (!serviceInstances.isRequestScoped() && (isRequestAware || isResponseAware))
+		{
+			logger.warn("Rest service [" + resourceClass.getName() + "] has " + serviceInstances.getScope() + " scope. " +
+					"It will not receive request or response through HttpRequestAware and HttpResponseAware interfaces. Use HttpRequestContext instead.");
+			this.isRequestAware = false;
+			this.isResponseAware = false;
+		}
 		this.method = method;
 		this.genericReturnType = ClassUtils.getGenericReturnTypeOfGenericInterfaceMethod(clazz, method);
+		Type futureValueType = ClassUtils.getFutureValueType(genericReturnType);
+		if (futureValueType != null)
+		{
+			this.asyncResult = true;
+			this.genericReturnType = futureValueType;
+		}
 		this.hasReturnType = genericReturnType != null && !genericReturnType.equals(Void.class) && !genericReturnType.equals(Void.TYPE);
 		if (!hasReturnType && httpMethod.equals("GET"))
 		{
@@ -87,7 +136,8 @@ public class ResourceMethod
 					"can not be void.", "Can not execute requested service");
 		}
 
-		this.methodInvoker = new MethodInvoker(resourceClass, method, httpMethod);
+		this.metrics = Metrics.getRestEndpoint(httpMethod + " " + resourceClass.getName() + "." + method.getName());
+		this.methodInvoker = new MethodInvoker(resourceClass, method, httpMethod, metrics);
 		this.cacheInfo = HttpMethodHelper.getCacheInfoForGET(method);
 		CorsSupport corsSupport = method.getAnnotation(CorsSupport.class);
 		if (corsSupport == null)
@@ -101,6 +151,8 @@ public class ResourceMethod
 			jsonPSupport = resourceClass.getAnnotation(JsonPSupport.class);			
 		}
 		this.jsonPData = JsonPData.parseJsonPData(jsonPSupport);
+		this.streamingEnabled = Boolean.parseBoolean(ConfigurationFactory.getConfigurations().enableRestResponseStreaming());
+		this.asyncTimeout = Long.parseLong(ConfigurationFactory.getConfigurations().restAsyncTimeout());
 	}
 
 	public boolean supportsCors()
@@ -155,21 +207,65 @@ public class ResourceMethod
 
 	}
 
+	/**
+	 * Streaming responses are serialized directly to the response output stream. It is 
+	 * not possible when the serialized content is required to generate the resource eTag.
+	 * @return
+	 */
+	public boolean isStreamingResponseEnabled()
+	{
+		return streamingEnabled && (!isEtagGenerationEnabled() || !ResourceStateConfig.isResourceStateCacheEnabled());
+	}
+
+	/**
+	 * Methods that return a {@link Future} are asynchronous. Their results are serialized 
+	 * when the Future completes.
+	 * @return
+	 */
+	public boolean isAsync()
+	{
+		return asyncResult;
+	}
+
+	/**
+	 * Resources that implement {@link HttpResponseAware} can write to the response directly, 
+	 * for instance to set its headers.
+	 * @return
+	 */
+	public boolean isResponseAware()
+	{
+		return isResponseAware;
+	}
+
+	/**
+	 * Metrics for this method, or null if metrics are not enabled.
+	 * @return
+	 */
+	public EndpointMetrics getMetrics()
+	{
+		return metrics;
+	}
+
 	public MethodReturn invoke(HttpRequest request, HttpResponse response)
 	{
 		try
 		{
+			MethodReturn ret;
 			if (ResourceStateConfig.isResourceStateCacheEnabled())
 			{
 				StateHandler stateHandler = new StateHandler(this, request, response);
-				MethodReturn ret = stateHandler.handledByCache();
-				return ret;
+				ret = stateHandler.handledByCache();
 			}
 			else
 			{
 				Object target = createTarget(request, response);
-				return invoke(request, target);
+				ret = invoke(request, target);
+			}
+			if (ret != null)
+			{
+				ret.setMetrics(metrics);
 			}
+			return ret;
 		}
 		catch (RestFailure e)
 		{
@@ -234,15 +330,35 @@ public class ResourceMethod
 	protected MethodReturn doInvoke(HttpRequest request, HttpResponse response) throws InstantiationException, IllegalAccessException
     {
 	    MethodReturn ret;
-	    Object target = createTarget(request, response);
-	    ret = invoke(request, target);
+	    HttpRequestContext.initialize(request, response);
+	    try
+	    {
+	    	Object target = createTarget(request, response);
+	    	ret = invoke(request, target);
+	    }
+	    finally
+	    {
+	    	HttpRequestContext.clear();
+	    }
 	    return ret;
     }
 	
 	
 	private Object createTarget(HttpRequest request, HttpResponse response) throws InstantiationException, IllegalAccessException
 	{
-		Object target = RestServiceFactoryInitializer.getServiceFactory().getService(resourceClass);
+		Object target;
+		try
+		{
+			target = serviceInstances.get();
+		}
+		catch (RuntimeException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new InternalServerErrorException("Error creating REST service for class [" + resourceClass.getCanonicalName() + "].", "Can not execute requested service", e);
+		}
 		
 		if (isRequestAware)
 		{
@@ -256,9 +372,36 @@ public class ResourceMethod
 	}
 
 
+	/**
+	 * Invoke the method on the given target and release the target. If the wait for an 
+	 * asynchronous result fails (timeout, cancellation or interruption), the task may still be 
+	 * running on the target, so it is not released and pooled services do not reuse it.
+	 */
 	private MethodReturn invoke(HttpRequest request, Object target)
 	{
-		Object rtn = methodInvoker.invoke(request, target);
+		boolean release = true;
+		try
+		{
+			Object rtn = methodInvoker.invoke(request, target);
+			if (asyncResult && rtn instanceof Future<?>)
+			{
+				release = false;
+				rtn = methodInvoker.getAsyncResult((Future<?>) rtn, asyncTimeout);
+				release = true;
+			}
+			return createMethodReturn(request, rtn);
+		}
+		finally
+		{
+			if (release)
+			{
+				serviceInstances.release(target);
+			}
+		}
+	}
+
+	private MethodReturn createMethodReturn(HttpRequest request, Object rtn)
+	{
 		String retVal = null;
 		String exeptionData = null;
 		try
@@ -269,7 +412,27 @@ public class ResourceMethod
 			}
 			else if (hasReturnType && rtn != null)
 			{
+				if (isStreamingResponseEnabled())
+				{
+					ObjectWriter returnWriter = getReturnWriter();
+					return new MethodReturn(hasReturnType, rtn, returnWriter, jsonFactory, getJsonPCallback(request), cacheInfo, isEtagGenerationEnabled());
+				}
+				long time = (metrics != null) ? System.nanoTime() : 0;
+				StreamingETagHandler eTagHandler = getStreamingETagHandler();
+				if (eTagHandler != null)
+				{
+					MethodReturn ret = serializeReturn(request, rtn, eTagHandler);
+					if (metrics != null)
+					{
+						metrics.record(Phase.SERIALIZE, time);
+					}
+					return ret;
+				}
 				retVal = getReturnedValue(request, getReturnWriter().writeValueAsString(rtn));
+				if (metrics != null)
+				{
+					metrics.record(Phase.SERIALIZE, time);
+				}
 			}
 		}
 		catch (Exception e)
@@ -279,17 +442,78 @@ public class ResourceMethod
 		return new MethodReturn(hasReturnType, retVal, exeptionData, cacheInfo, null, isEtagGenerationEnabled());
 	}
 
+	/**
+	 * Serializes the return to UTF-8 bytes, computing its eTag on the fly.
+	 */
+	private MethodReturn serializeReturn(HttpRequest request, Object rtn, StreamingETagHandler eTagHandler) throws IOException
+	{
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(SERIALIZATION_BUFFER_SIZE);
+		ETagOutputStream out = new ETagOutputStream(buffer, eTagHandler.createDigest(request.getUri()));
+		ObjectWriter returnWriter = getReturnWriter();
+		writeValue(out, returnWriter, jsonFactory, rtn, getJsonPCallback(request));
+		return new MethodReturn(hasReturnType, buffer.toByteArray(), out.getEtag(), cacheInfo, isEtagGenerationEnabled());
+	}
+
+	/**
+	 * Returns the eTag handler, if eTags are required for this method and the handler 
+	 * can compute them while the response is serialized.
+	 * @return
+	 */
+	private StreamingETagHandler getStreamingETagHandler()
+	{
+		if (isEtagGenerationEnabled())
+		{
+			ETagHandler eTagHandler = StateHandler.getETagHandler();
+			if (eTagHandler instanceof StreamingETagHandler)
+			{
+				return (StreamingETagHandler) eTagHandler;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Serializes the entity to the given stream, wrapping it into the JSONP callback, 
+	 * if requested. The stream is not closed.
+	 */
+	private static void writeValue(OutputStream out, ObjectWriter entityWriter, JsonFactory jsonFactory, Object entity, String jsonPCallback) throws IOException
+	{
+		if (jsonPCallback != null)
+		{
+			out.write(jsonPCallback.getBytes("UTF-8"));
+			out.write('(');
+		}
+		JsonGenerator generator = JsonUtil.createGenerator(jsonFactory, out);
+		entityWriter.writeValue(generator, entity);
+		generator.flush();
+		if (jsonPCallback != null)
+		{
+			out.write(')');
+			out.write(';');
+		}
+	}
+
 	private String getReturnedValue(HttpRequest request, String value)
+	{
+		String callbackParam = getJsonPCallback(request);
+		if (callbackParam != null)
+		{
+			value = callbackParam+"("+value+");";
+		}
+		return value;
+	}
+
+	private String getJsonPCallback(HttpRequest request)
 	{
 		if (supportsJsonP())
 		{
 			String callbackParam = request.getUri().getQueryParameters().getFirst(jsonPData.getCallbackParameter());
 			if (callbackParam != null && callbackParam.length() > 0)
 			{
-				value = callbackParam+"("+value+");";
+				return callbackParam;
 			}
 		}
-		return value;
+		return null;
 	}
 	
 	private String getExceptionData(Exception e) throws IOException 
@@ -372,6 +596,7 @@ public class ResourceMethod
 				if (writer == null)
 				{
 					Type returnType = ClassUtils.resolveGenericTypeOnMethod(genericReturnType, resourceClass, method);
+					jsonFactory = JsonUtil.getJsonFactory(returnType);
 					writer = JsonUtil.createWriter(returnType);
 				}
 			}
@@ -385,6 +610,7 @@ public class ResourceMethod
 
 	public static class MethodReturn
 	{
+		private static final Charset UTF_8 = Charset.forName("UTF-8");
 		protected final boolean hasReturnType;
 		protected final String ret;
 		private final CacheInfo cacheInfo;
@@ -393,6 +619,14 @@ public class ResourceMethod
 		protected long dateModified;
 		protected final boolean etagGenerationEnabled;
 		protected String checkedExceptionData;
+		private final Object entity;
+		private final ObjectWriter entityWriter;
+		private final JsonFactory jsonFactory;
+		private final String jsonPCallback;
+		private final CachedResponse cachedResponse;
+		private final byte[] serializedReturn;
+		private final String contentEtag;
+		private EndpointMetrics metrics;
 
 		protected MethodReturn(boolean hasReturnType, String ret, String exceptionData, CacheInfo cacheInfo, ConditionalResponse conditionalResponse, 
 							   boolean etagGenerationEnabled)
@@ -403,6 +637,72 @@ public class ResourceMethod
 			this.cacheInfo = cacheInfo;
 			this.conditionalResponse = conditionalResponse;
 			this.etagGenerationEnabled = etagGenerationEnabled;
+			this.entity = null;
+			this.entityWriter = null;
+			this.jsonFactory = null;
+			this.jsonPCallback = null;
+			this.cachedResponse = null;
+			this.serializedReturn = null;
+			this.contentEtag = null;
+		}
+
+		/**
+		 * Creates a return for a response retrieved from the {@link ResponseCache}.
+		 */
+		protected MethodReturn(boolean hasReturnType, CachedResponse cachedResponse, CacheInfo cacheInfo, boolean etagGenerationEnabled)
+		{
+			this.hasReturnType = hasReturnType;
+			this.ret = null;
+			this.cacheInfo = cacheInfo;
+			this.conditionalResponse = null;
+			this.etagGenerationEnabled = etagGenerationEnabled;
+			this.entity = null;
+			this.entityWriter = null;
+			this.jsonFactory = null;
+			this.jsonPCallback = null;
+			this.cachedResponse = cachedResponse;
+			this.serializedReturn = null;
+			this.contentEtag = null;
+		}
+
+		/**
+		 * Creates a return already serialized to UTF-8, with the eTag computed during its serialization.
+		 */
+		protected MethodReturn(boolean hasReturnType, byte[] serializedReturn, String contentEtag, CacheInfo cacheInfo, boolean etagGenerationEnabled)
+		{
+			this.hasReturnType = hasReturnType;
+			this.ret = null;
+			this.cacheInfo = cacheInfo;
+			this.conditionalResponse = null;
+			this.etagGenerationEnabled = etagGenerationEnabled;
+			this.entity = null;
+			this.entityWriter = null;
+			this.jsonFactory = null;
+			this.jsonPCallback = null;
+			this.cachedResponse = null;
+			this.serializedReturn = serializedReturn;
+			this.contentEtag = contentEtag;
+		}
+
+		/**
+		 * Creates a streaming return. The entity is only serialized when written to the 
+		 * response output stream.
+		 */
+		protected MethodReturn(boolean hasReturnType, Object entity, ObjectWriter entityWriter, JsonFactory jsonFactory, String jsonPCallback, 
+							   CacheInfo cacheInfo, boolean etagGenerationEnabled)
+		{
+			this.hasReturnType = hasReturnType;
+			this.ret = null;
+			this.cacheInfo = cacheInfo;
+			this.conditionalResponse = null;
+			this.etagGenerationEnabled = etagGenerationEnabled;
+			this.entity = entity;
+			this.entityWriter = entityWriter;
+			this.jsonFactory = jsonFactory;
+			this.jsonPCallback = jsonPCallback;
+			this.cachedResponse = null;
+			this.serializedReturn = null;
+			this.contentEtag = null;
 		}
 
 		public boolean hasReturnType()
@@ -410,11 +710,62 @@ public class ResourceMethod
 			return hasReturnType;
 		}
 
+		/**
+		 * The serialized return. Streaming and cached returns have no serialized form and always return null.
+		 * @return
+		 */
 		public String getReturn()
 		{
+			if (ret == null && serializedReturn != null)
+			{
+				return new String(serializedReturn, UTF_8);
+			}
 			return ret;
 		}
 
+		/**
+		 * The return serialized as UTF-8 bytes, when its eTag was computed during serialization.
+		 * @return
+		 */
+		public byte[] getSerializedReturn()
+		{
+			return serializedReturn;
+		}
+
+		/**
+		 * The eTag computed during serialization, for returns that provide a {@link #getSerializedReturn()}.
+		 * @return
+		 */
+		public String getContentEtag()
+		{
+			return contentEtag;
+		}
+
+		/**
+		 * The response retrieved from the {@link ResponseCache}, if this return was served from cache.
+		 * @return
+		 */
+		public CachedResponse getCachedResponse()
+		{
+			return cachedResponse;
+		}
+
+		public boolean isStreamingReturn()
+		{
+			return entityWriter != null;
+		}
+
+		/**
+		 * Serializes a streaming return to the given stream, wrapping it into the JSONP callback, 
+		 * if requested. The stream is not closed.
+		 * @param out
+		 * @throws IOException
+		 */
+		public void writeReturn(OutputStream out) throws IOException
+		{
+			writeValue(out, entityWriter, jsonFactory, entity, jsonPCallback);
+		}
+
 		public CacheInfo getCacheInfo()
 		{
 			return cacheInfo;
@@ -459,5 +810,19 @@ public class ResourceMethod
 		{
 			this.checkedExceptionData = checkedExceptionData;
 		}
+
+		/**
+		 * Metrics of the method that produced this return, or null if metrics are not enabled.
+		 * @return
+		 */
+		public EndpointMetrics getMetrics()
+		{
+			return metrics;
+		}
+
+		public void setMetrics(EndpointMetrics metrics)
+		{
+			this.metrics = metrics;
+		}
 	}
 }
\ No newline at end of file
@@ -34,7 +34,15 @@ public class RestDispatcher
 
 	public static MethodReturn dispatch(HttpRequest request, HttpResponse response, boolean preflightRequest) throws RestFailure
 	{
-		ResourceMethod invoker = getInvoker(request, !preflightRequest);
+		return dispatch(getInvoker(request, !preflightRequest), request, response, preflightRequest);
+	}
+
+	/**
+	 * Dispatch the request to a resource method previously retrieved through 
+	 * {@link #getResourceMethod(HttpRequest)}.
+	 */
+	public static MethodReturn dispatch(ResourceMethod invoker, HttpRequest request, HttpResponse response, boolean preflightRequest) throws RestFailure
+	{
 		MethodReturn methodReturn = null;
 		if (invoker.checkCorsPermissions(request, response, preflightRequest) && !preflightRequest)
 		{
@@ -43,6 +51,17 @@ public class RestDispatcher
 		return methodReturn;
 	}
 
+	/**
+	 * Find the resource method that must handle the given request.
+	 * @param request
+	 * @return
+	 * @throws RestFailure if no resource method can handle the request
+	 */
+	public static ResourceMethod getResourceMethod(HttpRequest request) throws RestFailure
+	{
+		return getInvoker(request, true);
+	}
+
 	private static ResourceMethod getInvoker(HttpRequest request, boolean ensureExists) throws RestFailure
 	{
 		if (logger.isDebugEnabled())
@@ -24,15 +24,21 @@ import java.util.concurrent.locks.ReentrantLock;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cruxframework.crux.core.config.ConfigurationFactory;
+import org.cruxframework.crux.core.server.metrics.EndpointMetrics;
 import org.cruxframework.crux.core.server.rest.core.EntityTag;
+import org.cruxframework.crux.core.server.rest.core.HttpResponseAware;
+import org.cruxframework.crux.core.server.rest.core.dispatch.RequestCoalescer.Flight;
 import org.cruxframework.crux.core.server.rest.core.dispatch.ResourceMethod.MethodReturn;
 import org.cruxframework.crux.core.server.rest.spi.HttpRequest;
 import org.cruxframework.crux.core.server.rest.spi.HttpResponse;
 import org.cruxframework.crux.core.server.rest.spi.UriInfo;
+import org.cruxframework.crux.core.server.rest.state.CoordinatedResourceStateHandler;
 import org.cruxframework.crux.core.server.rest.state.ETagHandler;
 import org.cruxframework.crux.core.server.rest.state.ResourceStateConfig;
 import org.cruxframework.crux.core.server.rest.state.ResourceStateHandler;
 import org.cruxframework.crux.core.server.rest.state.ResourceStateHandler.ResourceState;
+import org.cruxframework.crux.core.server.rest.state.ResponseCache;
+import org.cruxframework.crux.core.server.rest.state.ResponseCache.CachedResponse;
 import org.cruxframework.crux.core.server.rest.util.DateUtil;
 import org.cruxframework.crux.core.server.rest.util.HttpHeaderNames;
 import org.cruxframework.crux.core.server.rest.util.HttpResponseCodes;
@@ -47,12 +53,16 @@ public class StateHandler
 {
 	private static final Log logger = LogFactory.getLog(StateHandler.class);
 	private static final Lock eTagLock = new ReentrantLock();
+	private static final long CLUSTER_REFRESH_POLL_INTERVAL = 50;
 	private static ETagHandler eTagHandler = null;
 	private final HttpRequest request;
 	private final ResourceMethod resourceMethod;
 	private String httpMethod;
 	private String key;
+	private String responseKey;
 	private HttpResponse response;
+	private boolean invoked;
+	private boolean coalesced;
 
 	public StateHandler(ResourceMethod resourceMethod, HttpRequest request, HttpResponse response)
     {
@@ -60,7 +70,7 @@ public class StateHandler
 		this.request = request;
 		this.response = response;
 		this.httpMethod = request.getHttpMethod();
-		this.key = request.getUri().getRequestUri().toString();
+		this.key = request.getUri().getRequestUriString();
     }
 	
 	public MethodReturn handledByCache() throws Exception
@@ -77,15 +87,52 @@ public class StateHandler
 		
 		if (ret == null)
 		{
-			ret = resourceMethod.doInvoke(request, response);
+			ret = invokeResourceMethod();
 			if (ret.getCheckedExceptionData() == null)
 			{
 				updateState(request.getUri(), ret);
 			}
 		}
+		recordMetrics(ret);
 		return ret;		
 	}
 
+	private MethodReturn invokeResourceMethod() throws Exception
+	{
+		invoked = true;
+		return resourceMethod.doInvoke(request, response);
+	}
+
+	/**
+	 * Count the state cache hits, misses and not modified responses for the methods that 
+	 * track their resources state. Requests that shared another request's refresh are 
+	 * counted apart.
+	 */
+	private void recordMetrics(MethodReturn ret)
+	{
+		EndpointMetrics metrics = resourceMethod.getMetrics();
+		if (metrics != null && resourceMethod.isEtagGenerationEnabled() && HttpMethod.GET.equals(httpMethod))
+		{
+			ConditionalResponse conditionalResponse = ret.getConditionalResponse();
+			if (conditionalResponse != null && conditionalResponse.getStatus() == HttpResponseCodes.SC_NOT_MODIFIED)
+			{
+				metrics.recordNotModified();
+			}
+			else if (invoked)
+			{
+				metrics.recordStateCacheMiss();
+			}
+			else if (coalesced)
+			{
+				metrics.recordCoalesced();
+			}
+			else
+			{
+				metrics.recordStateCacheHit();
+			}
+		}
+	}
+
 	public void updateState(UriInfo uriInfo, MethodReturn ret)
 	{
 		ResourceStateHandler resourceStateHandler = ResourceStateConfig.getResourceStateHandler();
@@ -110,7 +157,14 @@ public class StateHandler
 			}
 			else
 			{
-				etag = getETagHandler().generateEtag(uriInfo, ret.getReturn());
+				if (ret.getSerializedReturn() != null)
+				{
+					etag = ret.getContentEtag();
+				}
+				else
+				{
+					etag = getETagHandler().generateEtag(uriInfo, ret.getReturn());
+				}
 				dateModified = System.currentTimeMillis();
 				if (ret.getCacheInfo().isCacheEnabled())
 				{
@@ -118,6 +172,21 @@ public class StateHandler
 				}
 			}
 			resourceStateHandler.add(key, dateModified, expires, etag);
+			if (ret.getCacheInfo().isSharedCacheAllowed())
+			{
+				ResponseCache responseCache = ResourceStateConfig.getResponseCache();
+				if (responseCache != null)
+				{
+					if (ret.getSerializedReturn() != null)
+					{
+						responseCache.put(getResponseKey(), etag, ret.getSerializedReturn());
+					}
+					else if (ret.getReturn() != null)
+					{
+						responseCache.put(getResponseKey(), etag, ret.getReturn());
+					}
+				}
+			}
 			ret.setDateModified(dateModified);
 			EntityTag entityTag = (etag != null)?new EntityTag(etag):null;
 			ret.setEtag(entityTag);
@@ -145,15 +214,18 @@ public class StateHandler
 		{
 			if (resourceState.isExpired())
 			{
-				ret = resourceMethod.doInvoke(request, response);
-				if (ret.getCheckedExceptionData() == null)
+				if (RequestCoalescer.isEnabled() && isCoalescingAllowed())
 				{
-					updateState(request.getUri(), ret);
+					ret = refreshCoalesced(resourceState);
 					resourceState = resourceStateHandler.get(key);
 				}
 				else
 				{
-					resourceStateHandler.remove(key);
+					ret = refreshState();
+					if (ret.getCheckedExceptionData() == null)
+					{
+						resourceState = resourceStateHandler.get(key);
+					}
 				}
 			}
 			ConditionalResponse conditionalResponse = evaluatePreconditions(resourceState);
@@ -161,10 +233,210 @@ public class StateHandler
 			{
 				return new MethodReturn(resourceMethod.hasReturnType, null, null, resourceMethod.cacheInfo, conditionalResponse, resourceMethod.isEtagGenerationEnabled());
 			}
+			if (ret == null)
+			{
+				ret = getCachedResponse(resourceState);
+			}
 		}
 		return ret;
 	}
 
+	/**
+	 * Invoke the resource method to refresh its expired state.
+	 * @return
+	 */
+	private MethodReturn refreshState() throws Exception
+	{
+		MethodReturn ret = invokeResourceMethod();
+		if (ret.getCheckedExceptionData() == null)
+		{
+			updateState(request.getUri(), ret);
+		}
+		else
+		{
+			ResourceStateConfig.getResourceStateHandler().remove(key);
+		}
+		return ret;
+	}
+
+	/**
+	 * Refresh the expired state, sharing one single method return among all concurrent requests 
+	 * for the same content. 
+	 * @param expiredState
+	 * @return the refreshed method return or null if the request must be handled with the 
+	 * resource state currently stored.
+	 */
+	private MethodReturn refreshCoalesced(ResourceState expiredState) throws Exception
+	{
+		Flight flight = RequestCoalescer.join(getCoalescingKey());
+		CoordinatedResourceStateHandler coordinatedStateHandler = getCoordinatedStateHandler();
+		if (flight.isLeader())
+		{
+			try
+			{
+				MethodReturn ret;
+				if (coordinatedStateHandler == null || coordinatedStateHandler.acquireRefresh(key))
+				{
+					ret = refreshState();
+				}
+				else
+				{
+					ret = awaitClusterRefresh(coordinatedStateHandler);
+				}
+				flight.complete(ret);
+				return ret;
+			}
+			catch (Exception e)
+			{
+				flight.fail(e);
+				throw e;
+			}
+			finally
+			{
+				flight.release();
+			}
+		}
+		if (RequestCoalescer.isStaleWhileRevalidate() && canServeStale(expiredState))
+		{
+			return null;
+		}
+		// The leader may wait for another node before refreshing, so wait for that too
+		long timeout = RequestCoalescer.getTimeout();
+		if (timeout > 0 && coordinatedStateHandler != null && coordinatedStateHandler.getRefreshLeaseTime() > 0)
+		{
+			timeout += coordinatedStateHandler.getRefreshLeaseTime();
+		}
+		if (flight.await(timeout))
+		{
+			coalesced = true;
+			return flight.getResult();
+		}
+		logger.info("Timeout waiting for the refresh of resource ["+key+"]. Refreshing it again.");
+		return refreshState();
+	}
+
+	/**
+	 * When the state handler is shared by many nodes, only one of them refreshes each expired 
+	 * resource.
+	 * @return the state handler, or null if it does not coordinate the refreshes 
+	 */
+	private CoordinatedResourceStateHandler getCoordinatedStateHandler()
+	{
+		ResourceStateHandler resourceStateHandler = ResourceStateConfig.getResourceStateHandler();
+		if (resourceStateHandler instanceof CoordinatedResourceStateHandler)
+		{
+			return (CoordinatedResourceStateHandler) resourceStateHandler;
+		}
+		return null;
+	}
+
+	/**
+	 * Wait while another node refreshes the resource state. Only the flight leader polls the 
+	 * state handler. The refresh is claimed again on each poll, so it is taken over when the 
+	 * other node's lease expires, and the wait never exceeds the refresh lease time. 
+	 * @param coordinatedStateHandler
+	 * @return the method return shared by the flight. When the state was refreshed by the other 
+	 * node, it comes from the {@link ResponseCache} or, if the content is not cached here, from 
+	 * one invocation of the resource method.
+	 */
+	private MethodReturn awaitClusterRefresh(CoordinatedResourceStateHandler coordinatedStateHandler) throws Exception
+	{
+		long deadline = System.currentTimeMillis() + coordinatedStateHandler.getRefreshLeaseTime();
+		while (System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(CLUSTER_REFRESH_POLL_INTERVAL);
+			ResourceState resourceState = coordinatedStateHandler.get(key);
+			if (resourceState != null && !resourceState.isExpired())
+			{
+				MethodReturn ret = getCachedResponse(resourceState);
+				return (ret != null) ? ret : refreshState();
+			}
+			if (resourceState == null || coordinatedStateHandler.acquireRefresh(key))
+			{
+				return refreshState();
+			}
+		}
+		logger.info("Timeout waiting for the cluster to refresh resource ["+key+"]. Refreshing it on this node.");
+		return refreshState();
+	}
+
+	/**
+	 * Check if the expired state can answer this request, with a conditional response or with 
+	 * the content still kept by the {@link ResponseCache}.
+	 * @param expiredState
+	 * @return
+	 */
+	private boolean canServeStale(ResourceState expiredState)
+	{
+		if (evaluatePreconditions(expiredState) != null)
+		{
+			return true;
+		}
+		ResponseCache responseCache = ResourceStateConfig.getResponseCache();
+		return (responseCache != null && resourceMethod.cacheInfo.isSharedCacheAllowed() 
+				&& responseCache.get(getResponseKey(), expiredState.getEtag()) != null);
+	}
+
+	/**
+	 * The leader's method return is shared only if it is the same for every user and carries the 
+	 * whole response. Resources that write headers through {@link HttpResponseAware} are refreshed 
+	 * by each request.
+	 * @return
+	 */
+	private boolean isCoalescingAllowed()
+	{
+		return resourceMethod.cacheInfo.isSharedCacheAllowed() && !resourceMethod.isResponseAware();
+	}
+
+	/**
+	 * Requests are coalesced only when their responses would be the same, so the key includes 
+	 * the negotiated language and content type.
+	 * @return
+	 */
+	private String getCoalescingKey()
+	{
+		String accept = request.getHttpHeaders().getHeaderString(HttpHeaderNames.ACCEPT);
+		return (accept == null) ? getResponseKey() : getResponseKey() + "|" + accept;
+	}
+
+	/**
+	 * Retrieve the response content from the {@link ResponseCache}, if it is still valid for the 
+	 * given resource state. Only public responses are cached, as the cache is shared by all users.
+	 * @param resourceState
+	 * @return
+	 */
+	private MethodReturn getCachedResponse(ResourceState resourceState)
+	{
+		ResponseCache responseCache = ResourceStateConfig.getResponseCache();
+		if (responseCache == null || resourceState == null || !resourceMethod.cacheInfo.isSharedCacheAllowed())
+		{
+			return null;
+		}
+		CachedResponse cachedResponse = responseCache.get(getResponseKey(), resourceState.getEtag());
+		if (cachedResponse == null)
+		{
+			return null;
+		}
+		MethodReturn ret = new MethodReturn(resourceMethod.hasReturnType, cachedResponse, resourceMethod.cacheInfo, resourceMethod.isEtagGenerationEnabled());
+		ret.setEtag(new EntityTag(resourceState.getEtag()));
+		ret.setDateModified(resourceState.getDateModified());
+		return ret;
+	}
+
+	/**
+	 * Responses of cacheable resources vary by Accept-Language, so the language is also part 
+	 * of the key used for the response content.
+	 * @return
+	 */
+	private String getResponseKey()
+	{
+		if (responseKey == null)
+		{
+			responseKey = ResponseCache.getResponseKey(request);
+		}
+		return responseKey;
+	}
+
 	/**
 	 * Handle PUT/POST/DELETE/uncacheable GETs
 	 * @return
@@ -177,7 +449,7 @@ public class StateHandler
 		MethodReturn ret = null;
 		if (resourceMethod.getHttpMethod().equals(HttpMethod.GET) && resourceState != null && resourceState.isExpired())
 		{
-			ret = resourceMethod.doInvoke(request, response);
+			ret = invokeResourceMethod();
 			if (ret.getCheckedExceptionData() == null)
 			{
 				updateState(request.getUri(), ret);
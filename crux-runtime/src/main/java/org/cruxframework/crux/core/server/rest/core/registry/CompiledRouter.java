@@ -0,0 +1,321 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.core.registry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.cruxframework.crux.core.server.rest.core.dispatch.ResourceMethod;
+import org.cruxframework.crux.core.server.rest.core.registry.RouteMatch.Status;
+import org.cruxframework.crux.core.server.rest.spi.HttpRequest;
+import org.cruxframework.crux.core.server.rest.spi.UriInfo;
+import org.cruxframework.crux.core.server.rest.util.Encode;
+
+/**
+ * An immutable view of the {@link RootSegment} tree, optimized for request matching. 
+ * Literal segments are resolved through a trie of hash lookups and all path param 
+ * expressions declared at the same level are merged into a single pattern, used to 
+ * discard the non matching expressions at once.
+ * 
+ * <p>Matching never throws. Failures are reported through {@link RouteMatch} with the 
+ * same precedence used by {@link RootSegment#matchRoot(HttpRequest, int)}.</p>
+ * 
+ * @author Thiago da Rosa de Bustamante
+ *
+ */
+public class CompiledRouter
+{
+	// Inline flags or back references would change their meaning inside a merged pattern 
+	private static final Pattern UNMERGEABLE_EXPRESSION = Pattern.compile("\\(\\?[idmsuxU-]+[):]|\\\\[1-9]");
+	
+	private final RouteNode root;
+
+	public CompiledRouter(RootSegment rootSegment)
+	{
+		this.root = new RouteNode(rootSegment);
+	}
+	
+	public RouteMatch matchRoot(HttpRequest request)
+	{
+		return matchRoot(request, 0);
+	}
+
+	public RouteMatch matchRoot(HttpRequest request, int start)
+	{
+		String path = request.getUri().getMatchingPath();
+		if (start < path.length() && path.charAt(start) == '/')
+			start++;
+		return root.matchChildren(new MatchContext(request, path), start);
+	}
+
+	private static class MatchContext
+	{
+		private final HttpRequest request;
+		private final String path;
+		private final String httpMethod;
+		private Boolean responseMediaTypeAllowed;
+
+		private MatchContext(HttpRequest request, String path)
+        {
+			this.request = request;
+			this.path = path;
+			this.httpMethod = request.getHttpMethod();
+        }
+
+		private boolean isResponseMediaTypeAllowed()
+		{
+			if (responseMediaTypeAllowed == null)
+			{
+				responseMediaTypeAllowed = Segment.isJsonResponseAllowed(request.getHttpHeaders().getAcceptableMediaTypes());
+			}
+			return responseMediaTypeAllowed;
+		}
+	}
+
+	/**
+	 * Resource methods bound to a single segment, indexed by HTTP method
+	 */
+	private static class Endpoint
+	{
+		private final Map<String, ResourceMethod> methods = new HashMap<String, ResourceMethod>();
+		private final boolean empty;
+
+		private Endpoint(Segment segment)
+        {
+			List<ResourceMethod> segmentMethods = segment.getMethods();
+			for (ResourceMethod method : segmentMethods)
+            {
+				if (method.getHttpMethod() != null)
+				{
+					methods.put(method.getHttpMethod(), method);
+				}
+            }
+			this.empty = segmentMethods.isEmpty();
+        }
+
+		private RouteMatch select(MatchContext context)
+		{
+			if (!context.isResponseMediaTypeAllowed())
+			{
+				return RouteMatch.failed(Status.NOT_ACCEPTABLE, context.path);
+			}
+			ResourceMethod invoker = methods.get(context.httpMethod);
+			if (invoker == null)
+			{
+				return RouteMatch.failed(empty?Status.NOT_FOUND:Status.METHOD_NOT_ALLOWED, context.path);
+			}
+			return RouteMatch.matched(invoker);
+		}
+	}
+	
+	private static class PatternRoute
+	{
+		private final PathParamSegment segment;
+		private final Endpoint endpoint;
+
+		private PatternRoute(PathParamSegment segment)
+        {
+			this.segment = segment;
+			this.endpoint = new Endpoint(segment);
+        }
+
+		private RouteMatch match(MatchContext context, int start)
+		{
+			Matcher matcher = segment.getPattern().matcher(context.path);
+			matcher.region(start, context.path.length());
+			if (!matcher.matches())
+			{
+				return RouteMatch.failed(Status.NOT_FOUND, context.path);
+			}
+			RouteMatch match = endpoint.select(context);
+			if (match.isMatched())
+			{
+				if (!segment.canPopulatePathParams(context.request, matcher, context.path))
+				{
+					return RouteMatch.failed(Status.BAD_REQUEST, context.path);
+				}
+				UriInfo uriInfo = context.request.getUri();
+				uriInfo.pushMatchedURI(context.path, Encode.decode(context.path));
+				segment.populatePathParams(context.request, matcher, context.path);
+			}
+			return match;
+		}
+	}
+	
+	private static class RouteNode
+	{
+		private final Map<String, RouteNode> children = new HashMap<String, RouteNode>();
+		private final Endpoint endpoint;
+		private final PatternRoute[] patterns;
+		private Pattern mergedPattern;
+		private int[] alternativeGroups;
+
+		private RouteNode(RootSegment segment)
+        {
+			for (Entry<String, SimpleSegment> entry : segment.simpleSegments.entrySet())
+            {
+				children.put(entry.getKey(), new RouteNode(entry.getValue()));
+            }
+			this.endpoint = new Endpoint(segment);
+			
+			List<PathParamSegment> expressions = new ArrayList<PathParamSegment>(segment.sortedResourceExpressions);
+			expressions.addAll(segment.sortedLocatorExpressions);
+			this.patterns = new PatternRoute[expressions.size()];
+			for (int i = 0; i < patterns.length; i++)
+            {
+				patterns[i] = new PatternRoute(expressions.get(i));
+            }
+			mergePatterns(expressions);
+        }
+
+		/**
+		 * Creates an alternation of all expressions, respecting their precedence order. Each 
+		 * alternative is wrapped into a capturing group, so the first matching expression can 
+		 * be identified after a single pass over the path. 
+		 * @param expressions
+		 */
+		private void mergePatterns(List<PathParamSegment> expressions)
+        {
+			if (expressions.size() < 2)
+			{
+				return;
+			}
+			StringBuilder regex = new StringBuilder();
+			int[] groups = new int[expressions.size()];
+			int group = 1;
+			for (int i = 0; i < groups.length; i++)
+            {
+				PathParamSegment expression = expressions.get(i);
+				if (UNMERGEABLE_EXPRESSION.matcher(expression.getRegex()).find())
+				{
+					return;
+				}
+				if (i > 0)
+				{
+					regex.append('|');
+				}
+				regex.append('(').append(expression.getRegex()).append(')');
+				groups[i] = group;
+				group += 1 + expression.getPattern().matcher("").groupCount();
+            }
+			try
+			{
+				mergedPattern = Pattern.compile(regex.toString());
+				alternativeGroups = groups;
+			}
+			catch (PatternSyntaxException e)
+			{
+				mergedPattern = null;
+			}
+        }
+
+		/**
+		 * Find the index of the first expression that matches the given path region.
+		 * @return the expression index or -1 if no expression matches
+		 */
+		private int firstMatchingPattern(String path, int start)
+		{
+			if (mergedPattern == null)
+			{
+				return (patterns.length > 0)?0:-1;
+			}
+			Matcher matcher = mergedPattern.matcher(path);
+			matcher.region(start, path.length());
+			if (!matcher.matches())
+			{
+				return -1;
+			}
+			for (int i = 0; i < alternativeGroups.length; i++)
+            {
+				if (matcher.start(alternativeGroups[i]) >= 0)
+				{
+					return i;
+				}
+            }
+			return 0;
+		}
+
+		private RouteMatch matchSimple(MatchContext context, int end)
+		{
+			if (end == context.path.length()) // we've reached end of string
+			{
+				RouteMatch match = endpoint.select(context);
+				if (match.isMatched())
+				{
+					context.request.getUri().pushMatchedURI(context.path, Encode.decode(context.path));
+				}
+				return match;
+			}
+			return matchChildren(context, end + 1); // + 1 to ignore '/'
+		}
+
+		private RouteMatch matchChildren(MatchContext context, int start)
+		{
+			String path = context.path;
+			String simpleSegment;
+			if (start == path.length())
+			{
+				simpleSegment = "";
+			}
+			else
+			{
+				int endOfSegmentIndex = path.indexOf('/', start);
+				if (endOfSegmentIndex > -1)
+					simpleSegment = path.substring(start, endOfSegmentIndex);
+				else
+					simpleSegment = path.substring(start);
+			}
+
+			RouteMatch lastFailure = null;
+			RouteNode child = children.get(simpleSegment);
+			if (child != null)
+			{
+				RouteMatch match = child.matchSimple(context, start + simpleSegment.length());
+				if (match.isMatched())
+				{
+					return match;
+				}
+				lastFailure = match;
+			}
+
+			int first = firstMatchingPattern(path, start);
+			if (first >= 0)
+			{
+				for (int i = first; i < patterns.length; i++)
+				{
+					RouteMatch match = patterns[i].match(context, start);
+					if (match.isMatched())
+					{
+						return match;
+					}
+					// try and propagate matched path that produced non-404 responses,
+					// i.e. MethodNotAllowed, etc.
+					if (lastFailure == null || lastFailure.isNotFound())
+						lastFailure = match;
+				}
+			}
+			if (lastFailure != null)
+				return lastFailure;
+			return RouteMatch.failed(Status.NOT_FOUND, path);
+		}
+	}
+}
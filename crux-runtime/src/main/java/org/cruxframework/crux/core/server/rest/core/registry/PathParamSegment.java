@@ -155,6 +155,11 @@ public class PathParamSegment extends Segment implements Comparable<PathParamSeg
 		return regex;
 	}
 
+	public Pattern getPattern()
+	{
+		return pattern;
+	}
+
 	public String getPathExpression()
 	{
 		return pathExpression;
@@ -167,30 +172,8 @@ public class PathParamSegment extends Segment implements Comparable<PathParamSeg
 		{
 			String value = matcher.group(group.group);
 			uriInfo.addEncodedPathParameter(group.name, value);
-			int index = matcher.start(group.group);
-
-			int start = 0;
-			if (path.charAt(0) == '/')
-				start++;
-			int segmentIndex = 0;
-
-			if (start < path.length())
-			{
-				int count = 0;
-				for (int i = start; i < index && i < path.length(); i++)
-				{
-					if (path.charAt(i) == '/')
-						count++;
-				}
-				segmentIndex = count;
-			}
-
-			int numSegments = 1;
-			for (int i = 0; i < value.length(); i++)
-			{
-				if (value.charAt(i) == '/')
-					numSegments++;
-			}
+			int segmentIndex = getSegmentIndex(path, matcher.start(group.group));
+			int numSegments = getNumSegments(value);
 
 			if (segmentIndex + numSegments > request.getUri().getPathSegments().size())
 			{
@@ -209,6 +192,61 @@ public class PathParamSegment extends Segment implements Comparable<PathParamSeg
 		}
 	}
 
+	/**
+	 * Check if the path parameters captured by the given matcher can be bound to the 
+	 * request path segments, without changing the request state.
+	 * @param request
+	 * @param matcher
+	 * @param path
+	 * @return false if {@link #populatePathParams(HttpRequest, Matcher, String)} would 
+	 * fail with a {@link BadRequestException}
+	 */
+	protected boolean canPopulatePathParams(HttpRequest request, Matcher matcher, String path)
+	{
+		int pathSegments = request.getUri().getPathSegments().size();
+		for (Group group : groups)
+		{
+			String value = matcher.group(group.group);
+			int segmentIndex = getSegmentIndex(path, matcher.start(group.group));
+			if (segmentIndex + getNumSegments(value) > pathSegments)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int getSegmentIndex(String path, int index)
+	{
+		int start = 0;
+		if (path.charAt(0) == '/')
+			start++;
+		int segmentIndex = 0;
+
+		if (start < path.length())
+		{
+			int count = 0;
+			for (int i = start; i < index && i < path.length(); i++)
+			{
+				if (path.charAt(i) == '/')
+					count++;
+			}
+			segmentIndex = count;
+		}
+		return segmentIndex;
+	}
+
+	private int getNumSegments(String value)
+	{
+		int numSegments = 1;
+		for (int i = 0; i < value.length(); i++)
+		{
+			if (value.charAt(i) == '/')
+				numSegments++;
+		}
+		return numSegments;
+	}
+
 	public ResourceMethod matchPattern(HttpRequest request, String path, int start)
 	{
 		UriInfo uriInfo = (UriInfo) request.getUri();
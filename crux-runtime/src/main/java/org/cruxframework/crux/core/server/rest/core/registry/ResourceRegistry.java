@@ -54,6 +54,7 @@ public class ResourceRegistry
 	
 	protected int size;
 	protected RootSegment rootSegment = new RootSegment();
+	protected CompiledRouter router;
 	
 	/**
 	 * Singleton constructor
@@ -98,6 +99,22 @@ public class ResourceRegistry
 	 * @return
 	 */
 	public ResourceMethod getResourceMethod(HttpRequest request)
+	{
+		RouteMatch match = matchResourceMethod(request);
+		if (!match.isMatched())
+		{
+			throw match.toFailure(request);
+		}
+		return match.getResourceMethod();
+	}
+
+	/**
+	 * Find a resource to invoke on, without throwing any exception if no resource 
+	 * can be found.
+	 * 
+	 * @return
+	 */
+	public RouteMatch matchResourceMethod(HttpRequest request)
 	{
 		if (!initialized)
 		{
@@ -106,11 +123,11 @@ public class ResourceRegistry
 		List<String> matchedUris = request.getUri().getMatchedURIs(false);
 		if (matchedUris == null || matchedUris.size() == 0)
 		{
-			return rootSegment.matchRoot(request);
+			return router.matchRoot(request);
 		}
 		// resource location
-		String currentUri = request.getUri().getMatchedURIs(false).get(0);
-		return rootSegment.matchRoot(request, currentUri.length());
+		String currentUri = matchedUris.get(0);
+		return router.matchRoot(request, currentUri.length());
 	}
 
 	/**
@@ -352,6 +369,7 @@ public class ResourceRegistry
             	logger.error("Error initializing rest service class for service ["+service+"]", e);
             }
 		}
+		instance.router = new CompiledRouter(instance.rootSegment);
 		initialized = true;
     }
 	
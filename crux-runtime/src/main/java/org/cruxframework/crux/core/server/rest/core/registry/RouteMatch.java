@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.core.registry;
+
+import org.cruxframework.crux.core.server.rest.core.dispatch.ResourceMethod;
+import org.cruxframework.crux.core.server.rest.spi.BadRequestException;
+import org.cruxframework.crux.core.server.rest.spi.HttpRequest;
+import org.cruxframework.crux.core.server.rest.spi.MethodNotAllowedException;
+import org.cruxframework.crux.core.server.rest.spi.NotAcceptableException;
+import org.cruxframework.crux.core.server.rest.spi.NotFoundException;
+import org.cruxframework.crux.core.server.rest.spi.RestFailure;
+
+/**
+ * Result of a route lookup made by the {@link CompiledRouter}. A failed lookup does not 
+ * create any exception. The equivalent {@link RestFailure} is only built when requested 
+ * through {@link #toFailure(HttpRequest)}.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ *
+ */
+public class RouteMatch
+{
+	public static enum Status{MATCHED, NOT_FOUND, METHOD_NOT_ALLOWED, NOT_ACCEPTABLE, BAD_REQUEST}
+	
+	private final Status status;
+	private final ResourceMethod resourceMethod;
+	private final String path;
+
+	private RouteMatch(Status status, ResourceMethod resourceMethod, String path)
+    {
+		this.status = status;
+		this.resourceMethod = resourceMethod;
+		this.path = path;
+    }
+
+	static RouteMatch matched(ResourceMethod resourceMethod)
+	{
+		return new RouteMatch(Status.MATCHED, resourceMethod, null);
+	}
+
+	static RouteMatch failed(Status status, String path)
+	{
+		return new RouteMatch(status, null, path);
+	}
+	
+	public Status getStatus()
+	{
+		return status;
+	}
+
+	public boolean isMatched()
+	{
+		return status == Status.MATCHED;
+	}
+
+	public boolean isNotFound()
+	{
+		return status == Status.NOT_FOUND;
+	}
+
+	/**
+	 * The resource method selected for the request, or null if no method could be matched
+	 * @return
+	 */
+	public ResourceMethod getResourceMethod()
+	{
+		return resourceMethod;
+	}
+
+	/**
+	 * Build the failure that must be reported to the client for an unmatched request.
+	 * @param request
+	 * @return
+	 */
+	public RestFailure toFailure(HttpRequest request)
+	{
+		switch (status)
+		{
+			case METHOD_NOT_ALLOWED:
+				return new MethodNotAllowedException("No resource method found for " + request.getHttpMethod());
+			case NOT_ACCEPTABLE:
+				return new NotAcceptableException("No match for accept header");
+			case BAD_REQUEST:
+				return new BadRequestException("Number of matched segments greater than actual", "Can not invoke requested service");
+			default:
+				return new NotFoundException("Could not find resource for relative : " + path + " of full path: " + request.getUri().getRequestUri());
+		}
+	}
+}
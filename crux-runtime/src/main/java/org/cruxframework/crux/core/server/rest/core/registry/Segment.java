@@ -92,7 +92,17 @@ public class Segment
 		methods.add(invoker);
 	}
 	
+	protected List<ResourceMethod> getMethods()
+	{
+		return methods;
+	}
+	
 	protected boolean isResponseMediaTypeAllowed(List<MediaType> accepts)
+	{
+		return isJsonResponseAllowed(accepts);
+	}
+
+	static boolean isJsonResponseAllowed(List<MediaType> accepts)
 	{
 		boolean responseMediaTypeAllowed = false;
 		if (accepts == null || accepts.isEmpty())
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.servlet;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cruxframework.crux.core.server.rest.core.dispatch.ResourceMethod;
+import org.cruxframework.crux.core.server.rest.spi.HttpRequest;
+import org.cruxframework.crux.core.server.rest.spi.HttpResponse;
+
+/**
+ * Dispatches the requests for asynchronous rest methods through the Servlet 3.0 asynchronous 
+ * support. The container thread is released as soon as the request is handed to the executor, 
+ * that invokes the method, waits for its result and writes the response.
+ * 
+ * <p>This class references the Servlet 3.0 API, so it must only be loaded when the container 
+ * supports it. The servlet and the filters mapped to the rest requests must be declared with 
+ * <code>&lt;async-supported&gt;true&lt;/async-supported&gt;</code>, otherwise the requests 
+ * are processed synchronously.</p>
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+class AsyncRestDispatcher
+{
+	private static final Log logger = LogFactory.getLog(AsyncRestDispatcher.class);
+
+	private final RestServlet servlet;
+	private final ExecutorService executor;
+
+	AsyncRestDispatcher(RestServlet servlet, ExecutorService executor)
+	{
+		this.servlet = servlet;
+		this.executor = executor;
+	}
+
+	/**
+	 * Start the asynchronous processing of the request.
+	 * @return false if the request does not support asynchronous processing and must be 
+	 * processed by the caller.
+	 */
+	boolean dispatch(HttpServletRequest req, ResourceMethod resourceMethod, HttpRequest request, HttpResponse response, long startTime)
+	{
+		if (!req.isAsyncSupported())
+		{
+			return false;
+		}
+		AsyncContext asyncContext = req.startAsync();
+		// The rest method timeout is applied while waiting for its result
+		asyncContext.setTimeout(0);
+		Runnable task = new AsyncDispatch(asyncContext, resourceMethod, request, response, startTime);
+		try
+		{
+			executor.execute(task);
+		}
+		catch (RejectedExecutionException e)
+		{
+			task.run();
+		}
+		return true;
+	}
+
+	void shutdown()
+	{
+		executor.shutdown();
+	}
+
+	private class AsyncDispatch implements Runnable
+	{
+		private final AsyncContext asyncContext;
+		private final ResourceMethod resourceMethod;
+		private final HttpRequest request;
+		private final HttpResponse response;
+		private final long startTime;
+
+		public AsyncDispatch(AsyncContext asyncContext, ResourceMethod resourceMethod, HttpRequest request, HttpResponse response, long startTime)
+		{
+			this.asyncContext = asyncContext;
+			this.resourceMethod = resourceMethod;
+			this.request = request;
+			this.response = response;
+			this.startTime = startTime;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				servlet.dispatch(resourceMethod, request, response, startTime);
+			}
+			catch (IOException e)
+			{
+				logger.error("Error writing the response of an asynchronous rest request.", e);
+			}
+			finally
+			{
+				asyncContext.complete();
+			}
+		}
+	}
+}
@@ -16,6 +16,12 @@
 package org.cruxframework.crux.core.server.rest.servlet;
 
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -25,10 +31,15 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cruxframework.crux.core.config.ConfigurationFactory;
 import org.cruxframework.crux.core.i18n.LocaleResolver;
 import org.cruxframework.crux.core.i18n.LocaleResolverInitializer;
+import org.cruxframework.crux.core.server.metrics.EndpointMetrics;
+import org.cruxframework.crux.core.server.metrics.EndpointMetrics.Phase;
+import org.cruxframework.crux.core.server.metrics.Metrics;
 import org.cruxframework.crux.core.server.rest.core.HttpHeaders;
 import org.cruxframework.crux.core.server.rest.core.RequestProcessors;
+import org.cruxframework.crux.core.server.rest.core.dispatch.ResourceMethod;
 import org.cruxframework.crux.core.server.rest.core.dispatch.ResourceMethod.MethodReturn;
 import org.cruxframework.crux.core.server.rest.core.dispatch.RestDispatcher;
 import org.cruxframework.crux.core.server.rest.core.registry.RestServiceFactoryInitializer;
@@ -48,6 +59,9 @@ public class RestServlet extends HttpServlet
 {
 	private static final Log logger = LogFactory.getLog(RestServlet.class);
 	private static final long serialVersionUID = -4338760751718522206L;
+	private static final int ASYNC_QUEUE_SIZE_PER_THREAD = 100;
+	
+	private transient AsyncRestDispatcher asyncDispatcher;
 
 	@Override
 	protected void doOptions(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException
@@ -99,6 +113,7 @@ public class RestServlet extends HttpServlet
 	
 	protected void processRequest(HttpServletRequest req, HttpServletResponse res, String method) throws IOException
 	{
+		long startTime = Metrics.isEnabled() ? System.nanoTime() : 0;
 		if (logger.isDebugEnabled())
 		{
 			logger.debug("Request received. Method ["+method+"]");
@@ -124,28 +139,60 @@ public class RestServlet extends HttpServlet
 		HttpRequest request = new HttpRequest(req, headers, uriInfo, method);
 		HttpResponse response = new HttpResponse(res);
 
+		ResourceMethod resourceMethod;
+		long routeStartTime = Metrics.isEnabled() ? System.nanoTime() : 0;
+		try
+		{
+			resourceMethod = RestDispatcher.getResourceMethod(request);
+		}
+		catch (Exception e) 
+		{
+			sendFailure(response, e);
+			return;
+		}
+		EndpointMetrics metrics = resourceMethod.getMetrics();
+		if (metrics != null)
+		{
+			metrics.record(Phase.ROUTE, routeStartTime);
+		}
+		if (resourceMethod.isAsync() && asyncDispatcher != null && asyncDispatcher.dispatch(req, resourceMethod, request, response, startTime))
+		{
+			return;
+		}
+		dispatch(resourceMethod, request, response, startTime);
+	}
+
+	/**
+	 * Invoke the resource method and write its response. Asynchronous requests are 
+	 * dispatched from the threads of the async executor.
+	 * @param startTime time when the request was received, as returned by {@link System#nanoTime()}. 
+	 * Only used if metrics are enabled.
+	 */
+	protected void dispatch(ResourceMethod resourceMethod, HttpRequest request, HttpResponse response, long startTime) throws IOException
+	{
 		boolean localeInitializedByServlet = false;
+		boolean failed = false;
 		try
 		{
 			localeInitializedByServlet = initUserLocaleResolver(request);
-			MethodReturn methodReturn = RestDispatcher.dispatch(request, response, false);
+			MethodReturn methodReturn = RestDispatcher.dispatch(resourceMethod, request, response, false);
 			if (!response.isCommitted())
 			{
 				HttpUtil.writeResponse(request, response, methodReturn);
 			}
 		}
-		catch (RestFailure e) 
-		{
-			response.sendException(e.getResponseCode(), e.getResponseMessage());
-			logger.error(e.getMessage(), e);
-		}
 		catch (Exception e) 
 		{
-			response.sendException(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Server error processing request.");
-			logger.error(e.getMessage(), e);
+			failed = true;
+			sendFailure(response, e);
 		}
 		finally
 		{
+			EndpointMetrics metrics = resourceMethod.getMetrics();
+			if (metrics != null)
+			{
+				metrics.recordRequest(startTime, failed);
+			}
 			if (localeInitializedByServlet)
 			{
 				LocaleResolverInitializer.clearLocaleResolverThreadData();
@@ -153,6 +200,25 @@ public class RestServlet extends HttpServlet
 		}
 	}
 	
+	private void sendFailure(HttpResponse response, Exception e) throws IOException
+	{
+		if (response.isCommitted())
+		{
+			logger.error("Error processing request. The response was already committed, so the error can not be sent to the client.", e);
+			return;
+		}
+		if (e instanceof RestFailure)
+		{
+			RestFailure failure = (RestFailure) e;
+			response.sendException(failure.getResponseCode(), failure.getResponseMessage());
+		}
+		else
+		{
+			response.sendException(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Server error processing request.");
+		}
+		logger.error(e.getMessage(), e);
+	}
+	
 	/**
 	 * 
 	 */
@@ -242,5 +308,53 @@ public class RestServlet extends HttpServlet
                 }
             }
 	    }
+	    int asyncThreads = Integer.parseInt(ConfigurationFactory.getConfigurations().restAsyncThreads());
+	    if (asyncThreads > 0)
+	    {
+	    	if (config.getServletContext().getMajorVersion() >= 3)
+	    	{
+	    		asyncDispatcher = new AsyncRestDispatcher(this, createAsyncExecutor(asyncThreads));
+	    	}
+	    	else
+	    	{
+	    		logger.warn("Asynchronous rest requests require a Servlet 3.0 container. The results of asynchronous rest methods will be awaited on the container threads.");
+	    	}
+	    }
+	}
+
+	@Override
+	public void destroy()
+	{
+		if (asyncDispatcher != null)
+		{
+			asyncDispatcher.shutdown();
+			asyncDispatcher = null;
+		}
+	    super.destroy();
+	}
+
+	/**
+	 * Create the executor used to wait for the results of the asynchronous rest methods. 
+	 * Requests rejected by the executor are processed on the container thread.
+	 * @param threads
+	 * @return
+	 */
+	protected ExecutorService createAsyncExecutor(int threads)
+	{
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, 
+					new ArrayBlockingQueue<Runnable>(threads * ASYNC_QUEUE_SIZE_PER_THREAD), new ThreadFactory()
+		{
+			private final AtomicInteger count = new AtomicInteger();
+			
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "crux-rest-async-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
 	}
 }
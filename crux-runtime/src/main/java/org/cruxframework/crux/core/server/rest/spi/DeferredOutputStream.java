@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.spi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Keeps the first bytes of a streaming response in memory. The response output stream is only 
+ * used when the buffer is full or when this stream is closed, so, while {@link #isCommitted()} 
+ * is false, the response can still be reset and replaced by an error response.
+ * 
+ * <p>{@link #flush()} only flushes the response after the buffer was written to it.</p>
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+class DeferredOutputStream extends OutputStream
+{
+	private final HttpResponse response;
+	private byte[] buffer;
+	private int count;
+	private OutputStream out;
+
+	public DeferredOutputStream(HttpResponse response, int bufferSize)
+	{
+		this.response = response;
+		this.buffer = new byte[bufferSize];
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		if (out == null && count < buffer.length)
+		{
+			buffer[count++] = (byte) b;
+			return;
+		}
+		commit();
+		out.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		if (out == null && count + len <= buffer.length)
+		{
+			System.arraycopy(b, off, buffer, count, len);
+			count += len;
+			return;
+		}
+		commit();
+		out.write(b, off, len);
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		if (out != null)
+		{
+			out.flush();
+		}
+	}
+
+	/**
+	 * Writes the buffered content to the response. If the whole content fits on the buffer, its 
+	 * length is sent on the Content-Length header. The response output stream is not closed.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (out == null)
+		{
+			response.setContentLength(count);
+		}
+		commit();
+		out.flush();
+	}
+
+	/**
+	 * Check if any content was already written to the response.
+	 * @return
+	 */
+	public boolean isCommitted()
+	{
+		return out != null;
+	}
+
+	private void commit() throws IOException
+	{
+		if (out == null)
+		{
+			out = response.getOutputStream();
+			out.write(buffer, 0, count);
+			buffer = null;
+			count = 0;
+		}
+	}
+}
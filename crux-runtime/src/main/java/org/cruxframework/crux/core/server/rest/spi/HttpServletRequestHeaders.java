@@ -0,0 +1,238 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.spi;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.cruxframework.crux.core.server.rest.core.Cookie;
+import org.cruxframework.crux.core.server.rest.core.HttpHeaders;
+import org.cruxframework.crux.core.server.rest.core.MediaType;
+import org.cruxframework.crux.core.server.rest.core.MultivaluedMap;
+import org.cruxframework.crux.core.server.rest.util.DateUtil;
+import org.cruxframework.crux.core.server.rest.util.HttpHeaderNames;
+
+/**
+ * HttpHeaders implementation that reads the headers straight from the {@link HttpServletRequest}. 
+ * Each piece of information (the headers map, accepted media types and languages, content type 
+ * and cookies) is only parsed when it is first requested, so requests that do not use them do 
+ * not pay for their parsing.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class HttpServletRequestHeaders extends HttpHeaders
+{
+	private final HttpServletRequest request;
+	private boolean requestHeadersExtracted;
+	private boolean acceptableMediaTypesExtracted;
+	private boolean acceptableLanguagesExtracted;
+	private boolean mediaTypeExtracted;
+	private boolean languageExtracted;
+	private boolean cookiesExtracted;
+
+	public HttpServletRequestHeaders(HttpServletRequest request)
+	{
+		this.request = request;
+	}
+
+	@Override
+	public MultivaluedMap<String, String> getRequestHeaders()
+	{
+		if (!requestHeadersExtracted)
+		{
+			super.setRequestHeaders(HttpUtil.extractRequestHeaders(request));
+			requestHeadersExtracted = true;
+		}
+		return super.getRequestHeaders();
+	}
+
+	@Override
+	public void setRequestHeaders(MultivaluedMap<String, String> requestHeaders)
+	{
+		super.setRequestHeaders(requestHeaders);
+		requestHeadersExtracted = true;
+	}
+
+	@Override
+	public List<MediaType> getAcceptableMediaTypes()
+	{
+		if (!acceptableMediaTypesExtracted)
+		{
+			try
+			{
+				super.setAcceptableMediaTypes(HttpUtil.extractAccepts(request));
+			}
+			catch (RuntimeException e)
+			{
+				throw new BadRequestException("Invalid Accept header: " + request.getHeader(HttpHeaderNames.ACCEPT), "Failed to parse request.", e);
+			}
+			acceptableMediaTypesExtracted = true;
+		}
+		return super.getAcceptableMediaTypes();
+	}
+
+	@Override
+	public void setAcceptableMediaTypes(List<MediaType> acceptableMediaTypes)
+	{
+		super.setAcceptableMediaTypes(acceptableMediaTypes);
+		acceptableMediaTypesExtracted = true;
+	}
+
+	@Override
+	public List<Locale> getAcceptableLanguages()
+	{
+		if (!acceptableLanguagesExtracted)
+		{
+			try
+			{
+				super.setAcceptableLanguages(HttpUtil.extractLanguages(request));
+			}
+			catch (RuntimeException e)
+			{
+				throw new BadRequestException("Invalid Accept-Language header: " + request.getHeader(HttpHeaderNames.ACCEPT_LANGUAGE), "Failed to parse request.", e);
+			}
+			acceptableLanguagesExtracted = true;
+		}
+		return super.getAcceptableLanguages();
+	}
+
+	@Override
+	public void setAcceptableLanguages(List<String> acceptableLanguages)
+	{
+		super.setAcceptableLanguages(acceptableLanguages);
+		acceptableLanguagesExtracted = true;
+	}
+
+	@Override
+	public MediaType getMediaType()
+	{
+		if (!mediaTypeExtracted)
+		{
+			String contentType = request.getContentType();
+			if (contentType != null)
+			{
+				try
+				{
+					super.setMediaType(MediaType.valueOf(contentType));
+				}
+				catch (RuntimeException e)
+				{
+					throw new BadRequestException("Invalid Content-Type header: " + contentType, "Failed to parse request.", e);
+				}
+			}
+			mediaTypeExtracted = true;
+		}
+		return super.getMediaType();
+	}
+
+	@Override
+	public void setMediaType(MediaType mediaType)
+	{
+		super.setMediaType(mediaType);
+		mediaTypeExtracted = true;
+	}
+
+	@Override
+	public Locale getLanguage()
+	{
+		if (!languageExtracted)
+		{
+			super.setLanguage(request.getHeader(HttpHeaderNames.CONTENT_LANGUAGE));
+			languageExtracted = true;
+		}
+		return super.getLanguage();
+	}
+
+	@Override
+	public void setLanguage(String language)
+	{
+		super.setLanguage(language);
+		languageExtracted = true;
+	}
+
+	@Override
+	public Map<String, Cookie> getCookies()
+	{
+		if (!cookiesExtracted)
+		{
+			super.setCookies(HttpUtil.extractCookies(request));
+			cookiesExtracted = true;
+		}
+		return super.getCookies();
+	}
+
+	@Override
+	public void setCookies(Map<String, Cookie> cookies)
+	{
+		super.setCookies(cookies);
+		cookiesExtracted = true;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<String> getRequestHeader(String name)
+	{
+		if (requestHeadersExtracted)
+		{
+			return super.getRequestHeader(name);
+		}
+		Enumeration<String> headerValues = request.getHeaders(name);
+		if (headerValues == null || !headerValues.hasMoreElements())
+		{
+			return null;
+		}
+		List<String> result = new ArrayList<String>(1);
+		while (headerValues.hasMoreElements())
+		{
+			result.add(headerValues.nextElement());
+		}
+		return result;
+	}
+
+	@Override
+	public String getHeaderString(String name)
+	{
+		if (requestHeadersExtracted)
+		{
+			return super.getHeaderString(name);
+		}
+		return request.getHeader(name);
+	}
+
+	@Override
+	public Date getDate()
+	{
+		String date = getHeaderString(HttpHeaderNames.DATE);
+		if (date == null)
+			return null;
+		return DateUtil.parseDate(date);
+	}
+
+	@Override
+	public int getLength()
+	{
+		String cl = getHeaderString(HttpHeaderNames.CONTENT_LENGTH);
+		if (cl == null)
+			return -1;
+		return Integer.parseInt(cl);
+	}
+}
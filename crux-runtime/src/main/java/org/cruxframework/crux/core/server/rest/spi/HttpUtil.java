@@ -21,10 +21,9 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Enumeration;
@@ -37,20 +36,24 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang.StringUtils;
+import org.cruxframework.crux.core.server.metrics.EndpointMetrics;
+import org.cruxframework.crux.core.server.metrics.EndpointMetrics.Phase;
+import org.cruxframework.crux.core.server.rest.compression.ContentEncoder;
+import org.cruxframework.crux.core.server.rest.compression.ResponseCompression;
 import org.cruxframework.crux.core.server.rest.core.Cookie;
 import org.cruxframework.crux.core.server.rest.core.EntityTag;
 import org.cruxframework.crux.core.server.rest.core.Headers;
 import org.cruxframework.crux.core.server.rest.core.HttpHeaders;
 import org.cruxframework.crux.core.server.rest.core.MediaType;
 import org.cruxframework.crux.core.server.rest.core.MultivaluedMap;
-import org.cruxframework.crux.core.server.rest.core.UriBuilder;
 import org.cruxframework.crux.core.server.rest.core.dispatch.CacheInfo;
 import org.cruxframework.crux.core.server.rest.core.dispatch.ConditionalResponse;
 import org.cruxframework.crux.core.server.rest.core.dispatch.ResourceMethod.MethodReturn;
+import org.cruxframework.crux.core.server.rest.state.ResponseCache;
+import org.cruxframework.crux.core.server.rest.state.ResponseCache.CachedResponse;
 import org.cruxframework.crux.core.server.rest.util.HttpHeaderNames;
 import org.cruxframework.crux.core.server.rest.util.HttpResponseCodes;
 import org.cruxframework.crux.core.server.rest.util.MediaTypeHelper;
-import org.cruxframework.crux.core.server.rest.util.PathHelper;
 import org.cruxframework.crux.core.server.rest.util.header.MediaTypeHeaderParser;
 
 /**
@@ -60,6 +63,14 @@ import org.cruxframework.crux.core.server.rest.util.header.MediaTypeHeaderParser
  */
 public class HttpUtil
 {
+	private static final int STREAMING_BUFFER_SIZE = 8192;
+
+	/**
+	 * Create an UriInfo for the given request. The request URI is only parsed when the information 
+	 * is first requested from the UriInfo.
+	 * @param request
+	 * @return
+	 */
 	public static UriInfo extractUriInfo(HttpServletRequest request)
 	{
 		String servletPrefix = request.getServletPath();
@@ -72,63 +83,18 @@ public class HttpUtil
 			}
 			contextPath += servletPrefix;
 		}
-		URI absolutePath = null;
-		try
-		{
-			URL absolute = new URL(request.getRequestURL().toString());
-
-			UriBuilder builder = new UriBuilder();
-			builder.scheme(absolute.getProtocol());
-			builder.host(absolute.getHost());
-			builder.port(absolute.getPort());
-			builder.path(absolute.getPath());
-			builder.replaceQuery(null);
-			absolutePath = builder.build();
-		}
-		catch (MalformedURLException e)
-		{
-			throw new RuntimeException(e);
-		}
-
-		String path = PathHelper.getEncodedPathInfo(absolutePath.getRawPath(), contextPath);
-		URI relativeURI = UriBuilder.fromUri(path).replaceQuery(request.getQueryString()).build();
-
-		URI baseURI = absolutePath;
-		if (!path.trim().equals(""))
-		{
-			String tmpContextPath = contextPath;
-			if (!tmpContextPath.endsWith("/"))
-			{
-				tmpContextPath += "/";
-			}
-			baseURI = UriBuilder.fromUri(absolutePath).replacePath(tmpContextPath).build();
-		}
-		UriInfo uriInfo = new UriInfo(baseURI, relativeURI);
-		return uriInfo;
+		return new UriInfo(request, contextPath);
 	}
 
+	/**
+	 * Create the HttpHeaders for the given request. Headers are only parsed when they are first 
+	 * requested from the HttpHeaders.
+	 * @param request
+	 * @return
+	 */
 	public static HttpHeaders extractHttpHeaders(HttpServletRequest request)
 	{
-		HttpHeaders headers = new HttpHeaders();
-
-		MultivaluedMap<String, String> requestHeaders = extractRequestHeaders(request);
-		headers.setRequestHeaders(requestHeaders);
-		List<MediaType> acceptableMediaTypes = extractAccepts(requestHeaders);
-		List<String> acceptableLanguages = extractLanguages(requestHeaders);
-		headers.setAcceptableMediaTypes(acceptableMediaTypes);
-		headers.setAcceptableLanguages(acceptableLanguages);
-		headers.setLanguage(requestHeaders.getFirst(HttpHeaderNames.CONTENT_LANGUAGE));
-
-		String contentType = request.getContentType();
-		if (contentType != null)
-		{
-			headers.setMediaType(MediaType.valueOf(contentType));
-		}
-
-		Map<String, Cookie> cookies = extractCookies(request);
-		headers.setCookies(cookies);
-		return headers;
-
+		return new HttpServletRequestHeaders(request);
 	}
 
 	public static String wGet(String targetURL, String urlParameters, String method, String locale)
@@ -216,6 +182,42 @@ public class HttpUtil
 		return acceptableMediaTypes;
 	}
 
+	@SuppressWarnings("unchecked")
+	public static List<MediaType> extractAccepts(HttpServletRequest request)
+	{
+		List<MediaType> acceptableMediaTypes = new ArrayList<MediaType>();
+		Enumeration<String> accepts = request.getHeaders(HttpHeaderNames.ACCEPT);
+		if (accepts == null)
+		{
+			return acceptableMediaTypes;
+		}
+		while (accepts.hasMoreElements())
+		{
+			acceptableMediaTypes.addAll(MediaTypeHelper.parseHeader(accepts.nextElement()));
+		}
+		return acceptableMediaTypes;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static List<String> extractLanguages(HttpServletRequest request)
+	{
+		List<String> acceptable = new ArrayList<String>();
+		Enumeration<String> accepts = request.getHeaders(HttpHeaderNames.ACCEPT_LANGUAGE);
+		if (accepts == null)
+		{
+			return acceptable;
+		}
+		while (accepts.hasMoreElements())
+		{
+			String[] splits = accepts.nextElement().split(",");
+			for (String split : splits)
+			{
+				acceptable.add(split.trim());
+			}
+		}
+		return acceptable;
+	}
+
 	public static List<String> extractLanguages(MultivaluedMap<String, String> requestHeaders)
 	{
 		List<String> acceptable = new ArrayList<String>();
@@ -270,11 +272,14 @@ public class HttpUtil
 		return (acceptEncoding.indexOf("gzip") != -1);
 	}
 
-	private static final int UNCOMPRESSED_BYTE_SIZE_LIMIT = 256;
+	public static boolean exceedsUncompressedContentLengthLimit(String content)
+	{
+		return (content != null) && ResponseCompression.isCompressible(content.length());
+	}
 
-	private static boolean exceedsUncompressedContentLengthLimit(String content)
+	public static boolean exceedsUncompressedContentLengthLimit(byte[] content)
 	{
-		return (content != null) && ((content.length() * 2) > UNCOMPRESSED_BYTE_SIZE_LIMIT);
+		return (content != null) && ResponseCompression.isCompressible(content.length);
 	}
 
 	public static boolean shouldGzipResponseContent(HttpRequest request, String responseContent)
@@ -310,13 +315,95 @@ public class HttpUtil
 				writeCacheHeaders(response, cacheInfo, methodReturn.getEtag(), methodReturn.getDateModified(), methodReturn.isEtagGenerationEnabled());
 			}
 
-			String responseContent = methodReturn.getReturn();
-			byte[] responseBytes = getResponseBytes(request, response, responseContent);
-			response.setContentLength(responseBytes.length);
-			response.setStatus(HttpServletResponse.SC_OK);
-			outputHeaders.putSingle(HttpHeaderNames.CONTENT_TYPE, new MediaType("application", "json", "UTF-8"));
-			response.getOutputStream().write(responseBytes);
+			EndpointMetrics metrics = methodReturn.getMetrics();
+			if (methodReturn.isStreamingReturn())
+			{
+				long time = (metrics != null) ? System.nanoTime() : 0;
+				writeStreamingResponse(request, response, methodReturn);
+				if (metrics != null)
+				{
+					metrics.record(Phase.WRITE, time);
+				}
+			}
+			else
+			{
+				byte[] responseBytes;
+				if (methodReturn.getCachedResponse() != null)
+				{
+					responseBytes = getResponseBytes(request, response, methodReturn, methodReturn.getCachedResponse());
+				}
+				else if (methodReturn.getSerializedReturn() != null)
+				{
+					responseBytes = getResponseBytes(request, response, methodReturn, methodReturn.getSerializedReturn());
+				}
+				else
+				{
+					responseBytes = getResponseBytes(request, response, methodReturn, methodReturn.getReturn());
+				}
+				response.setContentLength(responseBytes.length);
+				response.setStatus(HttpServletResponse.SC_OK);
+				outputHeaders.putSingle(HttpHeaderNames.CONTENT_TYPE, new MediaType("application", "json", "UTF-8"));
+				long time = (metrics != null) ? System.nanoTime() : 0;
+				response.getOutputStream().write(responseBytes);
+				if (metrics != null)
+				{
+					metrics.record(Phase.WRITE, time);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Serializes the method return directly to the response output stream. The first bytes are kept 
+	 * on a {@link DeferredOutputStream}, so if the serialization fails before it is full, the response 
+	 * is reset and the error can still be sent. Larger responses are sent without a Content-Length 
+	 * header and the container falls back to chunked transfer.
+	 * @param request
+	 * @param response
+	 * @param methodReturn
+	 * @throws IOException
+	 */
+	private static void writeStreamingResponse(HttpRequest request, HttpResponse response, MethodReturn methodReturn) throws IOException
+	{
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.getOutputHeaders().putSingle(HttpHeaderNames.CONTENT_TYPE, new MediaType("application", "json", "UTF-8"));
+		ContentEncoder encoder = ResponseCompression.getEncoder(request);
+		if (encoder != null)
+		{
+			response.getOutputHeaders().putSingle(HttpHeaderNames.CONTENT_ENCODING, encoder.getEncoding());
+		}
+
+		DeferredOutputStream deferredOutputStream = new DeferredOutputStream(response, STREAMING_BUFFER_SIZE);
+		OutputStream out = deferredOutputStream;
+		OutputStream encoderOutputStream = null;
+		try
+		{
+			if (encoder != null)
+			{
+				encoderOutputStream = encoder.createOutputStream(out);
+				out = encoderOutputStream;
+			}
+			try
+			{
+				methodReturn.writeReturn(out);
+			}
+			finally
+			{
+				if (encoderOutputStream != null)
+				{
+					encoderOutputStream.close();
+				}
+			}
 		}
+		catch (Exception e)
+		{
+			if (!deferredOutputStream.isCommitted())
+			{
+				response.reset();
+			}
+			throw new InternalServerErrorException("Error serializing rest service return", "Error processing requested service", e); 
+		}
+		deferredOutputStream.close();
 	}
 
 	private static void writeConditionalResponse(HttpResponse response, MethodReturn methodReturn, HttpServletResponseHeaders outputHeaders)
@@ -393,41 +480,90 @@ public class HttpUtil
 		outputHeaders.putSingle(HttpHeaderNames.CACHE_CONTROL, cacheControl);
 	}
 
-	private static byte[] getResponseBytes(HttpRequest request, HttpResponse response, String responseContent) throws UnsupportedEncodingException, IOException
+	private static byte[] getResponseBytes(HttpRequest request, HttpResponse response, MethodReturn methodReturn, String responseContent) throws UnsupportedEncodingException
 	{
-		boolean gzipResponse = shouldGzipResponseContent(request, responseContent);
 		byte[] responseBytes = (responseContent!=null?responseContent.getBytes("UTF-8"):new byte[0]);
-		if (gzipResponse)
+		return getResponseBytes(request, response, methodReturn, responseBytes);
+	}
+
+	private static byte[] getResponseBytes(HttpRequest request, HttpResponse response, MethodReturn methodReturn, byte[] responseBytes)
+	{
+		ContentEncoder encoder = ResponseCompression.getEncoder(request);
+		if (encoder != null && ResponseCompression.isCompressible(responseBytes.length))
 		{
-			ByteArrayOutputStream output = null;
-			GZIPOutputStream gzipOutputStream = null;
 			try
 			{
-				output = new ByteArrayOutputStream(responseBytes.length);
-				gzipOutputStream = new GZIPOutputStream(output);
-				gzipOutputStream.write(responseBytes);
-				gzipOutputStream.finish();
-				gzipOutputStream.flush();
-				response.getOutputHeaders().putSingle(HttpHeaderNames.CONTENT_ENCODING, "gzip");
-				responseBytes = output.toByteArray();
+				String etag = null;
+				String key = null;
+				CacheInfo cacheInfo = methodReturn.getCacheInfo();
+				if (cacheInfo != null && cacheInfo.isSharedCacheAllowed() && methodReturn.getEtag() != null)
+				{
+					etag = methodReturn.getEtag().getValue();
+					key = ResponseCache.getResponseKey(request);
+				}
+				EndpointMetrics metrics = methodReturn.getMetrics();
+				long time = (metrics != null) ? System.nanoTime() : 0;
+				responseBytes = ResponseCompression.encode(encoder, responseBytes, key, etag);
+				if (metrics != null)
+				{
+					metrics.record(Phase.GZIP, time);
+				}
+				response.getOutputHeaders().putSingle(HttpHeaderNames.CONTENT_ENCODING, encoder.getEncoding());
 			}
 			catch (IOException e)
 			{
 				throw new InternalServerErrorException("Unable to compress response", "Error processing requested service", e);
 			}
-			finally
+		}
+		return responseBytes;
+	}
+
+	private static byte[] getResponseBytes(HttpRequest request, HttpResponse response, MethodReturn methodReturn, CachedResponse cachedResponse)
+	{
+		ContentEncoder encoder = ResponseCompression.getEncoder(request);
+		if (encoder != null && cachedResponse.getCompressedContent() != null && encoder.getEncoding().equals("gzip"))
+		{
+			response.getOutputHeaders().putSingle(HttpHeaderNames.CONTENT_ENCODING, "gzip");
+			return cachedResponse.getCompressedContent();
+		}
+		return getResponseBytes(request, response, methodReturn, cachedResponse.getContent());
+	}
+
+	/**
+	 * Compress the given content using gzip.
+	 * @param content
+	 * @return
+	 * @throws IOException
+	 */
+	public static byte[] compress(byte[] content) throws IOException
+	{
+		ContentEncoder encoder = ResponseCompression.getGzipEncoder();
+		if (encoder != null)
+		{
+			return encoder.encode(content, 0, content.length);
+		}
+		ByteArrayOutputStream output = null;
+		GZIPOutputStream gzipOutputStream = null;
+		try
+		{
+			output = new ByteArrayOutputStream(content.length);
+			gzipOutputStream = new GZIPOutputStream(output);
+			gzipOutputStream.write(content);
+			gzipOutputStream.finish();
+			gzipOutputStream.flush();
+			return output.toByteArray();
+		}
+		finally
+		{
+			if (null != gzipOutputStream)
 			{
-				if (null != gzipOutputStream)
-				{
-					gzipOutputStream.close();
-				}
-				if (null != output)
-				{
-					output.close();
-				}
+				gzipOutputStream.close();
+			}
+			if (null != output)
+			{
+				output.close();
 			}
 		}
-		return responseBytes;
 	}
 
 	public static void sendError(HttpServletResponse response, int status, String message) throws IOException
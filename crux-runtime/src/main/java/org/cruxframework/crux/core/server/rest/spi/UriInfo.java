@@ -17,10 +17,12 @@ package org.cruxframework.crux.core.server.rest.spi;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
+import java.net.URL;
 import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.servlet.http.HttpServletRequest;
 
 import org.cruxframework.crux.core.server.rest.core.MultivaluedMap;
 import org.cruxframework.crux.core.server.rest.core.MultivaluedMapImpl;
@@ -28,9 +30,15 @@ import org.cruxframework.crux.core.server.rest.core.UriBuilder;
 import org.cruxframework.crux.core.server.rest.core.registry.PathSegment;
 import org.cruxframework.crux.core.server.rest.util.Encode;
 import org.cruxframework.crux.core.server.rest.util.NotImplementedYetException;
+import org.cruxframework.crux.core.server.rest.util.PathHelper;
 
 /**
  * UriInfo implementation with some added extra methods to help process requests
+ * <p/>
+ * When created from a {@link HttpServletRequest}, the request URI is parsed on demand. 
+ * Path and query parameters are read straight from the servlet request when they are 
+ * already properly encoded. The full URIs (base, absolute and request URI) are 
+ * only built if they are requested.
  *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
@@ -56,34 +64,140 @@ public class UriInfo
    private List<String> encodedMatchedUris;
    private List<Object> ancestors;
 
+   private HttpServletRequest request;
+   private String contextPath;
+   private boolean urisExtracted;
+   private boolean queryExtracted;
+
 
    public UriInfo(URI base, URI relative)
    {
-      String b = base.toString();
-      if (!b.endsWith("/")) b += "/";
-      String r = relative.getRawPath();
-      if (r.startsWith("/"))
-      {
-         encodedPath =  r;
-         path = relative.getPath();
-      }
-      else
+      initialize(base, relative);
+      extractMatchingPath(getPathSegments(false));
+   }
+
+   /**
+    * Create an UriInfo that reads its information from the servlet request on demand.
+    *
+    * @param request
+    * @param contextPath context path, including the servlet path
+    */
+   public UriInfo(HttpServletRequest request, String contextPath)
+   {
+      this.request = request;
+      this.contextPath = contextPath;
+   }
+
+   private void initialize(URI base, URI relative)
+   {
+      if (encodedPath == null)
       {
-         encodedPath = "/" + r;
-         path = "/" + relative.getPath();
+         String r = relative.getRawPath();
+         if (r.startsWith("/"))
+         {
+            encodedPath =  r;
+            path = relative.getPath();
+         }
+         else
+         {
+            encodedPath = "/" + r;
+            path = "/" + relative.getPath();
+         }
       }
       requestURI = UriBuilder.fromUri(base).path(relative.getRawPath()).replaceQuery(relative.getRawQuery()).build();
       baseURI = base;
-      encodedPathSegments = PathSegment.parseSegments(encodedPath, false);
-      this.pathSegments = new ArrayList<PathSegment>(encodedPathSegments.size());
-      for (PathSegment segment : encodedPathSegments)
+      if (!queryExtracted)
       {
-         pathSegments.add(new PathSegment(((PathSegment) segment).getOriginal(), true));
+         queryExtracted = true;
+         extractParameters(requestURI.getRawQuery());
       }
-      extractParameters(requestURI.getRawQuery());
-      extractMatchingPath(encodedPathSegments);
-
       absolutePath = UriBuilder.fromUri(requestURI).replaceQuery(null).build();
+      urisExtracted = true;
+   }
+
+   /**
+    * Build the base and relative URIs from the servlet request
+    */
+   private void initializeFromRequest()
+   {
+      try
+      {
+         URL absolute = new URL(request.getRequestURL().toString());
+
+         UriBuilder builder = new UriBuilder();
+         builder.scheme(absolute.getProtocol());
+         builder.host(absolute.getHost());
+         builder.port(absolute.getPort());
+         builder.path(absolute.getPath());
+         builder.replaceQuery(null);
+         URI absolutePath = builder.build();
+
+         String path = PathHelper.getEncodedPathInfo(absolutePath.getRawPath(), contextPath);
+         URI relativeURI = UriBuilder.fromUri(path).replaceQuery(request.getQueryString()).build();
+
+         URI baseURI = absolutePath;
+         if (!path.trim().equals(""))
+         {
+            String tmpContextPath = contextPath;
+            if (!tmpContextPath.endsWith("/"))
+            {
+               tmpContextPath += "/";
+            }
+            baseURI = UriBuilder.fromUri(absolutePath).replacePath(tmpContextPath).build();
+         }
+         initialize(baseURI, relativeURI);
+      }
+      catch (Exception e)
+      {
+         throw new BadRequestException("Invalid request URL: " + request.getRequestURL(), "Failed to parse request.", e);
+      }
+   }
+
+   private void ensureUris()
+   {
+      if (!urisExtracted && request != null)
+      {
+         initializeFromRequest();
+      }
+   }
+
+   /**
+    * When the request URI does not need any encoding, the path is taken straight from it. 
+    * Otherwise, the whole URI is parsed.
+    */
+   private void ensurePath()
+   {
+      if (encodedPath == null && request != null)
+      {
+         String requestPath = request.getRequestURI();
+         if (Encode.isEncodedPath(requestPath))
+         {
+            String r = PathHelper.getEncodedPathInfo(requestPath, contextPath);
+            encodedPath = r.startsWith("/") ? r : "/" + r;
+            path = (encodedPath.indexOf('%') < 0) ? encodedPath : URI.create(encodedPath).getPath();
+         }
+         else
+         {
+            initializeFromRequest();
+         }
+      }
+   }
+
+   private void ensureQueryParameters()
+   {
+      if (!queryExtracted && request != null)
+      {
+         String queryString = request.getQueryString();
+         if (queryString == null || Encode.isEncodedQueryString(queryString))
+         {
+            queryExtracted = true;
+            extractParameters(queryString);
+         }
+         else
+         {
+            initializeFromRequest();
+         }
+      }
    }
 
    /**
@@ -108,6 +222,11 @@ public class UriInfo
     */
    public String getMatchingPath()
    {
+      if (matchingPath == null)
+      {
+         ensurePath();
+         matchingPath = PathHelper.getMatchingPath(encodedPath);
+      }
       return matchingPath;
    }
 
@@ -119,59 +238,95 @@ public class UriInfo
     */
    public UriInfo relative(URI relative)
    {
-      return new UriInfo(baseURI, relative);
+      return new UriInfo(getBaseUri(), relative);
    }
 
    public String getPath()
    {
+      ensurePath();
       return path;
    }
 
    public String getPath(boolean decode)
    {
       if (decode) return getPath();
+      ensurePath();
       return encodedPath;
    }
 
    public List<PathSegment> getPathSegments()
    {
+      if (pathSegments == null)
+      {
+         List<PathSegment> encodedSegments = getPathSegments(false);
+         pathSegments = new ArrayList<PathSegment>(encodedSegments.size());
+         for (PathSegment segment : encodedSegments)
+         {
+            pathSegments.add(new PathSegment(segment.getOriginal(), true));
+         }
+      }
       return pathSegments;
    }
 
    public List<PathSegment> getPathSegments(boolean decode)
    {
       if (decode) return getPathSegments();
+      if (encodedPathSegments == null)
+      {
+         encodedPathSegments = PathSegment.parseSegments(getPath(false), false);
+      }
       return encodedPathSegments;
    }
 
    public URI getRequestUri()
    {
+      ensureUris();
       return requestURI;
    }
 
+   /**
+    * The request URI, as a string. When the servlet request URL and query string are already 
+    * properly encoded, it is taken straight from them, without building the full URIs.
+    */
+   public String getRequestUriString()
+   {
+      if (!urisExtracted && request != null)
+      {
+         String queryString = request.getQueryString();
+         if (Encode.isEncodedPath(request.getRequestURI()) && (queryString == null || Encode.isEncodedQueryString(queryString)))
+         {
+            StringBuffer url = request.getRequestURL();
+            return (queryString == null) ? url.toString() : url.append('?').append(queryString).toString();
+         }
+      }
+      return getRequestUri().toString();
+   }
+
    public UriBuilder getRequestUriBuilder()
    {
-      return UriBuilder.fromUri(requestURI);
+      return UriBuilder.fromUri(getRequestUri());
    }
 
    public URI getAbsolutePath()
    {
+      ensureUris();
       return absolutePath;
    }
 
    public UriBuilder getAbsolutePathBuilder()
    {
-      return UriBuilder.fromUri(absolutePath);
+      return UriBuilder.fromUri(getAbsolutePath());
    }
 
    public URI getBaseUri()
    {
+      ensureUris();
       return baseURI;
    }
 
    public UriBuilder getBaseUriBuilder()
    {
-      return UriBuilder.fromUri(baseURI);
+      return UriBuilder.fromUri(getBaseUri());
    }
 
    public MultivaluedMap<String, String> getPathParameters()
@@ -225,6 +380,7 @@ public class UriInfo
 
    public MultivaluedMap<String, String> getQueryParameters()
    {
+      ensureQueryParameters();
       if (queryParameters == null)
       {
          queryParameters = new MultivaluedMapImpl<String, String>();
@@ -234,6 +390,7 @@ public class UriInfo
 
    protected MultivaluedMap<String, String> getEncodedQueryParameters()
    {
+      ensureQueryParameters();
       if (encodedQueryParameters == null)
       {
          this.encodedQueryParameters = new MultivaluedMapImpl<String, String>();
@@ -350,7 +507,7 @@ public class UriInfo
 
    public URI resolve(URI uri)
    {
-      return baseURI.resolve(uri);
+      return getBaseUri().resolve(uri);
    }
 
    public URI resolve(URI baseUri, URI uri)
@@ -360,7 +517,7 @@ public class UriInfo
 
    public URI relativize(URI uri)
    {
-      return baseURI.relativize(uri);
+      return getBaseUri().relativize(uri);
    }
 
    public URI relativize(URI from, URI uri)
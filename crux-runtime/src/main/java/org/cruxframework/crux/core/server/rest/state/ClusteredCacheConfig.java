@@ -54,4 +54,7 @@ public interface ClusteredCacheConfig
 
 	@DefaultServerMessage("2")
 	String replCount();
+
+	@DefaultServerMessage("0")
+	String refreshLeaseTime();
 }
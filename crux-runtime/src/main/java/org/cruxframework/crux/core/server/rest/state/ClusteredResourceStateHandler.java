@@ -16,13 +16,22 @@
 package org.cruxframework.crux.core.server.rest.state;
 
 import java.io.Serializable;
+import java.lang.reflect.Field;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.jgroups.JChannel;
 import org.jgroups.blocks.Cache;
+import org.jgroups.blocks.MethodCall;
 import org.jgroups.blocks.ReplCache;
+import org.jgroups.blocks.RequestOptions;
+import org.jgroups.blocks.ResponseMode;
+import org.jgroups.blocks.RpcDispatcher;
+import org.jgroups.blocks.locking.LockService;
 
 /**
  * It is a very basic implementation of ResourceStateHandler interface for clustered environments.
@@ -43,14 +52,36 @@ import org.jgroups.blocks.ReplCache;
  * l1MaxNumberOfEntries - The max number of entries for L2 Cache
  * clusterName - The name of the cluster to be used by this cache
  * replCount - The number of nodes in cluster where the information will be replicated 
+ * refreshLeaseTime - When rest request coalescing is enabled, the time, in milliseconds, that a node has to 
+ *                    refresh an expired resource before other nodes try to refresh it too. Zero disables it. 
+ *                    It requires a locking protocol (like CENTRAL_LOCK) on the JGroups channel config.
+ * 
+ * The keys stored on the local node are kept on a {@link UriPrefixIndex}, so 
+ * {@link #removeSegments(String...)} does not need to scan the whole cache. The matching 
+ * keys are removed from the cluster with one single message.
+ * 
+ * The refresh lease is stored on the expired entry itself. It is read and written while holding a 
+ * cluster lock for the entry key, obtained from a JGroups {@link LockService}, so only one node takes 
+ * each refresh. If the channel has no locking protocol, refreshes are not coordinated and each node 
+ * refreshes the expired resources it reads.
  * 
  * @author Thiago da Rosa de Bustamante
  */
-public class ClusteredResourceStateHandler implements ResourceStateHandler
+public class ClusteredResourceStateHandler implements CoordinatedResourceStateHandler
 {
 	private static final Log logger = LogFactory.getLog(ClusteredResourceStateHandler.class);
+	/**
+	 * Identifier of the ReplCache._removeMany(Set) method on the ReplCache dispatcher
+	 */
+	private static final short REMOVE_MANY = 5;
+	private static final String REFRESH_LOCK_PREFIX = "__crux_refresh_";
 	private ReplCache<String, CacheEntry> cache;
+	private IndexedCache l2Cache;
+	private RpcDispatcher dispatcher;
+	private LockService lockService;
+	private long rpcTimeout;
 	private short replCount;
+	private long refreshLeaseTime;
 
 	public static class CacheEntry implements ResourceState, Serializable
 	{
@@ -58,12 +89,19 @@ public class ClusteredResourceStateHandler implements ResourceStateHandler
 		private final long dateModifiedMilis;
 		private final long expires;
 		private final String etag;
+		private final long refreshUntil;
 
 		private CacheEntry(long dateModifiedMilis, long expires, String etag)
+		{
+			this(dateModifiedMilis, expires, etag, 0);
+		}
+
+		private CacheEntry(long dateModifiedMilis, long expires, String etag, long refreshUntil)
 		{
 			this.dateModifiedMilis = dateModifiedMilis;
 			this.expires = expires;
 			this.etag = etag;
+			this.refreshUntil = refreshUntil;
 		}
 
 		@Override
@@ -83,6 +121,50 @@ public class ClusteredResourceStateHandler implements ResourceStateHandler
 		{
 			return System.currentTimeMillis() >= expires;
 		}
+
+		/**
+		 * Check if some node holds the lease to refresh this expired entry
+		 * @return
+		 */
+		public boolean isRefreshing()
+		{
+			return System.currentTimeMillis() < refreshUntil;
+		}
+	}
+
+	/**
+	 * L2 cache that keeps the local keys indexed by prefix. Entries discarded by the cache 
+	 * reaper are not reported here, so the index can contain some keys that are no longer 
+	 * cached. They are discarded when the index grows too much. 
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	private static class IndexedCache extends Cache<String, ReplCache.Value<CacheEntry>>
+	{
+		private final UriPrefixIndex index = new UriPrefixIndex();
+
+		@Override
+		public ReplCache.Value<CacheEntry> put(String key, ReplCache.Value<CacheEntry> val, long caching_time)
+		{
+			ReplCache.Value<CacheEntry> result = super.put(key, val, caching_time);
+			index.add(key);
+			if (index.size() > 2 * (getSize() + 1024))
+			{
+				index.rebuild(getInternalMap().keySet());
+			}
+			return result;
+		}
+
+		@Override
+		public ReplCache.Value<CacheEntry> remove(String key)
+		{
+			ReplCache.Value<CacheEntry> result = super.remove(key);
+			index.remove(key);
+			if (getInternalMap().containsKey(key))
+			{
+				index.add(key);
+			}
+			return result;
+		}
 	}
 
 	/**
@@ -96,8 +178,12 @@ public class ClusteredResourceStateHandler implements ResourceStateHandler
 
 			replCount = Short.parseShort(config.replCount());
 			cache = new ReplCache<String, CacheEntry>(config.channelConfigPropertyFile(), config.clusterName());
+			l2Cache = new IndexedCache();
+			cache.setL2Cache(l2Cache);
 			cache.setMigrateData(true);
-			cache.setCallTimeout(Integer.parseInt(config.rpcTimeout()));
+			rpcTimeout = Integer.parseInt(config.rpcTimeout());
+			refreshLeaseTime = Long.parseLong(config.refreshLeaseTime());
+			cache.setCallTimeout(rpcTimeout);
 			cache.setCachingTime(Integer.parseInt(config.cachingTime()));
 			cache.setDefaultReplicationCount(replCount);
 			if (Boolean.parseBoolean(config.useL1Cache()))
@@ -128,6 +214,11 @@ public class ClusteredResourceStateHandler implements ResourceStateHandler
 			}
 
 			cache.start();
+			dispatcher = getDispatcher(cache);
+			if (refreshLeaseTime > 0)
+			{
+				lockService = getLockService(cache);
+			}
 		}
 		catch (Exception e)
 		{
@@ -150,6 +241,55 @@ public class ClusteredResourceStateHandler implements ResourceStateHandler
 		return cache.get(uri);
 	}
 
+	@Override
+	public boolean acquireRefresh(String uri)
+	{
+		if (lockService == null)
+		{
+			return true;
+		}
+		Lock lock = lockService.getLock(REFRESH_LOCK_PREFIX + uri);
+		try
+		{
+			if (!lock.tryLock(rpcTimeout, TimeUnit.MILLISECONDS))
+			{
+				// another node is taking the refresh right now
+				return false;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return true;
+		}
+		try
+		{
+			CacheEntry cacheEntry = cache.get(uri);
+			if (cacheEntry == null)
+			{
+				return true;
+			}
+			if (!cacheEntry.isExpired() || cacheEntry.isRefreshing())
+			{
+				return false;
+			}
+			CacheEntry leased = new CacheEntry(cacheEntry.dateModifiedMilis, cacheEntry.expires, cacheEntry.etag, 
+												System.currentTimeMillis() + refreshLeaseTime);
+			cache.put(uri, leased, replCount, cacheEntry.expires, true);
+			return true;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long getRefreshLeaseTime()
+	{
+		return (lockService != null) ? refreshLeaseTime : 0;
+	}
+
 	@Override
 	public void remove(String uri)
 	{
@@ -159,17 +299,22 @@ public class ClusteredResourceStateHandler implements ResourceStateHandler
 	@Override
 	public void removeSegments(String... baseURIs)
 	{
-		Set<String> keys = cache.getL2Cache().getInternalMap().keySet();
-		Set<String> keysToRemove = new HashSet<String>();
-		for (String key : keys)
+		Set<String> keysToRemove = l2Cache.index.getUrisWithPrefix(baseURIs);
+		if (keysToRemove.isEmpty())
 		{
-			for (String baseURI: baseURIs)
+			return;
+		}
+		if (dispatcher != null)
+		{
+			try
 			{
-				if (key.startsWith(baseURI))
-				{
-					keysToRemove.add(key);
-					break;
-				}
+				MethodCall call = new MethodCall(REMOVE_MANY, new HashSet<String>(keysToRemove));
+				dispatcher.callRemoteMethods(null, call, new RequestOptions(ResponseMode.GET_ALL, rpcTimeout));
+				return;
+			}
+			catch (Exception e)
+			{
+				logger.error("Error sending batched remove to the cluster. Removing keys one by one.", e);
 			}
 		}
 		for (String key : keysToRemove)
@@ -183,4 +328,48 @@ public class ClusteredResourceStateHandler implements ResourceStateHandler
 	{
 		cache.clear();
 	}
+
+	/**
+	 * ReplCache does not expose its dispatcher, required to send many removals on one message. 
+	 * If it is not available, removals are sent one by one.
+	 * @param cache
+	 * @return
+	 */
+	private static RpcDispatcher getDispatcher(ReplCache<String, CacheEntry> cache)
+	{
+		try
+		{
+			Field field = ReplCache.class.getDeclaredField("disp");
+			field.setAccessible(true);
+			return (RpcDispatcher) field.get(cache);
+		}
+		catch (Exception e)
+		{
+			logger.info("ReplCache dispatcher is not accessible. Batched removals are disabled.");
+			return null;
+		}
+	}
+
+	/**
+	 * Create the lock service used to take the refresh of expired resources, on the ReplCache 
+	 * channel. If the channel is not accessible or has no locking protocol, refreshes are not 
+	 * coordinated.
+	 * @param cache
+	 * @return
+	 */
+	private static LockService getLockService(ReplCache<String, CacheEntry> cache)
+	{
+		try
+		{
+			Field field = ReplCache.class.getDeclaredField("ch");
+			field.setAccessible(true);
+			return new LockService((JChannel) field.get(cache));
+		}
+		catch (Exception e)
+		{
+			logger.warn("Can not create a lock service on the ReplCache channel. Add a locking protocol (like CENTRAL_LOCK) " 
+					+ "to the channel config to coordinate the refresh of expired resources. Refreshes are not coordinated.", e);
+			return null;
+		}
+	}
 }
\ No newline at end of file
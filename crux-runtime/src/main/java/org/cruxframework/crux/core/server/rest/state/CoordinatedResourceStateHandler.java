@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.state;
+
+/**
+ * A {@link ResourceStateHandler} shared by many nodes, that can choose which node refreshes 
+ * an expired resource. The other nodes wait for the refreshed state instead of invoking 
+ * the resource method too.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public interface CoordinatedResourceStateHandler extends ResourceStateHandler
+{
+	/**
+	 * Try to take the refresh of the expired state of the given rest URI. 
+	 * @param uri
+	 * @return true if the caller must refresh the resource, false if it was already refreshed 
+	 * or if another node is refreshing it.
+	 */
+	boolean acquireRefresh(String uri);
+
+	/**
+	 * Max time, in milliseconds, that a node has to refresh a resource after taking its refresh. 
+	 * Other nodes do not wait longer than that for the refreshed state.
+	 * @return the lease time or a non positive value if refreshes are not coordinated, and 
+	 * {@link #acquireRefresh(String)} always returns true.
+	 */
+	long getRefreshLeaseTime();
+}
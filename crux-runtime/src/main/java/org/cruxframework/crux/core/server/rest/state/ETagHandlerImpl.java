@@ -15,6 +15,8 @@
  */
 package org.cruxframework.crux.core.server.rest.state;
 
+import java.util.zip.Checksum;
+
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -26,10 +28,10 @@ import org.cruxframework.crux.core.server.rest.util.Crc32c;
  * 
  * @author @author Thiago da Rosa de Bustamante
  */
-public class ETagHandlerImpl implements ETagHandler
+public class ETagHandlerImpl implements StreamingETagHandler
 {
 	private static final Log logger = LogFactory.getLog(ETagHandlerImpl.class);
-
+	private static final Class<? extends Checksum> jdkChecksumClass = getJdkChecksumClass();
 	
 	@Override
     public String generateEtag(UriInfo uri, String content)
@@ -41,7 +43,7 @@ public class ETagHandlerImpl implements ETagHandler
 		
         try
         {
-        	Crc32c hash = new Crc32c();
+        	Checksum hash = createChecksum();
         	byte[] bytes = content.getBytes("UTF-8");
         	hash.update(bytes, 0, bytes.length);
         	String hexString = Long.toHexString(hash.getValue());
@@ -53,4 +55,75 @@ public class ETagHandlerImpl implements ETagHandler
         }
 		return null;
     }
-}
\ No newline at end of file
+
+	@Override
+	public ETagDigest createDigest(UriInfo uriInfo)
+	{
+		return new ChecksumDigest(createChecksum());
+	}
+
+	/**
+	 * Create the CRC32C checksum. The JDK implementation (java 9 or later) is preferred when 
+	 * present, as the JVM replaces it by hardware instructions. Both produce the same values.
+	 * @return
+	 */
+	private static Checksum createChecksum()
+	{
+		if (jdkChecksumClass != null)
+		{
+			try
+			{
+				return jdkChecksumClass.newInstance();
+			}
+			catch (Exception e)
+			{
+				logger.error("Error creating CRC32c checksum. Using default implementation...", e);
+			}
+		}
+		return new Crc32c();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Class<? extends Checksum> getJdkChecksumClass()
+	{
+		try
+		{
+			return (Class<? extends Checksum>) Class.forName("java.util.zip.CRC32C");
+		}
+		catch (ClassNotFoundException e)
+		{
+			return null;
+		}
+	}
+	
+	private static class ChecksumDigest implements ETagDigest
+	{
+		private final Checksum checksum;
+		private boolean empty = true;
+
+		public ChecksumDigest(Checksum checksum)
+		{
+			this.checksum = checksum;
+		}
+
+		@Override
+		public void update(int b)
+		{
+			checksum.update(b);
+			empty = false;
+		}
+
+		@Override
+		public void update(byte[] b, int off, int len)
+		{
+			checksum.update(b, off, len);
+			empty = empty && len == 0;
+		}
+
+		@Override
+		public String getEtag()
+		{
+			return empty ? null : Long.toHexString(checksum.getValue());
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.state;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.cruxframework.crux.core.server.rest.state.StreamingETagHandler.ETagDigest;
+
+/**
+ * An output stream that updates an {@link ETagDigest} with all bytes written to the 
+ * underlying stream.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class ETagOutputStream extends FilterOutputStream
+{
+	private final ETagDigest digest;
+
+	public ETagOutputStream(OutputStream out, ETagDigest digest)
+	{
+		super(out);
+		this.digest = digest;
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		out.write(b);
+		digest.update(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		out.write(b, off, len);
+		digest.update(b, off, len);
+	}
+
+	public String getEtag()
+	{
+		return digest.getEtag();
+	}
+}
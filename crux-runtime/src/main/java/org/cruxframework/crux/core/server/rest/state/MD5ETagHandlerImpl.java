@@ -15,8 +15,8 @@
  */
 package org.cruxframework.crux.core.server.rest.state;
 
-import java.math.BigInteger;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -28,9 +28,10 @@ import org.cruxframework.crux.core.server.rest.spi.UriInfo;
  * 
  * @author @author Thiago da Rosa de Bustamante
  */
-public class MD5ETagHandlerImpl implements ETagHandler
+public class MD5ETagHandlerImpl implements StreamingETagHandler
 {
 	private static final Log logger = LogFactory.getLog(MD5ETagHandlerImpl.class);
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
 	@Override
     public String generateEtag(UriInfo uri, String content)
@@ -44,10 +45,7 @@ public class MD5ETagHandlerImpl implements ETagHandler
         {
 			byte[] bytes = content.getBytes("UTF-8");
 	        MessageDigest digest = MessageDigest.getInstance("MD5");
-	        byte[] hashBytes = digest.digest(bytes);
-	        BigInteger bigInt = new BigInteger(1, hashBytes);
-	        String hashtext = bigInt.toString(16);
-			return hashtext;
+			return toHexString(digest.digest(bytes));
         }
         catch (Exception e)
         {
@@ -55,4 +53,69 @@ public class MD5ETagHandlerImpl implements ETagHandler
         }
 		return null;
     }
-}
\ No newline at end of file
+
+	@Override
+	public ETagDigest createDigest(UriInfo uriInfo)
+	{
+		try
+		{
+			return new MD5Digest(MessageDigest.getInstance("MD5"));
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("Error generating etag with MD5 algorithm.", e);
+		}
+	}
+
+	/**
+	 * Hexadecimal representation of the hash, without leading zeros. 
+	 * @param hash
+	 * @return
+	 */
+	private static String toHexString(byte[] hash)
+	{
+		char[] chars = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++)
+		{
+			chars[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0x0F];
+			chars[i * 2 + 1] = HEX_DIGITS[hash[i] & 0x0F];
+		}
+		int start = 0;
+		while (start < chars.length - 1 && chars[start] == '0')
+		{
+			start++;
+		}
+		return new String(chars, start, chars.length - start);
+	}
+	
+	private static class MD5Digest implements ETagDigest
+	{
+		private final MessageDigest digest;
+		private boolean empty = true;
+
+		public MD5Digest(MessageDigest digest)
+		{
+			this.digest = digest;
+		}
+
+		@Override
+		public void update(int b)
+		{
+			digest.update((byte) b);
+			empty = false;
+		}
+
+		@Override
+		public void update(byte[] b, int off, int len)
+		{
+			digest.update(b, off, len);
+			empty = empty && len == 0;
+		}
+
+		@Override
+		public String getEtag()
+		{
+			return empty ? null : toHexString(digest.digest());
+		}
+	}
+}
@@ -15,16 +15,25 @@
  */
 package org.cruxframework.crux.core.server.rest.state;
 
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.cruxframework.crux.core.utils.StripedCounter;
 
 /**
  * It is a very basic implementation for ResourceStateHandler interface that is
- * designed to run only on NO CUSTERED environment. It uses a simple LRUMap to
- * keep the resource state into local machine's memory.
+ * designed to run only on NO CUSTERED environment. It keeps the resource state 
+ * into local machine's memory.
+ * 
+ * Entries are kept in a concurrent map, so reads never block. When the number of 
+ * entries exceeds the limit, an approximate LRU policy (CLOCK, or second chance) 
+ * is used to choose the entries to discard: entries read since the last sweep are 
+ * kept, while expired entries are always discarded first.
  * 
  * To configure the cache, you can create a file named
  * NoClusteredCacheConfig.properties and configure the property
@@ -85,60 +94,267 @@ public class NoClusteredResourceStateHandler implements ResourceStateHandler
 		}
 	}
 
-	private Map<String, CacheEntry> cache;
+	private static class Node
+	{
+		private final String key;
+		private volatile CacheEntry entry;
+		private volatile boolean referenced;
+		private volatile boolean removed;
+
+		private Node(String key, CacheEntry entry)
+		{
+			this.key = key;
+			this.entry = entry;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Node> cache;
+	private final UriPrefixIndex index = new UriPrefixIndex();
+	private final ConcurrentLinkedQueue<Node> clock = new ConcurrentLinkedQueue<Node>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicInteger removedNodes = new AtomicInteger();
+	private final Lock evictionLock = new ReentrantLock();
+	private final StripedCounter hitCount = new StripedCounter();
+	private final StripedCounter missCount = new StripedCounter();
+	private final StripedCounter evictionCount = new StripedCounter();
+	private final int maxCacheItems;
 
 	/**
 	 * 
 	 */
 	public NoClusteredResourceStateHandler()
 	{
-		int maxCacheItems = Integer.parseInt(NoClusteredCacheConfigurationFactory.getConfigurations().maxNumberOfEntries());
-		cache = Collections.synchronizedMap(new LRUMap<String, CacheEntry>(maxCacheItems));
+		maxCacheItems = Integer.parseInt(NoClusteredCacheConfigurationFactory.getConfigurations().maxNumberOfEntries());
+		cache = new ConcurrentHashMap<String, Node>(Math.min(maxCacheItems, 1024), 0.75f, Runtime.getRuntime().availableProcessors() * 4);
 	}
 
 	@Override
 	public ResourceState add(String uri, long dateModified, long expires, String etag)
 	{
 		CacheEntry cacheEntry = new CacheEntry(dateModified, expires, etag);
-		cache.put(uri, cacheEntry);
-		return cacheEntry;
+		while (true)
+		{
+			Node node = cache.get(uri);
+			if (node == null)
+			{
+				Node newNode = new Node(uri, cacheEntry);
+				node = cache.putIfAbsent(uri, newNode);
+				if (node == null)
+				{
+					index.add(uri);
+					clock.offer(newNode);
+					if (size.incrementAndGet() > maxCacheItems)
+					{
+						evict();
+					}
+					return cacheEntry;
+				}
+			}
+			node.entry = cacheEntry;
+			node.referenced = true;
+			// If the node was removed concurrently, the new state was written to a detached 
+			// node. Try again, inserting a new node.
+			if (cache.get(uri) == node)
+			{
+				return cacheEntry;
+			}
+		}
 	}
 
 	@Override
 	public ResourceState get(String uri)
 	{
-		return cache.get(uri);
+		Node node = cache.get(uri);
+		if (node == null)
+		{
+			missCount.increment();
+			return null;
+		}
+		if (!node.referenced)
+		{
+			node.referenced = true;
+		}
+		hitCount.increment();
+		return node.entry;
 	}
 
 	@Override
 	public void remove(String uri)
 	{
-		cache.remove(uri);
+		Node node = cache.remove(uri);
+		unindex(uri);
+		if (node != null)
+		{
+			node.removed = true;
+			size.decrementAndGet();
+			if (removedNodes.incrementAndGet() > maxCacheItems)
+			{
+				purgeRemovedNodes();
+			}
+		}
 	}
 
 	@Override
 	public void clear()
 	{
-		cache.clear();
+		evictionLock.lock();
+		try
+		{
+			// Nodes are removed one by one, so the size stays consistent with the nodes 
+			// concurrently added
+			for (Node node : cache.values())
+			{
+				if (cache.remove(node.key, node))
+				{
+					node.removed = true;
+					unindex(node.key);
+					size.decrementAndGet();
+					removedNodes.incrementAndGet();
+				}
+			}
+			discardRemovedNodes();
+		}
+		finally
+		{
+			evictionLock.unlock();
+		}
 	}
 
 	@Override
 	public void removeSegments(String... baseURIs)
 	{
-		Set<String> keys = cache.keySet();
+		for (String key : index.getUrisWithPrefix(baseURIs))
+		{
+			remove(key);
+		}
+	}
 
-		Iterator<String> iterator = keys.iterator();
-		while (iterator.hasNext())
+	/**
+	 * Number of entries currently in the cache
+	 * @return
+	 */
+	public int size()
+	{
+		return size.get();
+	}
+
+	/**
+	 * Number of calls to {@link #get(String)} that found an entry
+	 * @return
+	 */
+	public long getHitCount()
+	{
+		return hitCount.get();
+	}
+
+	/**
+	 * Number of calls to {@link #get(String)} that found no entry
+	 * @return
+	 */
+	public long getMissCount()
+	{
+		return missCount.get();
+	}
+
+	/**
+	 * Number of entries discarded to respect the max number of entries
+	 * @return
+	 */
+	public long getEvictionCount()
+	{
+		return evictionCount.get();
+	}
+
+	/**
+	 * Discard entries until the cache size is under the limit. Only one thread sweeps 
+	 * the cache at a time. Other writers do not wait for it.
+	 */
+	private void evict()
+	{
+		if (!evictionLock.tryLock())
+		{
+			return;
+		}
+		try
 		{
-			String key = iterator.next();
-			for (String baseURI : baseURIs)
+			while (size.get() > maxCacheItems)
 			{
-				if (key.startsWith(baseURI))
+				Node node = clock.poll();
+				if (node == null)
 				{
-					iterator.remove();
 					break;
 				}
+				if (node.removed)
+				{
+					removedNodes.decrementAndGet();
+				}
+				else if (node.referenced && !node.entry.isExpired())
+				{
+					node.referenced = false;
+					clock.offer(node);
+				}
+				else if (cache.remove(node.key, node))
+				{
+					node.removed = true;
+					unindex(node.key);
+					size.decrementAndGet();
+					evictionCount.increment();
+				}
+			}
+		}
+		finally
+		{
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Remove the key from the prefix index. If a concurrent {@link #add(String, long, long, String)} 
+	 * inserted the key again, it is put back, so no cached key is ever missing from the index.
+	 * @param key
+	 */
+	private void unindex(String key)
+	{
+		index.remove(key);
+		if (cache.containsKey(key))
+		{
+			index.add(key);
+		}
+	}
+
+	/**
+	 * Nodes removed from the map are only discarded from the clock when the sweep reaches them. 
+	 * Clean them when they are too many, to avoid clock growing without limits. 
+	 */
+	private void purgeRemovedNodes()
+	{
+		if (!evictionLock.tryLock())
+		{
+			return;
+		}
+		try
+		{
+			discardRemovedNodes();
+		}
+		finally
+		{
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Discard the removed nodes from the clock. Must be called holding the eviction lock.
+	 */
+	private void discardRemovedNodes()
+	{
+		Iterator<Node> iterator = clock.iterator();
+		while (iterator.hasNext())
+		{
+			if (iterator.next().removed)
+			{
+				iterator.remove();
+				removedNodes.decrementAndGet();
 			}
 		}
 	}
-}
\ No newline at end of file
+}
@@ -31,8 +31,11 @@ public class ResourceStateConfig
 	private static final Log logger = LogFactory.getLog(ResourceStateConfig.class);
 	private static final Lock handlerLock = new ReentrantLock();
 	private static final Lock enabledLock = new ReentrantLock();
+	private static final Lock responseCacheLock = new ReentrantLock();
 	private static ResourceStateHandler resourceStateHandler  = null;
 	private static Boolean enabled;
+	private static ResponseCache responseCache = null;
+	private static volatile boolean responseCacheInitialized = false;
 
 	public static boolean isResourceStateCacheEnabled()
 	{
@@ -74,4 +77,33 @@ public class ResourceStateConfig
 		}
 		return resourceStateHandler;
 	}
+
+	/**
+	 * Retrieve the cache for response contents.
+	 * @return the response cache or null if it is not enabled.
+	 */
+	public static ResponseCache getResponseCache()
+	{
+		if (responseCacheInitialized) return responseCache;
+		
+		try
+		{
+			responseCacheLock.lock();
+			if (responseCacheInitialized) return responseCache;
+			if (Boolean.parseBoolean(ResponseCacheConfigurationFactory.getConfigurations().enabled()))
+			{
+				responseCache = new ResponseCache();
+			}
+		}
+		catch (Exception e)
+		{
+			logger.error("Error initializing responseCache.", e);
+		}
+		finally
+		{
+			responseCacheInitialized = true;
+			responseCacheLock.unlock();
+		}
+		return responseCache;
+	}
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.state;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cruxframework.crux.core.server.rest.spi.HttpRequest;
+import org.cruxframework.crux.core.server.rest.spi.HttpUtil;
+import org.cruxframework.crux.core.server.rest.util.HttpHeaderNames;
+import org.cruxframework.crux.core.utils.ClockCache;
+
+/**
+ * Keeps the serialized content of cacheable GET resources, so they can be served 
+ * without invoking the resource method while their state is still valid. 
+ * 
+ * Each entry is bound to the eTag of the resource state that was active when it was 
+ * stored. Entries are only served while the {@link ResourceStateHandler} still reports 
+ * the same eTag for the resource, so any invalidation made through the handler (including 
+ * the ones made by other nodes, when using {@link ClusteredResourceStateHandler}) is 
+ * also applied to this cache. The cache is shared by all users, so only responses of 
+ * resources declared with public cache control are stored.
+ * 
+ * The cache is bounded by the total number of bytes stored. Entries are discarded by a 
+ * {@link ClockCache}, so reads take no lock.
+ * 
+ * To configure the cache, you can create a file named ResponseCacheConfig.properties and 
+ * configure the following properties:
+ * 
+ * enabled - To enable or disable the response cache
+ * maxSizeInBytes - The max number of bytes kept by the cache
+ * maxEntrySizeInBytes - Responses larger than this are never cached
+ * storeCompressedContent - If true, a gzipped version of each response is also kept
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class ResponseCache
+{
+	private static final Log logger = LogFactory.getLog(ResponseCache.class);
+	private static final int ENTRY_OVERHEAD = 64;
+
+	private final ClockCache<CachedResponse> entries;
+	private final long maxEntrySize;
+	private final boolean storeCompressedContent;
+	
+	public static class CachedResponse
+	{
+		private final String etag;
+		private final byte[] content;
+		private final byte[] compressedContent;
+		private final long size;
+
+		private CachedResponse(String key, String etag, byte[] content, byte[] compressedContent)
+		{
+			this.etag = etag;
+			this.content = content;
+			this.compressedContent = compressedContent;
+			this.size = ENTRY_OVERHEAD + (key.length() * 2) + content.length + (compressedContent != null ? compressedContent.length : 0);
+		}
+
+		public String getEtag()
+		{
+			return etag;
+		}
+
+		/**
+		 * The UTF-8 encoded response
+		 * @return
+		 */
+		public byte[] getContent()
+		{
+			return content;
+		}
+
+		/**
+		 * The gzipped response, or null if it was not stored.
+		 * @return
+		 */
+		public byte[] getCompressedContent()
+		{
+			return compressedContent;
+		}
+
+		public long getSize()
+		{
+			return size;
+		}
+	}
+
+	public ResponseCache()
+	{
+		ResponseCacheConfig config = ResponseCacheConfigurationFactory.getConfigurations();
+		this.entries = new ClockCache<CachedResponse>(Long.parseLong(config.maxSizeInBytes()));
+		this.maxEntrySize = Long.parseLong(config.maxEntrySizeInBytes());
+		this.storeCompressedContent = Boolean.parseBoolean(config.storeCompressedContent());
+	}
+
+	/**
+	 * The key used to store the response for the given request. Responses are kept per 
+	 * request URI and language.
+	 * @param request
+	 * @return
+	 */
+	public static String getResponseKey(HttpRequest request)
+	{
+		String key = request.getUri().getRequestUriString();
+		String language = request.getHttpHeaders().getHeaderString(HttpHeaderNames.ACCEPT_LANGUAGE);
+		return (language == null) ? key : key + "|" + language;
+	}
+
+	/**
+	 * Retrieve the response stored for the given key, if it was generated for the given eTag.
+	 * @param key
+	 * @param etag the current eTag of the resource
+	 * @return
+	 */
+	public CachedResponse get(String key, String etag)
+	{
+		if (etag == null)
+		{
+			return null;
+		}
+		CachedResponse response = entries.get(key);
+		if (response != null && !etag.equals(response.etag))
+		{
+			entries.remove(key, response);
+			response = null;
+		}
+		return response;
+	}
+
+	/**
+	 * Store a response for the given key.
+	 * @param key
+	 * @param etag the eTag of the resource state that matches this content
+	 * @param content the serialized response
+	 */
+	public void put(String key, String etag, String content)
+	{
+		if (etag == null || content == null)
+		{
+			return;
+		}
+		try
+		{
+			put(key, etag, content.getBytes("UTF-8"));
+		}
+		catch (IOException e)
+		{
+			logger.error("Error caching response for resource ["+key+"].", e);
+		}
+	}
+
+	/**
+	 * Store a response, already encoded as UTF-8, for the given key. The content array is 
+	 * retained by the cache and must not be modified after this call.
+	 * @param key
+	 * @param etag the eTag of the resource state that matches this content
+	 * @param bytes the serialized response
+	 */
+	public void put(String key, String etag, byte[] bytes)
+	{
+		if (etag == null || bytes == null)
+		{
+			return;
+		}
+		CachedResponse response;
+		try
+		{
+			if (bytes.length > maxEntrySize)
+			{
+				return;
+			}
+			byte[] compressed = null;
+			if (storeCompressedContent && HttpUtil.exceedsUncompressedContentLengthLimit(bytes))
+			{
+				compressed = HttpUtil.compress(bytes);
+			}
+			response = new CachedResponse(key, etag, bytes, compressed);
+		}
+		catch (IOException e)
+		{
+			logger.error("Error caching response for resource ["+key+"].", e);
+			return;
+		}
+		entries.put(key, response, response.size);
+	}
+
+	public void remove(String key)
+	{
+		entries.remove(key);
+	}
+
+	public void clear()
+	{
+		entries.clear();
+	}
+
+	/**
+	 * Total number of bytes currently stored
+	 * @return
+	 */
+	public long getSize()
+	{
+		return entries.getSize();
+	}
+}
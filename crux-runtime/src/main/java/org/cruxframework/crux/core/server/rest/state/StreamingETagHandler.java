@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.state;
+
+import org.cruxframework.crux.core.server.rest.spi.UriInfo;
+
+/**
+ * An {@link ETagHandler} able to compute the eTag incrementally, over the response bytes, 
+ * while the resource is being serialized. It avoids encoding the serialized content again 
+ * only to generate its eTag.
+ * 
+ * <p>For the same content, the eTag computed by the digest must be equal to the one returned by 
+ * {@link ETagHandler#generateEtag(UriInfo, String)} for its UTF-8 representation.</p>
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public interface StreamingETagHandler extends ETagHandler
+{
+	/**
+	 * Create a new digest to compute the eTag for a single resource. Digests are not thread safe.
+	 * @param uriInfo the resource URI
+	 * @return
+	 */
+	public ETagDigest createDigest(UriInfo uriInfo);
+	
+	/**
+	 * Incremental eTag computation.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	public static interface ETagDigest
+	{
+		void update(int b);
+		
+		void update(byte[] b, int off, int len);
+		
+		/**
+		 * The eTag for the content received so far, or null if no content was received.
+		 * @return
+		 */
+		String getEtag();
+	}
+}
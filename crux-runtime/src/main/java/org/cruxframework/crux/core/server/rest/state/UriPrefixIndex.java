@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.rest.state;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the URIs stored by a {@link ResourceStateHandler} sorted, so all the URIs that 
+ * start with a given base URI can be found without scanning the whole cache. As every URI 
+ * sharing a prefix is stored contiguously, a lookup costs O(log n + matches).
+ * 
+ * The index is safe for concurrent use and never blocks readers. {@link #rebuild(Collection)} 
+ * fills a new index aside and publishes it at once, so lookups never see a partial index.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class UriPrefixIndex
+{
+	private volatile Entries entries = new Entries();
+
+	private static class Entries
+	{
+		private final ConcurrentSkipListSet<String> uris = new ConcurrentSkipListSet<String>();
+		private final AtomicInteger size = new AtomicInteger();
+
+		private void add(String uri)
+		{
+			if (uris.add(uri))
+			{
+				size.incrementAndGet();
+			}
+		}
+
+		private void remove(String uri)
+		{
+			if (uris.remove(uri))
+			{
+				size.decrementAndGet();
+			}
+		}
+	}
+
+	public void add(String uri)
+	{
+		Entries current = entries;
+		current.add(uri);
+		if (entries != current)
+		{
+			// the index was replaced concurrently
+			entries.add(uri);
+		}
+	}
+
+	public void remove(String uri)
+	{
+		Entries current = entries;
+		current.remove(uri);
+		if (entries != current)
+		{
+			// the index was replaced concurrently
+			entries.remove(uri);
+		}
+	}
+
+	public void clear()
+	{
+		entries = new Entries();
+	}
+
+	/**
+	 * Number of indexed URIs. Unlike {@link ConcurrentSkipListSet#size()}, it does not 
+	 * traverse the index.
+	 * @return
+	 */
+	public int size()
+	{
+		return entries.size.get();
+	}
+
+	/**
+	 * Replace the indexed URIs by the given ones. The new index is filled before it replaces 
+	 * the current one. URIs added to the current index while the new one is filled are kept, 
+	 * if they are still contained in the given collection.
+	 * @param uris the URIs to index. It can be a live view of the cache keys and its contains 
+	 * method should be cheap.
+	 */
+	public void rebuild(Collection<String> uris)
+	{
+		Entries previous = entries;
+		Entries rebuilt = new Entries();
+		for (String uri : uris)
+		{
+			rebuilt.add(uri);
+		}
+		entries = rebuilt;
+		for (String uri : previous.uris)
+		{
+			if (!rebuilt.uris.contains(uri) && uris.contains(uri))
+			{
+				rebuilt.add(uri);
+			}
+		}
+	}
+
+	/**
+	 * Retrieve all indexed URIs that start with one of the baseURIs provided
+	 * @param baseURIs
+	 * @return
+	 */
+	public Set<String> getUrisWithPrefix(String... baseURIs)
+	{
+		ConcurrentSkipListSet<String> uris = entries.uris;
+		Set<String> result = new HashSet<String>();
+		for (String baseURI : baseURIs)
+		{
+			for (String uri : uris.tailSet(baseURI))
+			{
+				if (!uri.startsWith(baseURI))
+				{
+					break;
+				}
+				result.add(uri);
+			}
+		}
+		return result;
+	}
+}
@@ -83,6 +83,12 @@ public final class Crc32c implements Checksum {
   private static final long LONG_MASK = 0xffffffffL;
   private static final long BYTE_MASK = 0xff;
 
+  /**
+   * Tables for the slicing-by-8 algorithm. SLICING_TABLES[k][n] is the crc of the byte n
+   * followed by k zero bytes, so eight input bytes can be folded per iteration.
+   */
+  private static final int[][] SLICING_TABLES = createSlicingTables();
+
   private long crc;
 
   public Crc32c() {
@@ -108,11 +114,28 @@ public final class Crc32c implements Checksum {
    */
   @Override
   public void update(byte[] bArray, int off, int len) {
-    long newCrc = crc ^ LONG_MASK;
-    for (int i = off; i < off + len; i++) {
-      newCrc = updateByte(bArray[i], newCrc);
+    int[] t0 = SLICING_TABLES[0];
+    int[] t1 = SLICING_TABLES[1];
+    int[] t2 = SLICING_TABLES[2];
+    int[] t3 = SLICING_TABLES[3];
+    int[] t4 = SLICING_TABLES[4];
+    int[] t5 = SLICING_TABLES[5];
+    int[] t6 = SLICING_TABLES[6];
+    int[] t7 = SLICING_TABLES[7];
+    int newCrc = (int) (crc ^ LONG_MASK);
+    int i = off;
+    int end = off + len;
+    for (int limit = end - 7; i < limit; i += 8) {
+      int low = newCrc ^ ((bArray[i] & 0xff) | ((bArray[i + 1] & 0xff) << 8)
+          | ((bArray[i + 2] & 0xff) << 16) | ((bArray[i + 3] & 0xff) << 24));
+      newCrc = t7[low & 0xff] ^ t6[(low >>> 8) & 0xff] ^ t5[(low >>> 16) & 0xff] ^ t4[low >>> 24]
+          ^ t3[bArray[i + 4] & 0xff] ^ t2[bArray[i + 5] & 0xff] ^ t1[bArray[i + 6] & 0xff]
+          ^ t0[bArray[i + 7] & 0xff];
     }
-    crc = newCrc ^ LONG_MASK;
+    for (; i < end; i++) {
+      newCrc = t0[(newCrc ^ bArray[i]) & 0xff] ^ (newCrc >>> 8);
+    }
+    crc = (newCrc & LONG_MASK) ^ LONG_MASK;
   }
 
   /**
@@ -146,6 +169,20 @@ public final class Crc32c implements Checksum {
     crc = 0;
   }
 
+  private static int[][] createSlicingTables() {
+    int[][] tables = new int[8][256];
+    for (int n = 0; n < 256; n++) {
+      tables[0][n] = (int) CRC_TABLE[n];
+    }
+    for (int k = 1; k < 8; k++) {
+      for (int n = 0; n < 256; n++) {
+        int previous = tables[k - 1][n];
+        tables[k][n] = (previous >>> 8) ^ tables[0][previous & 0xff];
+      }
+    }
+    return tables;
+  }
+
   private long updateByte(byte newByte, long crc) {
     byte b = (byte) (newByte & BYTE_MASK);
     int index = (int) ((crc ^ b) & BYTE_MASK);
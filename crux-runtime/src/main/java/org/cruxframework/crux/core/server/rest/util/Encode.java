@@ -176,6 +176,53 @@ public class Encode
       return encodeValue(value, queryStringEncoding);
    }
 
+   /**
+    * Check if {@link #encodePath(String)} would return the value unchanged.
+    */
+   public static boolean isEncodedPath(String value)
+   {
+      return isEncoded(value, pathEncoding);
+   }
+
+   /**
+    * Check if {@link #encodeQueryString(String)} would return the value unchanged.
+    */
+   public static boolean isEncodedQueryString(String value)
+   {
+      return isEncoded(value, queryStringEncoding);
+   }
+
+   /**
+    * Conservative check: any character that could be changed by the encoding, including 
+    * non ASCII characters and incomplete escape sequences, makes it return false.
+    */
+   private static boolean isEncoded(String value, String[] encoding)
+   {
+      int length = value.length();
+      for (int i = 0; i < length; i++)
+      {
+         char c = value.charAt(i);
+         if (c == '%')
+         {
+            if (i + 2 >= length || !isHexDigit(value.charAt(i + 1)) || !isHexDigit(value.charAt(i + 2)))
+            {
+               return false;
+            }
+            i += 2;
+         }
+         else if (c >= encoding.length || encoding[c] != null)
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static boolean isHexDigit(char c)
+   {
+      return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+   }
+
    /**
     * Keep encoded values "%...", matrix parameters, template parameters, and '/' characters intact.
     */
@@ -15,6 +15,8 @@
  */
 package org.cruxframework.crux.core.server.rest.util;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.HashSet;
@@ -26,6 +28,9 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.annotate.JsonTypeInfo;
 import org.codehaus.jackson.map.DeserializationConfig;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -84,6 +89,30 @@ public class JsonUtil
 		return writer;
 	}
 	
+	/**
+	 * @param type the class type. 
+	 * @return the JsonFactory of the ObjectMapper used for the given type, so the generators created 
+	 * by it share the mapper features and codec.
+	 */
+	public static JsonFactory getJsonFactory(Type type)
+	{
+		return getObjectMapper(type).getJsonFactory();
+	}
+	
+	/**
+	 * @param factory the factory returned by {@link #getJsonFactory(Type)}.
+	 * @param out the target stream. 
+	 * @return a Jackson JsonGenerator that writes UTF-8 encoded JSON directly to the given stream. 
+	 * The stream is not closed by the generator.
+	 * @throws IOException 
+	 */
+	public static JsonGenerator createGenerator(JsonFactory factory, OutputStream out) throws IOException
+	{
+		JsonGenerator generator = factory.createJsonGenerator(out, JsonEncoding.UTF8);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		return generator;
+	}
+	
 	private static void setGlobalConfigurations(ObjectMapper mapper) 
 	{
 		mapper.configure(Feature.FAIL_ON_EMPTY_BEANS, false);
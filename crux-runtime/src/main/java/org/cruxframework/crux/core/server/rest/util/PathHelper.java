@@ -57,6 +57,36 @@ public class PathHelper
 
    }
 
+   /**
+    * Encoded path without the leading and trailing separators, as produced by joining 
+    * the segments returned by {@link org.cruxframework.crux.core.server.rest.core.registry.PathSegment#parseSegments(String, boolean)}
+    *
+    * @param encodedPath
+    * @return
+    */
+   public static String getMatchingPath(String encodedPath)
+   {
+      int start = encodedPath.startsWith("/") ? 1 : 0;
+      if (start == encodedPath.length())
+      {
+         return "/";
+      }
+      int end = encodedPath.length();
+      while (end > start && encodedPath.charAt(end - 1) == '/')
+      {
+         end--;
+      }
+      if (end == start)
+      {
+         return "";
+      }
+      if (start == 1)
+      {
+         return encodedPath.substring(0, end);
+      }
+      return "/" + encodedPath.substring(0, end);
+   }
+
    public static final char openCurlyReplacement = 6;
    public static final char closeCurlyReplacement = 7;
 
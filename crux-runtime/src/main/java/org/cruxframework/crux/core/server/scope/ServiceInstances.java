@@ -0,0 +1,244 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.scope;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.cruxframework.crux.core.server.scope.ServiceScope.Scope;
+
+/**
+ * Provides the instances of a service class, according to its {@link ServiceScope}. 
+ * There is only one ServiceInstances object for each service class, created when 
+ * the service is first registered.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public abstract class ServiceInstances
+{
+	private static final ConcurrentHashMap<Class<?>, ServiceInstances> instances = new ConcurrentHashMap<Class<?>, ServiceInstances>();
+
+	protected final Class<?> serviceClass;
+	protected final Instantiator instantiator;
+
+	/**
+	 * Creates new service instances 
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	public static interface Instantiator
+	{
+		Object newInstance(Class<?> serviceClass) throws Exception;
+	}
+
+	protected ServiceInstances(Class<?> serviceClass, Instantiator instantiator)
+	{
+		this.serviceClass = serviceClass;
+		this.instantiator = instantiator;
+	}
+
+	/**
+	 * Retrieve an instance to handle the current request. 
+	 * @return
+	 * @throws Exception 
+	 */
+	public abstract Object get() throws Exception;
+
+	/**
+	 * Inform that the instance is not used by the current request anymore.
+	 * @param instance
+	 */
+	public abstract void release(Object instance);
+
+	public abstract Scope getScope();
+
+	public boolean isRequestScoped()
+	{
+		return Scope.REQUEST.equals(getScope());
+	}
+
+	/**
+	 * Retrieve the ServiceInstances for the given class, creating it if this is the first call 
+	 * for the class.
+	 * @param serviceClass
+	 * @param instantiator used to create the service instances. Only used on the first call for a class.
+	 * @return
+	 */
+	public static ServiceInstances register(Class<?> serviceClass, Instantiator instantiator)
+	{
+		ServiceInstances result = instances.get(serviceClass);
+		if (result == null)
+		{
+			result = create(serviceClass, instantiator);
+			ServiceInstances existing = instances.putIfAbsent(serviceClass, result);
+			if (existing != null)
+			{
+				result = existing;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Retrieve the ServiceInstances for the given class
+	 * @param serviceClass
+	 * @return the ServiceInstances or null if the class was not registered
+	 */
+	public static ServiceInstances get(Class<?> serviceClass)
+	{
+		return instances.get(serviceClass);
+	}
+
+	/**
+	 * Release an instance obtained from any registered service class.
+	 * @param instance
+	 */
+	public static void releaseInstance(Object instance)
+	{
+		if (instance != null)
+		{
+			ServiceInstances serviceInstances = instances.get(instance.getClass());
+			if (serviceInstances != null)
+			{
+				serviceInstances.release(instance);
+			}
+		}
+	}
+
+	private static ServiceInstances create(Class<?> serviceClass, Instantiator instantiator)
+	{
+		ServiceScope serviceScope = serviceClass.getAnnotation(ServiceScope.class);
+		Scope scope = (serviceScope == null ? Scope.REQUEST : serviceScope.value());
+		switch (scope)
+		{
+			case SINGLETON:
+				return new SingletonInstances(serviceClass, instantiator);
+			case POOLED:
+				int poolSize = serviceScope.poolSize();
+				if (poolSize <= 0)
+				{
+					poolSize = Runtime.getRuntime().availableProcessors() * 2;
+				}
+				return new PooledInstances(serviceClass, instantiator, poolSize);
+			default:
+				return new RequestInstances(serviceClass, instantiator);
+		}
+	}
+
+	private static class RequestInstances extends ServiceInstances
+	{
+		private RequestInstances(Class<?> serviceClass, Instantiator instantiator)
+		{
+			super(serviceClass, instantiator);
+		}
+
+		@Override
+		public Object get() throws Exception
+		{
+			return instantiator.newInstance(serviceClass);
+		}
+
+		@Override
+		public void release(Object instance)
+		{
+		}
+
+		@Override
+		public Scope getScope()
+		{
+			return Scope.REQUEST;
+		}
+	}
+
+	private static class SingletonInstances extends ServiceInstances
+	{
+		private final Lock lock = new ReentrantLock();
+		private volatile Object instance;
+
+		private SingletonInstances(Class<?> serviceClass, Instantiator instantiator)
+		{
+			super(serviceClass, instantiator);
+		}
+
+		@Override
+		public Object get() throws Exception
+		{
+			if (instance == null)
+			{
+				lock.lock();
+				try
+				{
+					if (instance == null)
+					{
+						instance = instantiator.newInstance(serviceClass);
+					}
+				}
+				finally
+				{
+					lock.unlock();
+				}
+			}
+			return instance;
+		}
+
+		@Override
+		public void release(Object instance)
+		{
+		}
+
+		@Override
+		public Scope getScope()
+		{
+			return Scope.SINGLETON;
+		}
+	}
+
+	private static class PooledInstances extends ServiceInstances
+	{
+		private final BlockingQueue<Object> pool;
+
+		private PooledInstances(Class<?> serviceClass, Instantiator instantiator, int poolSize)
+		{
+			super(serviceClass, instantiator);
+			this.pool = new ArrayBlockingQueue<Object>(poolSize);
+		}
+
+		@Override
+		public Object get() throws Exception
+		{
+			Object instance = pool.poll();
+			if (instance == null)
+			{
+				instance = instantiator.newInstance(serviceClass);
+			}
+			return instance;
+		}
+
+		@Override
+		public void release(Object instance)
+		{
+			pool.offer(instance);
+		}
+
+		@Override
+		public Scope getScope()
+		{
+			return Scope.POOLED;
+		}
+	}
+}
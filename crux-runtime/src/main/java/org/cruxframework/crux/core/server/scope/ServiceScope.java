@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.server.scope;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines how instances of a REST or RPC service class are created and reused. 
+ * Services without this annotation use the {@link Scope#REQUEST} scope.
+ * 
+ * Services using {@link Scope#SINGLETON} or {@link Scope#POOLED} scopes do not receive 
+ * the request objects through the *Aware interfaces. They must read them from the 
+ * thread bound contexts ({@link org.cruxframework.crux.core.server.rest.core.HttpRequestContext} 
+ * for REST services and {@link org.cruxframework.crux.core.server.dispatch.RequestContext} for RPC services).
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ServiceScope
+{
+	/**
+	 * The scope of the service instances
+	 * @return
+	 */
+	Scope value() default Scope.REQUEST;
+	
+	/**
+	 * Max number of idle instances kept by {@link Scope#POOLED} services. If not informed, 
+	 * twice the number of available processors is used.
+	 * @return
+	 */
+	int poolSize() default 0;
+	
+	public static enum Scope
+	{
+		/**
+		 * A new instance is created for each request.
+		 */
+		REQUEST,
+		/**
+		 * One single instance serves all requests concurrently. It must be thread safe.
+		 */
+		SINGLETON,
+		/**
+		 * Instances are reused, but each one serves only one request at a time.
+		 */
+		POOLED
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.shared.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format used to send several encoded RPC calls on a single request. The batch body is a 
+ * sequence of fields, each one written as <code>&lt;length&gt;:&lt;content&gt;</code>, where length 
+ * is the number of characters of the content. Requests carry two fields for each call (the 
+ * synchronizer token, possibly empty, and the RPC payload) and responses carry one field for 
+ * each call (the encoded response, or an empty field if the call failed unexpectedly). 
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class RpcBatch
+{
+	/**
+	 * Header that identifies a batch request. Its value is the number of calls on the batch.
+	 */
+	public static final String BATCH_HEADER = "X-Crux-Rpc-Batch";
+
+	private RpcBatch()
+	{
+	}
+	
+	/**
+	 * Append a field to the batch body.
+	 * @param body
+	 * @param value
+	 * @return
+	 */
+	public static StringBuilder appendField(StringBuilder body, String value)
+	{
+		if (value == null)
+		{
+			value = "";
+		}
+		return body.append(value.length()).append(':').append(value);
+	}
+
+	/**
+	 * Split a batch body into its fields.
+	 * @param body
+	 * @return
+	 * @throws IllegalArgumentException if the body is not a valid batch
+	 */
+	public static List<String> readFields(String body) throws IllegalArgumentException
+	{
+		List<String> fields = new ArrayList<String>();
+		int pos = 0;
+		int length = body.length();
+		while (pos < length)
+		{
+			int separator = body.indexOf(':', pos);
+			if (separator <= pos)
+			{
+				throw new IllegalArgumentException("Invalid RPC batch: missing field length at position " + pos);
+			}
+			int fieldLength;
+			try
+			{
+				fieldLength = Integer.parseInt(body.substring(pos, separator));
+			}
+			catch (NumberFormatException e)
+			{
+				throw new IllegalArgumentException("Invalid RPC batch: invalid field length at position " + pos);
+			}
+			int end = separator + 1 + fieldLength;
+			if (fieldLength < 0 || end > length)
+			{
+				throw new IllegalArgumentException("Invalid RPC batch: truncated field at position " + pos);
+			}
+			fields.add(body.substring(separator + 1, end));
+			pos = end;
+		}
+		return fields;
+	}
+}
@@ -24,6 +24,7 @@ import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
@@ -33,6 +34,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 /**
  * @author Thiago da Rosa de Bustamante
@@ -651,6 +653,86 @@ public class ClassUtils
 		return null;
 	}
 	
+	/**
+	 * Returns the type of the value produced by the given {@link Future} type. The type argument 
+	 * of Future is resolved through the type hierarchy, so subtypes that declare their own type 
+	 * parameters (or none) are supported. If the given type is not a Future, returns null.
+	 * @param type
+	 * @return
+	 */
+	public static Type getFutureValueType(Type type)
+	{
+		if (!Future.class.isAssignableFrom(getRawType(type)))
+		{
+			return null;
+		}
+		Type valueType = getSuperTypeArgument(type, Future.class, 0);
+		if (valueType instanceof WildcardType)
+		{
+			Type[] upperBounds = ((WildcardType) valueType).getUpperBounds();
+			valueType = upperBounds.length > 0 ? upperBounds[0] : Object.class;
+		}
+		if (valueType == null || valueType instanceof TypeVariable<?>)
+		{
+			// Raw or unresolved usages produce values of the variable bound
+			return (valueType == null ? Object.class : getRawType(valueType));
+		}
+		return valueType;
+	}
+	
+	/**
+	 * Returns the type argument at the given index of a generic super type (class or interface), 
+	 * as seen from the given type. Type variables declared by the types along the hierarchy are 
+	 * replaced by the arguments provided by their subtypes.
+	 * @param type
+	 * @param superType
+	 * @param index
+	 * @return the type argument or null if the given type does not extend superType
+	 */
+	private static Type getSuperTypeArgument(Type type, Class<?> superType, int index)
+	{
+		Class<?> rawType = getRawType(type);
+		Type result = null;
+		if (rawType.equals(superType))
+		{
+			result = superType.getTypeParameters()[index];
+		}
+		else
+		{
+			List<Type> superTypes = new ArrayList<Type>();
+			for (Type genericInterface : rawType.getGenericInterfaces())
+			{
+				superTypes.add(genericInterface);
+			}
+			if (rawType.getGenericSuperclass() != null)
+			{
+				superTypes.add(rawType.getGenericSuperclass());
+			}
+			for (Type genericSuperType : superTypes)
+			{
+				if (superType.isAssignableFrom(getRawType(genericSuperType)))
+				{
+					result = getSuperTypeArgument(genericSuperType, superType, index);
+					break;
+				}
+			}
+		}
+		
+		if (result instanceof TypeVariable<?> && ((TypeVariable<?>) result).getGenericDeclaration().equals(rawType) 
+			&& type instanceof ParameterizedType)
+		{
+			TypeVariable<?>[] typeParameters = rawType.getTypeParameters();
+			for (int i = 0; i < typeParameters.length; i++)
+			{
+				if (typeParameters[i].equals(result))
+				{
+					return ((ParameterizedType) type).getActualTypeArguments()[i];
+				}
+			}
+		}
+		return result;
+	}
+	
 	public static boolean isCollection(Class<?> type)
 	{
 		return (type.isArray() || Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type));
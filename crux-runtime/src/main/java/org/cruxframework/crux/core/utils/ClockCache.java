@@ -0,0 +1,268 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.utils;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent cache bounded by the total weight (usually the number of bytes) of its values. 
+ * Reads do not take any lock: they only mark the entry as referenced. When the cache grows 
+ * over its limit, entries are discarded with the CLOCK (second chance) algorithm, by one single 
+ * thread at a time. Other writers do not wait for it, so the limit can be exceeded for a while.
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class ClockCache<V>
+{
+	private final ConcurrentHashMap<String, Node<V>> entries = new ConcurrentHashMap<String, Node<V>>(16, 0.75f, Runtime.getRuntime().availableProcessors() * 4);
+	private final ConcurrentLinkedQueue<Node<V>> clock = new ConcurrentLinkedQueue<Node<V>>();
+	private final AtomicLong size = new AtomicLong();
+	private final AtomicInteger removedNodes = new AtomicInteger();
+	private final Lock evictionLock = new ReentrantLock();
+	private final long maxSize;
+
+	private static class Node<V>
+	{
+		private final String key;
+		private final V value;
+		private final long weight;
+		private volatile boolean referenced;
+		private volatile boolean removed;
+
+		private Node(String key, V value, long weight)
+		{
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * @param maxSize the max total weight of the values
+	 */
+	public ClockCache(long maxSize)
+	{
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Retrieve the value stored for the given key.
+	 * @param key
+	 * @return the value or null if it is not cached
+	 */
+	public V get(String key)
+	{
+		Node<V> node = entries.get(key);
+		if (node == null)
+		{
+			return null;
+		}
+		if (!node.referenced)
+		{
+			node.referenced = true;
+		}
+		return node.value;
+	}
+
+	/**
+	 * Store a value, replacing the previous value for the key. Values heavier than the cache 
+	 * limit are not stored, and the previous value is removed.
+	 * @param key
+	 * @param value
+	 * @param weight
+	 */
+	public void put(String key, V value, long weight)
+	{
+		if (weight > maxSize)
+		{
+			remove(key);
+			return;
+		}
+		Node<V> node = new Node<V>(key, value, weight);
+		size.addAndGet(weight);
+		// The node is mapped before it is reachable by the eviction sweep
+		Node<V> previous = entries.put(key, node);
+		clock.offer(node);
+		if (previous != null)
+		{
+			discard(previous);
+		}
+		if (size.get() > maxSize)
+		{
+			evict();
+		}
+	}
+
+	/**
+	 * Remove the value stored for the given key.
+	 * @param key
+	 */
+	public void remove(String key)
+	{
+		Node<V> node = entries.remove(key);
+		if (node != null)
+		{
+			discard(node);
+		}
+	}
+
+	/**
+	 * Remove the value stored for the given key, only if it is the given value.
+	 * @param key
+	 * @param value
+	 */
+	public void remove(String key, V value)
+	{
+		Node<V> node = entries.get(key);
+		if (node != null && node.value == value && entries.remove(key, node))
+		{
+			discard(node);
+		}
+	}
+
+	public void clear()
+	{
+		evictionLock.lock();
+		try
+		{
+			// Nodes are removed one by one, so the size stays consistent with the nodes 
+			// concurrently added
+			for (Node<V> node : entries.values())
+			{
+				if (entries.remove(node.key, node))
+				{
+					discard(node);
+				}
+			}
+			discardRemovedNodes();
+		}
+		finally
+		{
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Total weight of the values currently stored.
+	 * @return
+	 */
+	public long getSize()
+	{
+		return size.get();
+	}
+
+	/**
+	 * Account for a node already removed from the map. 
+	 * @param node
+	 */
+	private void discard(Node<V> node)
+	{
+		node.removed = true;
+		size.addAndGet(-node.weight);
+		if (removedNodes.incrementAndGet() > entries.size() + 1024)
+		{
+			purgeRemovedNodes();
+		}
+	}
+
+	/**
+	 * Discard entries until the cache size is under the limit. Only one thread sweeps 
+	 * the cache at a time. Other writers do not wait for it.
+	 */
+	private void evict()
+	{
+		if (!evictionLock.tryLock())
+		{
+			return;
+		}
+		try
+		{
+			while (size.get() > maxSize)
+			{
+				Node<V> node = clock.poll();
+				if (node == null)
+				{
+					break;
+				}
+				if (node.removed)
+				{
+					removedNodes.decrementAndGet();
+				}
+				else if (node.referenced)
+				{
+					node.referenced = false;
+					clock.offer(node);
+				}
+				else if (entries.remove(node.key, node))
+				{
+					node.removed = true;
+					size.addAndGet(-node.weight);
+				}
+				else
+				{
+					// Replaced concurrently. The thread that replaced it accounts for it as removed
+					removedNodes.decrementAndGet();
+				}
+			}
+		}
+		finally
+		{
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Nodes removed from the map are only discarded from the clock when the sweep reaches them. 
+	 * Clean them when they are too many, to avoid clock growing without limits. 
+	 */
+	private void purgeRemovedNodes()
+	{
+		if (!evictionLock.tryLock())
+		{
+			return;
+		}
+		try
+		{
+			discardRemovedNodes();
+		}
+		finally
+		{
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Discard the removed nodes from the clock. Must be called holding the eviction lock.
+	 */
+	private void discardRemovedNodes()
+	{
+		Iterator<Node<V>> iterator = clock.iterator();
+		while (iterator.hasNext())
+		{
+			if (iterator.next().removed)
+			{
+				iterator.remove();
+				removedNodes.decrementAndGet();
+			}
+		}
+	}
+}
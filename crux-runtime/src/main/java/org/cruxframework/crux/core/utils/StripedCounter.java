@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.core.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter designed for high update rates from many threads. Updates are spread over 
+ * several cells, each one on its own cache line, chosen by the current thread. Reads 
+ * sum all the cells, so they are more expensive than updates.
+ * @author Thiago da Rosa de Bustamante
+ */
+public class StripedCounter
+{
+	private static final int PADDING = 8; // 8 longs = 64 bytes, a common cache line size
+	private final AtomicLongArray cells;
+	private final int mask;
+
+	public StripedCounter()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public StripedCounter(int stripes)
+	{
+		int n = 1;
+		while (n < stripes)
+		{
+			n <<= 1;
+		}
+		this.mask = n - 1;
+		this.cells = new AtomicLongArray(n * PADDING);
+	}
+
+	public void increment()
+	{
+		add(1);
+	}
+
+	public void add(long value)
+	{
+		cells.getAndAdd(index(), value);
+	}
+
+	/**
+	 * Current value of the counter. Concurrent updates may or may not be reflected.
+	 * @return
+	 */
+	public long get()
+	{
+		long sum = 0;
+		for (int i = 0; i <= mask; i++)
+		{
+			sum += cells.get(i * PADDING);
+		}
+		return sum;
+	}
+
+	public void reset()
+	{
+		for (int i = 0; i <= mask; i++)
+		{
+			cells.set(i * PADDING, 0);
+		}
+	}
+
+	private int index()
+	{
+		long id = Thread.currentThread().getId();
+		return (int)((id ^ (id >>> 16)) & mask) * PADDING;
+	}
+}
@@ -16,6 +16,7 @@
 package org.cruxframework.crux.scanner;
 
 import org.cruxframework.crux.scanner.Scanners.ScannerCallback;
+import org.cruxframework.crux.scanner.Scanners.ScannerEntryConsumer;
 import org.cruxframework.crux.scanner.archiveiterator.Filter;
 
 /**
@@ -28,6 +29,16 @@ public abstract class AbstractScanner
 	public abstract ScannerCallback getScannerCallback();
 	public abstract void resetScanner();
 	
+	/**
+	 * Scanners that need the content of the matched entries can return a consumer here. 
+	 * It receives the entry bytes straight from the archive stream, so each archive is 
+	 * read only once per scan.
+	 * @return the consumer or null, if the scanner only needs the matched URLs.
+	 */
+	public ScannerEntryConsumer getScannerEntryConsumer()
+	{
+		return null;
+	}
 	
 	protected void runScanner()
     {
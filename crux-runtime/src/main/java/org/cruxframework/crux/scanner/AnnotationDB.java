@@ -25,6 +25,7 @@ import java.net.URL;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -37,7 +38,9 @@ import javassist.bytecode.ParameterAnnotationsAttribute;
 import javassist.bytecode.annotation.Annotation;
 
 import org.cruxframework.crux.scanner.ScannerRegistration.ScannerMatch;
+import org.cruxframework.crux.scanner.Scanners.ParallelScannerEntryConsumer;
 import org.cruxframework.crux.scanner.Scanners.ScannerCallback;
+import org.cruxframework.crux.scanner.Scanners.ScannerEntryConsumer;
 import org.cruxframework.crux.scanner.archiveiterator.Filter;
 
 /**
@@ -63,6 +66,7 @@ public class AnnotationDB extends AbstractScanner implements Serializable
 	protected transient boolean scanMethodAnnotations = true;
 	protected transient boolean scanParameterAnnotations = true;
 	protected transient boolean scanFieldAnnotations = true;
+	private transient ClassHeaderReader classReader;
 
 	/**
 	 * returns a map keyed by the fully qualified string name of a annotation
@@ -173,6 +177,12 @@ public class AnnotationDB extends AbstractScanner implements Serializable
 		};
 	}
 
+	@Override
+	public ScannerEntryConsumer getScannerEntryConsumer()
+	{
+		return new IndexEntryConsumer(this);
+	}
+
 	/**
 	 * Scan a url that represents an "archive" this is a classpath directory or
 	 * jar file
@@ -192,6 +202,62 @@ public class AnnotationDB extends AbstractScanner implements Serializable
 		runScanner();
 	}
 
+	/**
+	 * Build the index using the given cache. Only the archives and directories changed 
+	 * since the cache was written are scanned.
+	 * 
+	 * @param indexCache
+	 * @throws IOException
+	 */
+	public void scanArchives(AnnotationIndexCache indexCache) throws IOException
+	{
+		clearIndexes();
+		indexCache.scan(this, Scanners.getURLsToScan());
+		Scanners.setScanned(this);
+		populateInterfacesFromSuperClass();
+	}
+
+	/**
+	 * Build the index from an index file generated at build time, without scanning 
+	 * the classpath. 
+	 * 
+	 * @param index
+	 * @return false if the index file was generated with different scanning options
+	 * @throws IOException
+	 */
+	public boolean loadIndex(InputStream index) throws IOException
+	{
+		clearIndexes();
+		if (!AnnotationIndexCache.load(this, index))
+		{
+			clearIndexes();
+			return false;
+		}
+		Scanners.setScanned(this);
+		populateInterfacesFromSuperClass();
+		return true;
+	}
+
+	private void clearIndexes()
+	{
+		annotationIndex.clear();
+		implementsIndex.clear();
+		classIndex.clear();
+		scannedURLs.clear();
+		interfacesIndex.clear();
+		superClasses.clear();
+		classInterfaces.clear();
+	}
+
+	/**
+	 * Returns a description of the options that change the content of this index.
+	 * @return
+	 */
+	String getScanOptions()
+	{
+		return "methods=" + scanMethodAnnotations + ";parameters=" + scanParameterAnnotations + ";fields=" + scanFieldAnnotations;
+	}
+
 	@Override
 	public void resetScanner()
 	{
@@ -214,32 +280,56 @@ public class AnnotationDB extends AbstractScanner implements Serializable
 	 */
 	public void scanClass(InputStream bits) throws IOException
 	{
+		indexClass(readClass(bits));
+	}
+
+	/**
+	 * Parse a .class file, extracting the information used by this index. The index 
+	 * itself is not changed.
+	 * 
+	 * @param bits
+	 *            input stream pointing to .class file bits
+	 * @return
+	 * @throws IOException
+	 */
+	public IndexedClass readClass(InputStream bits) throws IOException
+	{
+		if (!scanMethodAnnotations && !scanParameterAnnotations && !scanFieldAnnotations)
+		{
+			// only class level information is needed, so avoid building the whole javassist ClassFile
+			try
+			{
+				if (classReader == null)
+				{
+					classReader = new ClassHeaderReader();
+				}
+				return classReader.read(bits);
+			}
+			catch (RuntimeException e)
+			{
+				throw new IOException("Error reading class file.", e);
+			}
+			finally
+			{
+				bits.close();
+			}
+		}
 		DataInputStream dstream = new DataInputStream(new BufferedInputStream(bits));
-		ClassFile cf = null;
 		try
 		{
-			cf = new ClassFile(dstream);
-			classIndex.put(cf.getName(), new HashSet<String>());
-			scanClass(cf);
+			ClassFile cf = new ClassFile(dstream);
+			Set<String> annotations = new LinkedHashSet<String>();
+			scanClass(cf, annotations);
 			if (scanMethodAnnotations || scanParameterAnnotations)
 			{
-				scanMethods(cf);
+				scanMethods(cf, annotations);
 			}
 			if (scanFieldAnnotations)
 			{
-				scanFields(cf);
-			}
-
-			// create an index of interfaces the class implements
-			if (cf.getInterfaces() != null)
-			{
-				Set<String> intfs = new HashSet<String>();
-				for (String intf : cf.getInterfaces())
-				{
-					intfs.add(intf);
-				}
-				implementsIndex.put(cf.getName(), intfs);
+				scanFields(cf, annotations);
 			}
+			return new IndexedClass(cf.getName(), cf.getSuperclass(), cf.getInterfaces(), 
+									annotations.toArray(new String[annotations.size()]));
 		}
 		finally
 		{
@@ -248,14 +338,28 @@ public class AnnotationDB extends AbstractScanner implements Serializable
 		}
 	}
 
-	protected void populateInterfaces(ClassFile cf)
+	/**
+	 * Add a class to this index. A class already indexed is replaced.
+	 * @param indexedClass
+	 */
+	protected void indexClass(IndexedClass indexedClass)
 	{
-		String className = cf.getName();
-		String superClassName = cf.getSuperclass();
-
-		populateInterfaces(cf.getInterfaces(), className);
-
-		superClasses.put(className, superClassName);
+		String className = indexedClass.getName();
+		classIndex.put(className, new HashSet<String>());
+		populate(indexedClass.getAnnotations(), className);
+		populateInterfaces(indexedClass.getInterfaces(), className);
+		superClasses.put(className, indexedClass.getSuperClass());
+
+		// create an index of interfaces the class implements
+		if (indexedClass.getInterfaces() != null)
+		{
+			Set<String> intfs = new HashSet<String>();
+			for (String intf : indexedClass.getInterfaces())
+			{
+				intfs.add(intf);
+			}
+			implementsIndex.put(className, intfs);
+		}
 	}
 
 	protected void populateInterfaces(String[] interfaces, String className)
@@ -347,29 +451,28 @@ public class AnnotationDB extends AbstractScanner implements Serializable
 		}
 	}
 
-	protected void scanClass(ClassFile cf)
+	protected void scanClass(ClassFile cf, Set<String> annotations)
 	{
-		String className = cf.getName();
 		AnnotationsAttribute visible = (AnnotationsAttribute) cf.getAttribute(AnnotationsAttribute.visibleTag);
 		AnnotationsAttribute invisible = (AnnotationsAttribute) cf.getAttribute(AnnotationsAttribute.invisibleTag);
 
 		if (visible != null)
 		{
-			populate(visible.getAnnotations(), className);
+			collect(visible.getAnnotations(), annotations);
 		}
 		if (invisible != null)
 		{
-			populate(invisible.getAnnotations(), className);
+			collect(invisible.getAnnotations(), annotations);
 		}
-		populateInterfaces(cf);
 	}
 
 	/**
 	 * Scanns both the method and its parameters for annotations.
 	 * 
 	 * @param cf
+	 * @param annotations
 	 */
-	protected void scanMethods(ClassFile cf)
+	protected void scanMethods(ClassFile cf, Set<String> annotations)
 	{
 		List<?> methods = cf.getMethods();
 		if (methods == null)
@@ -386,11 +489,11 @@ public class AnnotationDB extends AbstractScanner implements Serializable
 
 				if (visible != null)
 				{
-					populate(visible.getAnnotations(), cf.getName());
+					collect(visible.getAnnotations(), annotations);
 				}
 				if (invisible != null)
 				{
-					populate(invisible.getAnnotations(), cf.getName());
+					collect(invisible.getAnnotations(), annotations);
 				}
 			}
 			if (scanParameterAnnotations)
@@ -402,21 +505,21 @@ public class AnnotationDB extends AbstractScanner implements Serializable
 				{
 					for (Annotation[] anns : paramsVisible.getAnnotations())
 					{
-						populate(anns, cf.getName());
+						collect(anns, annotations);
 					}
 				}
 				if (paramsInvisible != null && paramsInvisible.getAnnotations() != null)
 				{
 					for (Annotation[] anns : paramsInvisible.getAnnotations())
 					{
-						populate(anns, cf.getName());
+						collect(anns, annotations);
 					}
 				}
 			}
 		}
 	}
 
-	protected void scanFields(ClassFile cf)
+	protected void scanFields(ClassFile cf, Set<String> annotations)
 	{
 		List<?> fields = cf.getFields();
 		if (fields == null)
@@ -431,32 +534,77 @@ public class AnnotationDB extends AbstractScanner implements Serializable
 
 			if (visible != null)
 			{
-				populate(visible.getAnnotations(), cf.getName());
+				collect(visible.getAnnotations(), annotations);
 			}
 			if (invisible != null)
 			{
-				populate(invisible.getAnnotations(), cf.getName());
+				collect(invisible.getAnnotations(), annotations);
 			}
 		}
 	}
 
-	protected void populate(Annotation[] annotations, String className)
+	protected void collect(Annotation[] annotations, Set<String> annotationNames)
 	{
 		if (annotations == null)
 		{
 			return;
 		}
-		Set<String> classAnnotations = classIndex.get(className);
 		for (Annotation ann : annotations)
 		{
-			Set<String> classes = annotationIndex.get(ann.getTypeName());
+			annotationNames.add(ann.getTypeName());
+		}
+	}
+
+	protected void populate(String[] annotations, String className)
+	{
+		if (annotations == null)
+		{
+			return;
+		}
+		Set<String> classAnnotations = classIndex.get(className);
+		for (String ann : annotations)
+		{
+			Set<String> classes = annotationIndex.get(ann);
 			if (classes == null)
 			{
 				classes = new HashSet<String>();
-				annotationIndex.put(ann.getTypeName(), classes);
+				annotationIndex.put(ann, classes);
 			}
 			classes.add(className);
-			classAnnotations.add(ann.getTypeName());
+			classAnnotations.add(ann);
+		}
+	}
+
+	/**
+	 * Merge a partial index, built by a parallel scanning worker, into this index. Classes 
+	 * found again are handled the same way as by {@link #scanClass(InputStream)}: the class 
+	 * entries are replaced and the reverse indexes are accumulated.
+	 * @param partial
+	 */
+	protected void mergeIndex(AnnotationDB partial)
+	{
+		mergeSets(annotationIndex, partial.annotationIndex);
+		mergeSets(interfacesIndex, partial.interfacesIndex);
+		mergeSets(classInterfaces, partial.classInterfaces);
+		classIndex.putAll(partial.classIndex);
+		implementsIndex.putAll(partial.implementsIndex);
+		superClasses.putAll(partial.superClasses);
+		scannedURLs.addAll(partial.scannedURLs);
+	}
+
+	private void mergeSets(Map<String, Set<String>> index, Map<String, Set<String>> partialIndex)
+	{
+		for (Map.Entry<String, Set<String>> entry : partialIndex.entrySet())
+		{
+			Set<String> values = index.get(entry.getKey());
+			if (values == null)
+			{
+				index.put(entry.getKey(), entry.getValue());
+			}
+			else
+			{
+				values.addAll(entry.getValue());
+			}
 		}
 	}
 
@@ -484,4 +632,84 @@ public class AnnotationDB extends AbstractScanner implements Serializable
 			writer.println();
 		}
 	}
+
+	/**
+	 * Index classes while the archives are iterated. Forks write into a partial index and 
+	 * skip the classes already indexed by the scanner that created them.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	private class IndexEntryConsumer implements ParallelScannerEntryConsumer
+	{
+		private final AnnotationDB index;
+
+		private IndexEntryConsumer(AnnotationDB index)
+		{
+			this.index = index;
+		}
+
+		@Override
+		public void onEntry(URL parentURL, URL entry, InputStream content) throws IOException
+		{
+			if ((index == AnnotationDB.this || !scannedURLs.contains(entry)) && index.scannedURLs.add(entry))
+			{
+				index.scanClass(content);
+			}
+		}
+
+		@Override
+		public ScannerEntryConsumer fork()
+		{
+			AnnotationDB partial = new AnnotationDB();
+			partial.scanMethodAnnotations = scanMethodAnnotations;
+			partial.scanParameterAnnotations = scanParameterAnnotations;
+			partial.scanFieldAnnotations = scanFieldAnnotations;
+			return new IndexEntryConsumer(partial);
+		}
+
+		@Override
+		public void join(ScannerEntryConsumer fork)
+		{
+			mergeIndex(((IndexEntryConsumer)fork).index);
+		}
+	}
+
+	/**
+	 * The information extracted from a class file by the index.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	public static class IndexedClass
+	{
+		private final String name;
+		private final String superClass;
+		private final String[] interfaces;
+		private final String[] annotations;
+
+		public IndexedClass(String name, String superClass, String[] interfaces, String[] annotations)
+		{
+			this.name = name;
+			this.superClass = superClass;
+			this.interfaces = interfaces;
+			this.annotations = annotations;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public String getSuperClass()
+		{
+			return superClass;
+		}
+
+		public String[] getInterfaces()
+		{
+			return interfaces;
+		}
+
+		public String[] getAnnotations()
+		{
+			return annotations;
+		}
+	}
 }
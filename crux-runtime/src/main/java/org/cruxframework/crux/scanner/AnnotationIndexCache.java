@@ -0,0 +1,614 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.scanner;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cruxframework.crux.scanner.AnnotationDB.IndexedClass;
+import org.cruxframework.crux.scanner.Scanners.ScannerCallback;
+import org.cruxframework.crux.scanner.Scanners.ScannerEntryConsumer;
+import org.cruxframework.crux.scanner.archiveiterator.Filter;
+import org.cruxframework.crux.scanner.archiveiterator.IteratorFactory;
+import org.cruxframework.crux.scanner.archiveiterator.URLIterator;
+
+/**
+ * A persistent cache for the {@link AnnotationDB} index. The classes found on each scanned archive 
+ * or directory are stored together with a fingerprint of their source: size and modification 
+ * date of the jar files and of each class file inside directories. On the next scan, only the 
+ * changed sources are read again and the rest is loaded from the cache file. 
+ * 
+ * <p>Archives are replayed into the index in the same order used by the scanner, so the resulting 
+ * index is the same produced by a full scan.</p>
+ * 
+ * <p>The cache file uses a compact binary format: a header with the scanning options, a table 
+ * with all distinct strings and the list of archives, where each class refers to the string table 
+ * for its name, super class, interfaces and annotations.</p>
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+public class AnnotationIndexCache
+{
+	private static final Log logger = LogFactory.getLog(AnnotationIndexCache.class);
+	private static final int MAGIC = 0x43525849;
+	private static final int VERSION = 1;
+	private static final byte ARCHIVE = 1;
+	private static final byte DIRECTORY = 2;
+	
+	private final File file;
+
+	/**
+	 * @param file the cache file. It is created if it does not exist yet.
+	 */
+	public AnnotationIndexCache(File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * Fill the given index with the classes found on the given URLs, rescanning only the 
+	 * sources that changed since the cache file was written. The cache file is updated when 
+	 * any source changed. 
+	 * @param db
+	 * @param urls
+	 * @throws IOException
+	 */
+	public void scan(AnnotationDB db, URL[] urls) throws IOException
+	{
+		String options = getScanOptions(db);
+		Map<String, ArchiveIndex> cached = readCacheFile(options);
+		List<ArchiveIndex> archives = new ArrayList<ArchiveIndex>();
+		int rescanned = 0;
+		
+		for (URL url : urls)
+		{
+			File source = toFile(url);
+			if (source == null)
+			{
+				// not a local archive, so there is nothing to fingerprint
+				replay(db, scanArchive(db, url, ARCHIVE, 0, 0));
+				continue;
+			}
+			ArchiveIndex archive = cached.get(url.toString());
+			if (source.isDirectory())
+			{
+				archive = scanDirectory(db, url, source, archive);
+			}
+			else if (archive == null || archive.kind != ARCHIVE || archive.size != source.length() || 
+					archive.lastModified != source.lastModified())
+			{
+				archive = scanArchive(db, url, ARCHIVE, source.length(), source.lastModified());
+			}
+			
+			if (archive.rescanned)
+			{
+				rescanned++;
+			}
+			replay(db, archive);
+			archives.add(archive);
+		}
+
+		if (logger.isInfoEnabled())
+		{
+			logger.info("Annotation index loaded from cache. Archives rescanned: " + rescanned + " of " + urls.length + ".");
+		}
+		// archives removed from the classpath also require the cache file to be updated 
+		if (rescanned > 0 || cached.size() != archives.size())
+		{
+			writeCacheFile(options, archives);
+		}
+	}
+
+	/**
+	 * Fill the given index with the classes stored on an index file, ignoring the 
+	 * archive fingerprints. Used to load indexes generated at build time.
+	 * @param db
+	 * @param index
+	 * @return false if the index was generated with different scanning options
+	 * @throws IOException
+	 */
+	public static boolean load(AnnotationDB db, InputStream index) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		try
+		{
+			while ((read = index.read(buffer)) > 0)
+			{
+				out.write(buffer, 0, read);
+			}
+		}
+		finally
+		{
+			index.close();
+		}
+		List<ArchiveIndex> archives = read(ByteBuffer.wrap(out.toByteArray()), getScanOptions(db));
+		if (archives == null)
+		{
+			return false;
+		}
+		for (ArchiveIndex archive : archives)
+		{
+			replay(db, archive);
+		}
+		return true;
+	}
+
+	private static void replay(AnnotationDB db, ArchiveIndex archive)
+	{
+		for (ClassEntry entry : archive.classes)
+		{
+			db.indexClass(entry.indexedClass);
+		}
+	}
+
+	private static String getScanOptions(AnnotationDB db)
+	{
+		StringBuilder options = new StringBuilder(db.getScanOptions());
+		appendPackages(options.append(";ignored="), Scanners.getIgnoredPackages());
+		appendPackages(options.append(";allowed="), Scanners.getAllowedPackages());
+		appendPackages(options.append(";required="), Scanners.getRequiredPackages());
+		return options.toString();
+	}
+
+	private static void appendPackages(StringBuilder options, String[] packages)
+	{
+		for (int i = 0; i < packages.length; i++)
+		{
+			if (i > 0)
+			{
+				options.append(',');
+			}
+			options.append(packages[i]);
+		}
+	}
+
+	private File toFile(URL url)
+	{
+		if (!"file".equals(url.getProtocol()))
+		{
+			return null;
+		}
+		try
+		{
+			File source = new File(url.toURI());
+			return source.exists() ? source : null;
+		}
+		catch (URISyntaxException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Scan a whole archive, using the scanner iterators.
+	 */
+	private ArchiveIndex scanArchive(final AnnotationDB db, URL url, byte kind, long size, long lastModified) throws IOException
+	{
+		final ArchiveIndex archive = new ArchiveIndex(url.toString(), kind, size, lastModified);
+		archive.rescanned = true;
+		final Filter filter = db.getScannerFilter();
+		ScannerRegistration registration = new ScannerRegistration(new AbstractScanner()
+		{
+			@Override
+			public Filter getScannerFilter()
+			{
+				return filter;
+			}
+			
+			@Override
+			public ScannerEntryConsumer getScannerEntryConsumer()
+			{
+				return new ScannerEntryConsumer()
+				{
+					@Override
+					public void onEntry(URL parentURL, URL entry, InputStream content) throws IOException
+					{
+						archive.classes.add(new ClassEntry(null, 0, 0, db.readClass(content)));
+					}
+				};
+			}
+			
+			@Override
+			public ScannerCallback getScannerCallback()
+			{
+				return null;
+			}
+			
+			@Override
+			public void resetScanner()
+			{
+			}
+		});
+		registration.setScanned();
+		registration.startScanning();
+		URLIterator iterator = IteratorFactory.create(url, Collections.singletonList(registration));
+		if (iterator != null)
+		{
+			iterator.search();
+		}
+		registration.resetScanner();
+		return archive;
+	}
+
+	/**
+	 * Scan a directory, reusing the cached information for the class files that did not change.
+	 */
+	private ArchiveIndex scanDirectory(AnnotationDB db, URL url, File dir, ArchiveIndex cached) throws IOException
+	{
+		Map<String, ClassEntry> cachedEntries = new HashMap<String, ClassEntry>();
+		if (cached != null && cached.kind == DIRECTORY)
+		{
+			for (ClassEntry entry : cached.classes)
+			{
+				cachedEntries.put(entry.path, entry);
+			}
+		}
+		ArchiveIndex archive = new ArchiveIndex(url.toString(), DIRECTORY, 0, 0);
+		archive.rescanned = (cached == null || cached.kind != DIRECTORY);
+		scanDirectory(db, url, dir, "", db.getScannerFilter(), cachedEntries, archive);
+		if (cachedEntries.size() > 0)
+		{
+			// some class files were removed
+			archive.rescanned = true;
+		}
+		return archive;
+	}
+
+	private void scanDirectory(AnnotationDB db, URL parentURL, File dir, String path, Filter filter, 
+							   Map<String, ClassEntry> cachedEntries, ArchiveIndex archive) throws IOException
+	{
+		File[] files = dir.listFiles();
+		if (files == null)
+		{
+			return;
+		}
+		for (File file : files)
+		{
+			String filePath = path + file.getName();
+			if (file.isDirectory())
+			{
+				scanDirectory(db, parentURL, file, filePath + "/", filter, cachedEntries, archive);
+				continue;
+			}
+			String fileName = file.toURI().toURL().toString();
+			if (Scanners.ignoreScan(parentURL, fileName) || (filter != null && !filter.accepts(fileName)))
+			{
+				continue;
+			}
+			ClassEntry entry = cachedEntries.remove(filePath);
+			if (entry == null || entry.size != file.length() || entry.lastModified != file.lastModified())
+			{
+				entry = new ClassEntry(filePath, file.length(), file.lastModified(), db.readClass(new FileInputStream(file)));
+				archive.rescanned = true;
+			}
+			archive.classes.add(entry);
+		}
+	}
+
+	private Map<String, ArchiveIndex> readCacheFile(String options)
+	{
+		Map<String, ArchiveIndex> result = new HashMap<String, ArchiveIndex>();
+		if (!file.exists())
+		{
+			return result;
+		}
+		try
+		{
+			List<ArchiveIndex> archives = read(readFile(file), options);
+			if (archives != null)
+			{
+				for (ArchiveIndex archive : archives)
+				{
+					result.put(archive.url, archive);
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			logger.warn("Error reading annotation index cache file [" + file.getAbsolutePath() + "]. Rebuilding it.", e);
+			result.clear();
+		}
+		return result;
+	}
+
+	/**
+	 * Read the whole file into a heap buffer. The file is not memory mapped, because a mapped 
+	 * file can not be replaced, on some platforms, until the mapping is garbage collected.
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static ByteBuffer readFile(File file) throws IOException
+	{
+		FileInputStream in = new FileInputStream(file);
+		try
+		{
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining())
+			{
+				if (channel.read(buffer) < 0)
+				{
+					throw new IOException("Unexpected end of file [" + file.getAbsolutePath() + "]");
+				}
+			}
+			buffer.flip();
+			return buffer;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private void writeCacheFile(String options, List<ArchiveIndex> archives)
+	{
+		File tmp = new File(file.getAbsolutePath() + ".tmp");
+		try
+		{
+			File dir = file.getAbsoluteFile().getParentFile();
+			if (dir != null && !dir.exists())
+			{
+				dir.mkdirs();
+			}
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536));
+			try
+			{
+				write(out, options, archives);
+			}
+			finally
+			{
+				out.close();
+			}
+			if (!tmp.renameTo(file))
+			{
+				file.delete();
+				if (!tmp.renameTo(file))
+				{
+					throw new IOException("Can not replace file [" + file.getAbsolutePath() + "]");
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			tmp.delete();
+			logger.warn("Error writing annotation index cache file [" + file.getAbsolutePath() + "].", e);
+		}
+	}
+
+	private static List<ArchiveIndex> read(ByteBuffer buffer, String options) throws IOException
+	{
+		try
+		{
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+			{
+				logger.info("Invalid annotation index file. Ignoring it.");
+				return null;
+			}
+			if (!options.equals(readString(buffer)))
+			{
+				logger.info("Annotation index file was created with different scanning options. Ignoring it.");
+				return null;
+			}
+			String[] strings = new String[buffer.getInt()];
+			for (int i = 0; i < strings.length; i++)
+			{
+				strings[i] = readString(buffer);
+			}
+			int archiveCount = buffer.getInt();
+			List<ArchiveIndex> archives = new ArrayList<ArchiveIndex>(archiveCount);
+			for (int i = 0; i < archiveCount; i++)
+			{
+				ArchiveIndex archive = new ArchiveIndex(strings[buffer.getInt()], buffer.get(), buffer.getLong(), buffer.getLong());
+				int classCount = buffer.getInt();
+				for (int j = 0; j < classCount; j++)
+				{
+					String path = null;
+					long size = 0;
+					long lastModified = 0;
+					if (archive.kind == DIRECTORY)
+					{
+						path = strings[buffer.getInt()];
+						size = buffer.getLong();
+						lastModified = buffer.getLong();
+					}
+					String name = strings[buffer.getInt()];
+					int superClass = buffer.getInt();
+					String[] interfaces = readStrings(buffer, strings);
+					String[] annotations = readStrings(buffer, strings);
+					archive.classes.add(new ClassEntry(path, size, lastModified, 
+									new IndexedClass(name, superClass < 0 ? null : strings[superClass], interfaces, annotations)));
+				}
+				archives.add(archive);
+			}
+			return archives;
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IOException("Truncated annotation index file.", e);
+		}
+		catch (ArrayIndexOutOfBoundsException e)
+		{
+			throw new IOException("Corrupted annotation index file.", e);
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) throws IOException
+	{
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static String[] readStrings(ByteBuffer buffer, String[] strings)
+	{
+		int length = buffer.getInt();
+		if (length < 0)
+		{
+			return null;
+		}
+		String[] result = new String[length];
+		for (int i = 0; i < length; i++)
+		{
+			result[i] = strings[buffer.getInt()];
+		}
+		return result;
+	}
+
+	private static void write(DataOutputStream out, String options, List<ArchiveIndex> archives) throws IOException
+	{
+		Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+		for (ArchiveIndex archive : archives)
+		{
+			addString(strings, archive.url);
+			for (ClassEntry entry : archive.classes)
+			{
+				addString(strings, entry.path);
+				addString(strings, entry.indexedClass.getName());
+				addString(strings, entry.indexedClass.getSuperClass());
+				addStrings(strings, entry.indexedClass.getInterfaces());
+				addStrings(strings, entry.indexedClass.getAnnotations());
+			}
+		}
+		
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		writeString(out, options);
+		out.writeInt(strings.size());
+		for (String string : strings.keySet())
+		{
+			writeString(out, string);
+		}
+		out.writeInt(archives.size());
+		for (ArchiveIndex archive : archives)
+		{
+			out.writeInt(strings.get(archive.url));
+			out.writeByte(archive.kind);
+			out.writeLong(archive.size);
+			out.writeLong(archive.lastModified);
+			out.writeInt(archive.classes.size());
+			for (ClassEntry entry : archive.classes)
+			{
+				if (archive.kind == DIRECTORY)
+				{
+					out.writeInt(strings.get(entry.path));
+					out.writeLong(entry.size);
+					out.writeLong(entry.lastModified);
+				}
+				IndexedClass indexedClass = entry.indexedClass;
+				out.writeInt(strings.get(indexedClass.getName()));
+				out.writeInt(indexedClass.getSuperClass() == null ? -1 : strings.get(indexedClass.getSuperClass()));
+				writeStrings(out, strings, indexedClass.getInterfaces());
+				writeStrings(out, strings, indexedClass.getAnnotations());
+			}
+		}
+	}
+
+	private static void addString(Map<String, Integer> strings, String value)
+	{
+		if (value != null && !strings.containsKey(value))
+		{
+			strings.put(value, strings.size());
+		}
+	}
+
+	private static void addStrings(Map<String, Integer> strings, String[] values)
+	{
+		if (values != null)
+		{
+			for (String value : values)
+			{
+				addString(strings, value);
+			}
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		byte[] bytes = value.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static void writeStrings(DataOutputStream out, Map<String, Integer> strings, String[] values) throws IOException
+	{
+		if (values == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(values.length);
+		for (String value : values)
+		{
+			out.writeInt(strings.get(value));
+		}
+	}
+
+	private static class ArchiveIndex
+	{
+		private final String url;
+		private final byte kind;
+		private final long size;
+		private final long lastModified;
+		private final List<ClassEntry> classes = new ArrayList<ClassEntry>();
+		private boolean rescanned;
+
+		private ArchiveIndex(String url, byte kind, long size, long lastModified)
+		{
+			this.url = url;
+			this.kind = kind;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private static class ClassEntry
+	{
+		private final String path;
+		private final long size;
+		private final long lastModified;
+		private final IndexedClass indexedClass;
+
+		private ClassEntry(String path, long size, long lastModified, IndexedClass indexedClass)
+		{
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.indexedClass = indexedClass;
+		}
+	}
+}
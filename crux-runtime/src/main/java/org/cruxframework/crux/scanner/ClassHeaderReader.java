@@ -0,0 +1,304 @@
+/*
+ * Copyright 2015 cruxframework.org.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.cruxframework.crux.scanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.cruxframework.crux.scanner.AnnotationDB.IndexedClass;
+
+/**
+ * A minimal class file reader, that extracts only the class name, super class, interfaces 
+ * and class level annotations. Fields and methods are skipped without being parsed. 
+ * 
+ * <p>The buffers used to read the class files are reused, so each instance must be used by 
+ * a single thread.</p>
+ * 
+ * @author Thiago da Rosa de Bustamante
+ */
+class ClassHeaderReader
+{
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final byte[] VISIBLE_ANNOTATIONS = ascii("RuntimeVisibleAnnotations");
+	private static final byte[] INVISIBLE_ANNOTATIONS = ascii("RuntimeInvisibleAnnotations");
+
+	private byte[] buffer = new byte[16384];
+	private int[] offsets = new int[512];
+	private char[] chars = new char[256];
+	private int length;
+	private int pos;
+	
+	/**
+	 * Read the given class file. The stream is not closed.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public IndexedClass read(InputStream in) throws IOException
+	{
+		fill(in);
+		if (readInt() != MAGIC)
+		{
+			throw new IOException("Invalid class file.");
+		}
+		pos += 4; // minor and major versions
+		readConstantPool();
+		pos += 2; // access flags
+		String name = readClassName(readShort());
+		String superClass = readClassName(readShort());
+		String[] interfaces = new String[readShort()];
+		for (int i = 0; i < interfaces.length; i++)
+		{
+			interfaces[i] = readClassName(readShort());
+		}
+		skipMembers(); // fields
+		skipMembers(); // methods
+		
+		Set<String> annotations = new LinkedHashSet<String>();
+		int attributesCount = readShort();
+		for (int i = 0; i < attributesCount; i++)
+		{
+			int attributeName = readShort();
+			int attributeLength = readInt();
+			int end = pos + attributeLength;
+			if (utf8Equals(attributeName, VISIBLE_ANNOTATIONS) || utf8Equals(attributeName, INVISIBLE_ANNOTATIONS))
+			{
+				int count = readShort();
+				for (int j = 0; j < count; j++)
+				{
+					annotations.add(readAnnotation());
+				}
+			}
+			pos = end;
+		}
+		if (pos > length)
+		{
+			throw new IOException("Truncated class file.");
+		}
+		return new IndexedClass(name, superClass, interfaces, annotations.toArray(new String[annotations.size()]));
+	}
+
+	private void fill(InputStream in) throws IOException
+	{
+		length = 0;
+		pos = 0;
+		int read;
+		while ((read = in.read(buffer, length, buffer.length - length)) > 0)
+		{
+			length += read;
+			if (length == buffer.length)
+			{
+				byte[] newBuffer = new byte[buffer.length * 2];
+				System.arraycopy(buffer, 0, newBuffer, 0, length);
+				buffer = newBuffer;
+			}
+		}
+	}
+
+	private void readConstantPool() throws IOException
+	{
+		int count = readShort();
+		if (offsets.length < count)
+		{
+			offsets = new int[count];
+		}
+		for (int i = 1; i < count; i++)
+		{
+			offsets[i] = pos;
+			int tag = buffer[pos++];
+			switch (tag)
+			{
+				case 1: // Utf8
+					pos += 2 + readShortAt(pos);
+				break;
+				case 3: // Integer
+				case 4: // Float
+				case 9: // Fieldref
+				case 10: // Methodref
+				case 11: // InterfaceMethodref
+				case 12: // NameAndType
+				case 17: // Dynamic
+				case 18: // InvokeDynamic
+					pos += 4;
+				break;
+				case 5: // Long
+				case 6: // Double
+					pos += 8;
+					i++;
+				break;
+				case 7: // Class
+				case 8: // String
+				case 16: // MethodType
+				case 19: // Module
+				case 20: // Package
+					pos += 2;
+				break;
+				case 15: // MethodHandle
+					pos += 3;
+				break;
+				default:
+					throw new IOException("Invalid constant pool tag: " + tag);
+			}
+		}
+	}
+
+	private void skipMembers()
+	{
+		int count = readShort();
+		for (int i = 0; i < count; i++)
+		{
+			pos += 6; // access flags, name and descriptor
+			int attributesCount = readShort();
+			for (int j = 0; j < attributesCount; j++)
+			{
+				pos += 2;
+				int attributeLength = readInt();
+				pos += attributeLength;
+			}
+		}
+	}
+
+	private String readAnnotation()
+	{
+		String typeName = readUtf8(readShort());
+		int pairs = readShort();
+		for (int i = 0; i < pairs; i++)
+		{
+			pos += 2;
+			skipElementValue();
+		}
+		// convert the type descriptor (Lpackage/Type;) to a class name 
+		if (typeName.length() > 1 && typeName.charAt(0) == 'L' && typeName.charAt(typeName.length() - 1) == ';')
+		{
+			typeName = typeName.substring(1, typeName.length() - 1);
+		}
+		return typeName.replace('/', '.');
+	}
+
+	private void skipElementValue()
+	{
+		int tag = buffer[pos++];
+		switch (tag)
+		{
+			case 'e':
+				pos += 4;
+			break;
+			case '@':
+				readAnnotation();
+			break;
+			case '[':
+				int count = readShort();
+				for (int i = 0; i < count; i++)
+				{
+					skipElementValue();
+				}
+			break;
+			default: // constants and classes
+				pos += 2;
+		}
+	}
+
+	private String readClassName(int index)
+	{
+		if (index == 0)
+		{
+			return null;
+		}
+		return readUtf8(readShortAt(offsets[index] + 1)).replace('/', '.');
+	}
+
+	private boolean utf8Equals(int index, byte[] value)
+	{
+		int offset = offsets[index] + 1;
+		if (readShortAt(offset) != value.length)
+		{
+			return false;
+		}
+		offset += 2;
+		for (int i = 0; i < value.length; i++)
+		{
+			if (buffer[offset + i] != value[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decode a modified UTF-8 constant 
+	 */
+	private String readUtf8(int index)
+	{
+		int offset = offsets[index] + 1;
+		int utfLength = readShortAt(offset);
+		offset += 2;
+		int end = offset + utfLength;
+		if (chars.length < utfLength)
+		{
+			chars = new char[utfLength];
+		}
+		int count = 0;
+		while (offset < end)
+		{
+			int c = buffer[offset++] & 0xFF;
+			if (c < 0x80)
+			{
+				chars[count++] = (char) c;
+			}
+			else if ((c & 0xE0) == 0xC0)
+			{
+				chars[count++] = (char) (((c & 0x1F) << 6) | (buffer[offset++] & 0x3F));
+			}
+			else
+			{
+				chars[count++] = (char) (((c & 0x0F) << 12) | ((buffer[offset++] & 0x3F) << 6) | (buffer[offset++] & 0x3F));
+			}
+		}
+		return new String(chars, 0, count);
+	}
+
+	private int readShort()
+	{
+		int value = readShortAt(pos);
+		pos += 2;
+		return value;
+	}
+
+	private int readShortAt(int offset)
+	{
+		return ((buffer[offset] & 0xFF) << 8) | (buffer[offset + 1] & 0xFF);
+	}
+
+	private int readInt()
+	{
+		int value = ((buffer[pos] & 0xFF) << 24) | ((buffer[pos + 1] & 0xFF) << 16) | ((buffer[pos + 2] & 0xFF) << 8) | (buffer[pos + 3] & 0xFF);
+		pos += 4;
+		return value;
+	}
+
+	private static byte[] ascii(String value)
+	{
+		byte[] result = new byte[value.length()];
+		for (int i = 0; i < result.length; i++)
+		{
+			result[i] = (byte) value.charAt(i);
+		}
+		return result;
+	}
+}
@@ -15,12 +15,17 @@
  */
 package org.cruxframework.crux.scanner;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cruxframework.crux.core.config.ConfigurationFactory;
+import org.cruxframework.crux.core.server.Environment;
 
 
 /**
@@ -30,6 +35,7 @@ import org.apache.commons.logging.LogFactory;
 public class ClassScanner
 {
 	private static final Log logger = LogFactory.getLog(ClassScanner.class);
+	private static final String COMPILE_TIME_INDEX = "/META-INF/crux-annotations";
 
 	private static AnnotationDB scannerDB = new AnnotationDB();
 	private static boolean initialized = false;
@@ -96,13 +102,67 @@ public class ClassScanner
 				logger.info("Building index of annotations for classes.");
 			}
 
-			scannerDB.scanArchives();
+			if (!loadCompileTimeIndex())
+			{
+				String indexCacheFile = ConfigurationFactory.getConfigurations().annotationIndexCacheFile();
+				if (indexCacheFile != null && indexCacheFile.length() > 0)
+				{
+					scannerDB.scanArchives(new AnnotationIndexCache(new File(indexCacheFile)));
+				}
+				else
+				{
+					scannerDB.scanArchives();
+				}
+			}
 		}
 		catch (Exception e)
 		{
 			throw new ClassScannerException("Error creating index of annotations.", e);
 		}
 	}
+
+	/**
+	 * Load the index generated at build time, if present, when the compile time scanning 
+	 * strategy is in use.
+	 * @return true if the index was loaded
+	 * @throws IOException
+	 */
+	private static boolean loadCompileTimeIndex() throws IOException
+	{
+		if (Environment.isProduction() || Boolean.parseBoolean(ConfigurationFactory.getConfigurations().useCompileTimeClassScanningForDevelopment()))
+		{
+			InputStream index = ClassScanner.class.getResourceAsStream(COMPILE_TIME_INDEX);
+			if (index != null)
+			{
+				if (scannerDB.loadIndex(index))
+				{
+					return true;
+				}
+				logger.warn("Annotation index ["+COMPILE_TIME_INDEX+"] was generated with different scanning options. Scanning classpath.");
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Scan the classpath and write the resulting index to the given file. The file can be 
+	 * packaged as <code>META-INF/crux-annotations</code> to avoid classpath scanning when 
+	 * the compile time scanning strategy is in use.
+	 * @param indexFile
+	 */
+	public synchronized static void generateIndexFile(File indexFile)
+	{
+		initializeScanner();
+		try
+		{
+			scannerDB.scanArchives(new AnnotationIndexCache(indexFile));
+			setInitialized();
+		}
+		catch (IOException e)
+		{
+			throw new ClassScannerException("Error creating index of annotations.", e);
+		}
+	}
 	
 	/**
 	 * Search into the internal index for the set of classes that contains the given annotation.
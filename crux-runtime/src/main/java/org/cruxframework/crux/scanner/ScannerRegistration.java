@@ -19,7 +19,9 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.cruxframework.crux.scanner.Scanners.ParallelScannerEntryConsumer;
 import org.cruxframework.crux.scanner.Scanners.ScannerCallback;
+import org.cruxframework.crux.scanner.Scanners.ScannerEntryConsumer;
 import org.cruxframework.crux.scanner.archiveiterator.Filter;
 
 /**
@@ -29,12 +31,24 @@ import org.cruxframework.crux.scanner.archiveiterator.Filter;
 public class ScannerRegistration
 {
 	private AbstractScanner scanner;
+	private ScannerEntryConsumer entryConsumer;
+	private Filter filter;
 	private List<ScannerMatch> allMatches;
 	private List<ScannerMatch> scanMatches;
 	
 	public ScannerRegistration(AbstractScanner scanner)
 	{
 		this.scanner = scanner;
+		this.entryConsumer = scanner.getScannerEntryConsumer();
+	}
+
+	private ScannerRegistration(AbstractScanner scanner, ScannerEntryConsumer entryConsumer, Filter filter)
+	{
+		this.scanner = scanner;
+		this.entryConsumer = entryConsumer;
+		this.filter = filter;
+		this.allMatches = new ArrayList<ScannerMatch>();
+		this.scanMatches = new ArrayList<ScannerMatch>();
 	}
 
 	public boolean isScanned()
@@ -100,6 +114,10 @@ public class ScannerRegistration
 
 	public Filter getFilter()
 	{
+		if (filter != null)
+		{
+			return filter;
+		}
 		return scanner.getScannerFilter();
 	}
 	
@@ -108,6 +126,50 @@ public class ScannerRegistration
 		return scanner.getScannerCallback();
 	}
 	
+	public ScannerEntryConsumer getEntryConsumer()
+	{
+		return entryConsumer;
+	}
+
+	/**
+	 * Check if this scanner can be run by the parallel scanning mode. Scanners that 
+	 * consume entries content must be able to split their results across workers.
+	 * @return
+	 */
+	boolean supportsParallelScanning()
+	{
+		return entryConsumer == null || entryConsumer instanceof ParallelScannerEntryConsumer;
+	}
+
+	/**
+	 * Create a registration that collects the matches and entries found by a single 
+	 * scanning worker. 
+	 * @return
+	 */
+	ScannerRegistration createPartition()
+	{
+		ScannerEntryConsumer partitionConsumer = null;
+		if (entryConsumer != null)
+		{
+			partitionConsumer = ((ParallelScannerEntryConsumer)entryConsumer).fork();
+		}
+		return new ScannerRegistration(scanner, partitionConsumer, scanner.getScannerFilter());
+	}
+
+	/**
+	 * Merge the results collected by a partition into this registration.
+	 * @param partition
+	 */
+	void mergePartition(ScannerRegistration partition)
+	{
+		scanMatches.addAll(partition.scanMatches);
+		allMatches.addAll(partition.scanMatches);
+		if (entryConsumer != null)
+		{
+			((ParallelScannerEntryConsumer)entryConsumer).join(partition.entryConsumer);
+		}
+	}
+	
 	public Class<? extends AbstractScanner> getScannerClass()
 	{
 		return scanner.getClass();
@@ -17,6 +17,7 @@ package org.cruxframework.crux.scanner;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -26,6 +27,8 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.cruxframework.crux.classpath.URLResourceHandler;
 import org.cruxframework.crux.classpath.URLResourceHandlersRegistry;
@@ -57,6 +60,7 @@ public final class Scanners
 	private static boolean initialized = false;
 	private static FilePatternHandler allowedLibsHandler;
 	private static FilePatternHandler requiredLibsHandler;
+	private static boolean parallelScanning = false;
 
 	private Scanners()
 	{
@@ -85,6 +89,26 @@ public final class Scanners
 		resetScanners();
 	}
 
+	/**
+	 * Enable or disable the parallel scanning mode. When enabled, the search URLs are scanned 
+	 * concurrently and the results of each worker are merged, in the order of the URLs, once 
+	 * all of them finish.
+	 * @param parallelScanning
+	 */
+	public static void setParallelScanning(boolean parallelScanning)
+	{
+		Scanners.parallelScanning = parallelScanning;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public static boolean isParallelScanning()
+	{
+		return parallelScanning;
+	}
+
 	/**
 	 * Register a new scanner on Crux scanning engine. All registered scanners are called during the scanning cycle.
 	 * @param scanner
@@ -297,21 +321,39 @@ public final class Scanners
 		List<ScannerRegistration> scanners = getScannersToRun();
 		if (scanners.size() > 0)
 		{
-			URL[] urls = getSearchURLs();
+			scan(scanners, getURLsToScan());
+		}
+	}
 
-			if (urls == null)
-			{
-				/* If URLs is not informed, Crux used default URLs on classpath, plus the web public folders on each
-					 Crux module. The process to build the crux modules list needs to use other scanners. So, to avoid
-					 an infinite loop, we need to pre scan the URLs that do not need to search the web folders and then
-					 continue with web folders scanning. */
-				urls = fiterLibs(ScannerURLS.getURLsForSearch());
-				scan(scanners, urls);
-			}
-			else
-			{
-				scan(scanners, urls);
-			}
+	/**
+	 * Returns the URLs searched by the scanning process.
+	 * @return
+	 */
+	static URL[] getURLsToScan()
+	{
+		URL[] urls = getSearchURLs();
+		if (urls == null)
+		{
+			/* If URLs is not informed, Crux used default URLs on classpath, plus the web public folders on each
+				 Crux module. The process to build the crux modules list needs to use other scanners. So, to avoid
+				 an infinite loop, we need to pre scan the URLs that do not need to search the web folders and then
+				 continue with web folders scanning. */
+			urls = fiterLibs(ScannerURLS.getURLsForSearch());
+		}
+		return urls;
+	}
+
+	/**
+	 * Mark a scanner as scanned, when its results were obtained by other means, like 
+	 * an index cache. 
+	 * @param scanner
+	 */
+	static void setScanned(AbstractScanner scanner)
+	{
+		ScannerRegistration scannerRegistration = registrations.get(scanner.getClass().getCanonicalName());
+		if (scannerRegistration != null)
+		{
+			scannerRegistration.setScanned();
 		}
 	}
 
@@ -370,19 +412,15 @@ public final class Scanners
 	    	//Incremental scanning. Only notify about the matches on that scanning step.
 	    	scannerRegistration.startScanning();
         }
-	    for (final URL url : urls)
+	    if (parallelScanning && urls.length > 1 && supportsParallelScanning(scanners))
 	    {
-	    	try
-	    	{
-	    		if (resourceExists(url))
-	    		{
-	    			URLIterator it = IteratorFactory.create(url, scanners);
-	    			it.search();
-	    		}
-	    	}
-	    	catch (IOException e)
+	    	scanInParallel(scanners, urls);
+	    }
+	    else
+	    {
+	    	for (final URL url : urls)
 	    	{
-	    		throw new ScannerException("Error running crux scanners.", e);
+	    		scan(scanners, url);
 	    	}
 	    }
 	    for (ScannerRegistration scannerRegistration : scanners)
@@ -401,6 +439,62 @@ public final class Scanners
         }
     }
 
+	private static void scan(List<ScannerRegistration> scanners, URL url)
+	{
+		try
+		{
+			if (resourceExists(url))
+			{
+				URLIterator it = IteratorFactory.create(url, scanners);
+				it.search();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new ScannerException("Error running crux scanners.", e);
+		}
+	}
+
+	/**
+	 * Scan each URL on a fork-join pool, using a partition of every scanner registration. 
+	 * The partitions are merged in the order of the URLs, so the results are the same 
+	 * produced by the sequential scanning.
+	 * @param scanners
+	 * @param urls
+	 */
+	private static void scanInParallel(List<ScannerRegistration> scanners, URL[] urls)
+	{
+		ScannerRegistration[][] partitions = new ScannerRegistration[urls.length][];
+		ForkJoinPool pool = new ForkJoinPool(Math.min(urls.length, Runtime.getRuntime().availableProcessors()));
+		try
+		{
+			pool.invoke(new ScanTask(scanners, urls, partitions, 0, urls.length));
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		for (ScannerRegistration[] urlPartitions : partitions)
+		{
+			for (int i = 0; i < urlPartitions.length; i++)
+			{
+				scanners.get(i).mergePartition(urlPartitions[i]);
+			}
+		}
+	}
+
+	private static boolean supportsParallelScanning(List<ScannerRegistration> scanners)
+	{
+		for (ScannerRegistration scannerRegistration : scanners)
+		{
+			if (!scannerRegistration.supportsParallelScanning())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * 
 	 * @param lib
@@ -466,6 +560,10 @@ public final class Scanners
 				allowedLibsHandler = new FilePatternHandler(scanAllowedLibs, scanIgnoredLibs);
 				requiredLibsHandler = new FilePatternHandler(getRequiredLibs(), null);
 			}
+			if (Boolean.parseBoolean(ConfigurationFactory.getConfigurations().enableParallelClasspathScanning()))
+			{
+				parallelScanning = true;
+			}
 			initialized = true;
 		}
 	}
@@ -562,6 +660,88 @@ public final class Scanners
 	{
 		void onFound(List<ScannerMatch> matches);
 	}
+
+	/**
+	 * Consumer called by the archive iterators for each accepted entry, while the archive 
+	 * is being read. It allows scanners to process the entry content without opening the 
+	 * entry URL again.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	public static interface ScannerEntryConsumer
+	{
+		/**
+		 * @param parentURL the URL of the archive or directory being scanned
+		 * @param entry the URL of the accepted entry
+		 * @param content entry content. The stream is closed by the caller.
+		 * @throws IOException
+		 */
+		void onEntry(URL parentURL, URL entry, InputStream content) throws IOException;
+	}
+	
+	/**
+	 * Entry consumer that can be used by the parallel scanning mode. Each scanning worker 
+	 * receives its own fork of the consumer, that are joined back when the scanning ends.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	public static interface ParallelScannerEntryConsumer extends ScannerEntryConsumer
+	{
+		/**
+		 * Create a consumer to collect the partial results of a single scanning worker. 
+		 * The fork must not change the state of this consumer.
+		 * @return
+		 */
+		ScannerEntryConsumer fork();
+		
+		/**
+		 * Merge the partial results of a fork into this consumer. Forks are joined in the 
+		 * order of the scanned URLs.
+		 * @param fork
+		 */
+		void join(ScannerEntryConsumer fork);
+	}
+	
+	/**
+	 * Scan a range of URLs, splitting it until each task handles a single URL.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	private static class ScanTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = -2735064315245612393L;
+		private final List<ScannerRegistration> scanners;
+		private final URL[] urls;
+		private final ScannerRegistration[][] partitions;
+		private final int start;
+		private final int end;
+
+		private ScanTask(List<ScannerRegistration> scanners, URL[] urls, ScannerRegistration[][] partitions, int start, int end)
+		{
+			this.scanners = scanners;
+			this.urls = urls;
+			this.partitions = partitions;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (end - start == 1)
+			{
+				List<ScannerRegistration> urlPartitions = new ArrayList<ScannerRegistration>(scanners.size());
+				for (ScannerRegistration scannerRegistration : scanners)
+				{
+					urlPartitions.add(scannerRegistration.createPartition());
+				}
+				scan(urlPartitions, urls[start]);
+				partitions[start] = urlPartitions.toArray(new ScannerRegistration[urlPartitions.size()]);
+			}
+			else
+			{
+				int middle = (start + end) >>> 1;
+				invokeAll(new ScanTask(scanners, urls, partitions, start, middle), new ScanTask(scanners, urls, partitions, middle, end));
+			}
+		}
+	}
 	
 	public static interface ScannerRegistrations
 	{
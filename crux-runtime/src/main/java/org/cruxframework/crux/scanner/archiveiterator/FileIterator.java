@@ -16,6 +16,7 @@
 package org.cruxframework.crux.scanner.archiveiterator;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -80,7 +81,23 @@ public class FileIterator extends URLIterator
 				}
 				else
 				{
-					consumeWhenAccepted(parentURL, url, url.toString());
+					final File file = files[i];
+					consumeWhenAccepted(parentURL, url, url.toString(), new EntryContent()
+					{
+						@Override
+						public byte[] read() throws IOException
+						{
+							FileInputStream in = new FileInputStream(file);
+							try
+							{
+								return readFully(in, file.length());
+							}
+							finally
+							{
+								in.close();
+							}
+						}
+					});
 				}
 			}
 		}
@@ -15,11 +15,16 @@
  */
 package org.cruxframework.crux.scanner.archiveiterator;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.List;
 
 import org.cruxframework.crux.scanner.ScannerRegistration;
 import org.cruxframework.crux.scanner.ScannerRegistration.ScannerMatch;
+import org.cruxframework.crux.scanner.Scanners.ScannerEntryConsumer;
 
 
 
@@ -47,5 +52,65 @@ public abstract class URLIterator
         }
 	}
 
+	/**
+	 * Register the entry as a match for the scanners that accept it and hand its content 
+	 * to the entry consumers of those scanners. The content is read only once, no matter 
+	 * how many consumers receive it, and only if at least one consumer is interested.
+	 * @param parentURL
+	 * @param url
+	 * @param fileName
+	 * @param content entry content, read on demand
+	 * @throws IOException
+	 */
+	protected void consumeWhenAccepted(URL parentURL, URL url, String fileName, EntryContent content) throws IOException
+	{
+		byte[] bytes = null;
+		for (ScannerRegistration scannerRegistration : scanners)
+        {
+	        Filter filter = scannerRegistration.getFilter();
+			if (filter == null || filter.accepts(fileName))
+			{
+				scannerRegistration.addMatch(new ScannerMatch(parentURL, url));
+				ScannerEntryConsumer entryConsumer = scannerRegistration.getEntryConsumer();
+				if (entryConsumer != null)
+				{
+					if (bytes == null)
+					{
+						bytes = content.read();
+					}
+					entryConsumer.onEntry(parentURL, url, new ByteArrayInputStream(bytes));
+				}
+			}
+        }
+	}
+
+	/**
+	 * Read all the bytes available on the given stream, without closing it.
+	 * @param in
+	 * @param size expected size or -1 if unknown
+	 * @return
+	 * @throws IOException
+	 */
+	protected static byte[] readFully(InputStream in, long size) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(size > 0 && size < Integer.MAX_VALUE ? (int)size : 4096);
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) > 0)
+		{
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Lazy access to the content of the current entry.
+	 * @author Thiago da Rosa de Bustamante
+	 */
+	protected static interface EntryContent
+	{
+		byte[] read() throws IOException;
+	}
+
 	public abstract void search();
 }
@@ -29,6 +29,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cruxframework.crux.classpath.URLResourceHandler;
 import org.cruxframework.crux.classpath.URLResourceHandlersRegistry;
+import org.cruxframework.crux.scanner.ScannerException;
 import org.cruxframework.crux.scanner.ScannerRegistration;
 import org.cruxframework.crux.scanner.Scanners;
 
@@ -76,13 +77,31 @@ public class ZIPProtocolIterator extends URLIterator
 	@Override
 	public void search()
 	{
+		EntryContent content = new EntryContent()
+		{
+			@Override
+			public byte[] read() throws IOException
+			{
+				// the zip stream is positioned at the current entry, so its content is 
+				// inflated here without reopening the archive 
+				return readFully(zipStream, next.getSize());
+			}
+		};
 		URL url = next();
 		while (url != null)
 		{
 			String fileName = getNextEntryFullName();
 			if (!Scanners.ignoreScan(zip, fileName))
             {
-	            consumeWhenAccepted(zip, url, fileName);
+				try
+				{
+					consumeWhenAccepted(zip, url, fileName, content);
+				}
+				catch (IOException e)
+				{
+					close();
+					throw new ScannerException("Error reading entry [" + fileName + "].", e);
+				}
             }
 			url = next();
 		}